@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.RecordingFailureStrategy.checkOutcome;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link Subject#isEqualTo} on primitive arrays and on nested arrays, which it compares
+ * element by element.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ArrayEqualityBenchmark {
+  @Param({"10", "1000", "100000"})
+  int size;
+
+  @Param({"BYTE", "INT", "DOUBLE", "NESTED_INT", "NESTED_OBJECT"})
+  ArrayType arrayType;
+
+  /** The kinds of array to benchmark. */
+  public enum ArrayType {
+    BYTE {
+      @Override
+      Object create(int size, boolean changeLast) {
+        byte[] array = new byte[size];
+        for (int i = 0; i < size; i++) {
+          array[i] = (byte) i;
+        }
+        if (changeLast) {
+          array[size - 1]++;
+        }
+        return array;
+      }
+    },
+    INT {
+      @Override
+      Object create(int size, boolean changeLast) {
+        int[] array = new int[size];
+        for (int i = 0; i < size; i++) {
+          array[i] = i;
+        }
+        if (changeLast) {
+          array[size - 1]++;
+        }
+        return array;
+      }
+    },
+    DOUBLE {
+      @Override
+      Object create(int size, boolean changeLast) {
+        double[] array = new double[size];
+        for (int i = 0; i < size; i++) {
+          array[i] = i / 3.0;
+        }
+        if (changeLast) {
+          array[size - 1]++;
+        }
+        return array;
+      }
+    },
+    /** Rows of 10 ints each, {@code size} ints in all. */
+    NESTED_INT {
+      @Override
+      Object create(int size, boolean changeLast) {
+        int[][] array = new int[Math.max(1, size / 10)][10];
+        for (int row = 0; row < array.length; row++) {
+          for (int column = 0; column < 10; column++) {
+            array[row][column] = row * 10 + column;
+          }
+        }
+        if (changeLast) {
+          array[array.length - 1][9]++;
+        }
+        return array;
+      }
+    },
+    /** Rows of 10 strings each, {@code size} strings in all. */
+    NESTED_OBJECT {
+      @Override
+      Object create(int size, boolean changeLast) {
+        Object[][] array = new Object[Math.max(1, size / 10)][10];
+        for (int row = 0; row < array.length; row++) {
+          for (int column = 0; column < 10; column++) {
+            array[row][column] = "element" + (row * 10 + column);
+          }
+        }
+        if (changeLast) {
+          array[array.length - 1][9] = "changed";
+        }
+        return array;
+      }
+    };
+
+    /** Returns a new array of about the given size, optionally with its last element changed. */
+    abstract Object create(int size, boolean changeLast);
+  }
+
+  private final RecordingFailureStrategy failures = new RecordingFailureStrategy();
+  private StandardSubjectBuilder expect;
+  private Object actual;
+  private Object equal;
+  private Object unequal;
+
+  @Setup
+  public void setUp() {
+    expect = failures.builder();
+    actual = arrayType.create(size, false);
+    equal = arrayType.create(size, false);
+    unequal = arrayType.create(size, true);
+
+    checkOutcome(false, isEqualTo_pass(), "isEqualTo_pass");
+    checkOutcome(true, isEqualTo_fail(), "isEqualTo_fail");
+  }
+
+  @Benchmark
+  public AssertionError isEqualTo_pass() {
+    expect.that(actual).isEqualTo(equal);
+    return failures.takeFailure();
+  }
+
+  @Benchmark
+  public AssertionError isEqualTo_fail() {
+    expect.that(actual).isEqualTo(unequal);
+    return failures.takeFailure();
+  }
+}
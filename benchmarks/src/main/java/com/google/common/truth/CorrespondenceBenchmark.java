@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.RecordingFailureStrategy.checkOutcome;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link IterableSubject.UsingCorrespondence#containsExactlyElementsIn}, both with a
+ * correspondence that buckets its values ({@link Correspondence#tolerance}) and with one that
+ * doesn't, so that every pair of elements might have to be compared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CorrespondenceBenchmark {
+  @Param({"10", "100", "1000"})
+  int size;
+
+  @Param({"TOLERANCE", "UNBUCKETED_TOLERANCE"})
+  CorrespondenceType correspondenceType;
+
+  /** The kinds of correspondence to benchmark. */
+  public enum CorrespondenceType {
+    TOLERANCE {
+      @Override
+      Correspondence<Number, Number> correspondence() {
+        return Correspondence.tolerance(0.25);
+      }
+    },
+    UNBUCKETED_TOLERANCE {
+      @Override
+      Correspondence<Number, Number> correspondence() {
+        return new Correspondence<Number, Number>() {
+          @Override
+          public boolean compare(Number actual, Number expected) {
+            return Math.abs(actual.doubleValue() - expected.doubleValue()) <= 0.25;
+          }
+
+          @Override
+          public String toString() {
+            return "is within 0.25 of";
+          }
+        };
+      }
+    };
+
+    abstract Correspondence<Number, Number> correspondence();
+  }
+
+  private final RecordingFailureStrategy failures = new RecordingFailureStrategy();
+  private StandardSubjectBuilder expect;
+  private Correspondence<Number, Number> correspondence;
+
+  /** Distinct values, in random order. */
+  private List<Double> actual;
+
+  /** Values within the tolerance of {@link #actual}'s, in a different order. */
+  private List<Double> expected;
+
+  /** Like {@link #expected}, but with one value that corresponds to no actual value. */
+  private List<Double> expectedWithOneMissing;
+
+  @Setup
+  public void setUp() {
+    expect = failures.builder();
+    correspondence = correspondenceType.correspondence();
+    Random random = new Random(0);
+    actual = new ArrayList<>();
+    expected = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      actual.add((double) i);
+      expected.add(i + 0.1);
+    }
+    Collections.shuffle(actual, random);
+    Collections.shuffle(expected, random);
+    expectedWithOneMissing = new ArrayList<>(expected);
+    expectedWithOneMissing.set(size / 2, -1.0);
+
+    checkOutcome(false, containsExactly_pass(), "containsExactly_pass");
+    checkOutcome(false, containsExactlyInOrder_pass(), "containsExactlyInOrder_pass");
+    checkOutcome(true, containsExactly_fail(), "containsExactly_fail");
+  }
+
+  @Benchmark
+  public AssertionError containsExactly_pass() {
+    expect.that(actual).comparingElementsUsing(correspondence).containsExactlyElementsIn(expected);
+    return failures.takeFailure();
+  }
+
+  @Benchmark
+  public AssertionError containsExactlyInOrder_pass() {
+    expect
+        .that(actual)
+        .comparingElementsUsing(correspondence)
+        .containsExactlyElementsIn(actual)
+        .inOrder();
+    return failures.takeFailure();
+  }
+
+  @Benchmark
+  public AssertionError containsExactly_fail() {
+    expect
+        .that(actual)
+        .comparingElementsUsing(correspondence)
+        .containsExactlyElementsIn(expectedWithOneMissing);
+    return failures.takeFailure();
+  }
+}
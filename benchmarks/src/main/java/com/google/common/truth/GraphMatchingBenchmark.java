@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.primitives.Ints;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link GraphMatching}, through both its indexed and its {@link Multimap} interfaces,
+ * on random graphs that have a perfect matching and on graphs that are one edge short of one (the
+ * graphs behind passing and failing assertions, respectively).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class GraphMatchingBenchmark {
+  @Param({"10", "1000", "100000"})
+  int size;
+
+  /** The number of edges from each LHS vertex, including the one in the hidden perfect matching. */
+  @Param({"2", "10"})
+  int degree;
+
+  private IndexedGraph perfect;
+  private IndexedGraph deficient;
+  private Multimap<Integer, Integer> perfectMultimap;
+  private Multimap<Integer, Integer> deficientMultimap;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(0);
+    List<Integer> permutation = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      permutation.add(i);
+    }
+    Collections.shuffle(permutation, random);
+    perfectMultimap = LinkedHashMultimap.create();
+    for (int lhs = 0; lhs < size; lhs++) {
+      perfectMultimap.put(lhs, permutation.get(lhs));
+      for (int i = 1; i < degree; i++) {
+        perfectMultimap.put(lhs, random.nextInt(size));
+      }
+    }
+    // With no edges to one RHS vertex, at most size - 1 vertices can be matched.
+    deficientMultimap = LinkedHashMultimap.create(perfectMultimap);
+    deficientMultimap.values().removeAll(Collections.singleton(0));
+    perfect = new IndexedGraph(perfectMultimap, size);
+    deficient = new IndexedGraph(deficientMultimap, size);
+
+    checkState(matchedCount(indexed_perfect()) == size);
+    checkState(matchedCount(indexed_deficient()) == size - 1);
+    checkState(multimap_perfect().size() == size);
+    checkState(multimap_deficient().size() == size - 1);
+  }
+
+  @Benchmark
+  public int[] indexed_perfect() {
+    return perfect.match();
+  }
+
+  @Benchmark
+  public int[] indexed_deficient() {
+    return deficient.match();
+  }
+
+  @Benchmark
+  public ImmutableBiMap<Integer, Integer> multimap_perfect() {
+    return GraphMatching.maximumCardinalityBipartiteMatching(perfectMultimap);
+  }
+
+  @Benchmark
+  public ImmutableBiMap<Integer, Integer> multimap_deficient() {
+    return GraphMatching.maximumCardinalityBipartiteMatching(deficientMultimap);
+  }
+
+  private static int matchedCount(int[] matching) {
+    int count = 0;
+    for (int rhs : matching) {
+      if (rhs != GraphMatching.UNMATCHED) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /** A graph in the compressed sparse row form of {@link GraphMatching}'s indexed interface. */
+  private static final class IndexedGraph {
+    final int rhsCount;
+    final int[] adjacencyStarts;
+    final int[] adjacency;
+
+    IndexedGraph(Multimap<Integer, Integer> graph, int size) {
+      this.rhsCount = size;
+      this.adjacencyStarts = new int[size + 1];
+      List<Integer> adjacency = new ArrayList<>();
+      for (int lhs = 0; lhs < size; lhs++) {
+        adjacencyStarts[lhs] = adjacency.size();
+        adjacency.addAll(graph.get(lhs));
+      }
+      adjacencyStarts[size] = adjacency.size();
+      this.adjacency = Ints.toArray(adjacency);
+    }
+
+    int[] match() {
+      return GraphMatching.maximumCardinalityBipartiteMatching(
+          rhsCount, adjacencyStarts, adjacency);
+    }
+  }
+}
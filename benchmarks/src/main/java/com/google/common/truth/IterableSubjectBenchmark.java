@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.RecordingFailureStrategy.checkOutcome;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link IterableSubject#containsExactlyElementsIn}, {@link
+ * IterableSubject#containsAllIn}, and {@link IterableSubject#containsNoDuplicates}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class IterableSubjectBenchmark {
+  @Param({"10", "1000", "100000"})
+  int size;
+
+  private final RecordingFailureStrategy failures = new RecordingFailureStrategy();
+  private StandardSubjectBuilder expect;
+
+  /** Distinct elements, in random order. */
+  private List<Integer> actual;
+
+  /** The same elements as {@link #actual}, in a different order. */
+  private List<Integer> shuffled;
+
+  /** Like {@link #shuffled}, but with one element replaced by an element {@link #actual} lacks. */
+  private List<Integer> shuffledWithOneMissing;
+
+  /** Every other element of {@link #actual}, in order. */
+  private List<Integer> subsequence;
+
+  /** Like {@link #actual}, but with its last element replaced by a duplicate of its first. */
+  private List<Integer> withDuplicate;
+
+  @Setup
+  public void setUp() {
+    expect = failures.builder();
+    Random random = new Random(0);
+    actual = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      actual.add(i);
+    }
+    Collections.shuffle(actual, random);
+    shuffled = new ArrayList<>(actual);
+    Collections.shuffle(shuffled, random);
+    shuffledWithOneMissing = new ArrayList<>(shuffled);
+    shuffledWithOneMissing.set(size / 2, -1);
+    subsequence = new ArrayList<>();
+    for (int i = 0; i < size; i += 2) {
+      subsequence.add(actual.get(i));
+    }
+    withDuplicate = new ArrayList<>(actual);
+    withDuplicate.set(size - 1, actual.get(0));
+
+    checkOutcome(false, containsExactlyInOrder_pass(), "containsExactlyInOrder_pass");
+    checkOutcome(false, containsExactly_pass(), "containsExactly_pass");
+    checkOutcome(true, containsExactly_fail(), "containsExactly_fail");
+    checkOutcome(false, containsAllIn_pass(), "containsAllIn_pass");
+    checkOutcome(true, containsAllIn_fail(), "containsAllIn_fail");
+    checkOutcome(false, containsNoDuplicates_pass(), "containsNoDuplicates_pass");
+    checkOutcome(true, containsNoDuplicates_fail(), "containsNoDuplicates_fail");
+  }
+
+  @Benchmark
+  public AssertionError containsExactlyInOrder_pass() {
+    expect.that(actual).containsExactlyElementsIn(actual).inOrder();
+    return failures.takeFailure();
+  }
+
+  @Benchmark
+  public AssertionError containsExactly_pass() {
+    expect.that(actual).containsExactlyElementsIn(shuffled);
+    return failures.takeFailure();
+  }
+
+  @Benchmark
+  public AssertionError containsExactly_fail() {
+    expect.that(actual).containsExactlyElementsIn(shuffledWithOneMissing);
+    return failures.takeFailure();
+  }
+
+  @Benchmark
+  public AssertionError containsAllIn_pass() {
+    expect.that(actual).containsAllIn(subsequence).inOrder();
+    return failures.takeFailure();
+  }
+
+  @Benchmark
+  public AssertionError containsAllIn_fail() {
+    expect.that(actual).containsAllIn(shuffledWithOneMissing);
+    return failures.takeFailure();
+  }
+
+  @Benchmark
+  public AssertionError containsNoDuplicates_pass() {
+    expect.that(actual).containsNoDuplicates();
+    return failures.takeFailure();
+  }
+
+  @Benchmark
+  public AssertionError containsNoDuplicates_fail() {
+    expect.that(withDuplicate).containsNoDuplicates();
+    return failures.takeFailure();
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.RecordingFailureStrategy.checkOutcome;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks {@link MapSubject#containsExactlyEntriesIn}. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MapSubjectBenchmark {
+  @Param({"10", "1000", "100000"})
+  int size;
+
+  private final RecordingFailureStrategy failures = new RecordingFailureStrategy();
+  private StandardSubjectBuilder expect;
+
+  private Map<Integer, String> actual;
+
+  /** A map equal to {@link #actual}, with its entries in a different order. */
+  private Map<Integer, String> shuffled;
+
+  /** Like {@link #shuffled}, but with one key mapped to a different value. */
+  private Map<Integer, String> shuffledWithOneWrongValue;
+
+  @Setup
+  public void setUp() {
+    expect = failures.builder();
+    Random random = new Random(0);
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      keys.add(i);
+    }
+    Collections.shuffle(keys, random);
+    actual = new LinkedHashMap<>();
+    for (int key : keys) {
+      actual.put(key, "value" + key);
+    }
+    Collections.shuffle(keys, random);
+    shuffled = new LinkedHashMap<>();
+    for (int key : keys) {
+      shuffled.put(key, "value" + key);
+    }
+    shuffledWithOneWrongValue = new LinkedHashMap<>(shuffled);
+    shuffledWithOneWrongValue.put(size / 2, "wrong");
+
+    checkOutcome(false, containsExactlyInOrder_pass(), "containsExactlyInOrder_pass");
+    checkOutcome(false, containsExactly_pass(), "containsExactly_pass");
+    checkOutcome(true, containsExactly_fail(), "containsExactly_fail");
+  }
+
+  @Benchmark
+  public AssertionError containsExactlyInOrder_pass() {
+    expect.that(actual).containsExactlyEntriesIn(actual).inOrder();
+    return failures.takeFailure();
+  }
+
+  @Benchmark
+  public AssertionError containsExactly_pass() {
+    expect.that(actual).containsExactlyEntriesIn(shuffled);
+    return failures.takeFailure();
+  }
+
+  @Benchmark
+  public AssertionError containsExactly_fail() {
+    expect.that(actual).containsExactlyEntriesIn(shuffledWithOneWrongValue);
+    return failures.takeFailure();
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the simplest passing assertions, which tests make by the million. Run with {@code
+ * -prof gc} to see their allocation in {@code gc.alloc.rate.norm}. A passing assertion builds no
+ * failure metadata, so escape analysis can often remove the subject.
+ *
+ * <p>Only the {@code String} assertion allocates nothing. The primitive assertions still allocate,
+ * because {@code assertThat(int)} and its siblings box the actual value, and the subject keeps it
+ * boxed: expect 16 bytes per operation for {@code int}, 24 for {@code long} and {@code double}, and
+ * 32 for {@code int_isGreaterThan}, which boxes its argument too. These figures are for a 64-bit
+ * HotSpot JVM with compressed pointers. The benchmark only reports the allocation. Nothing asserts
+ * that it stays at these figures, and the JIT doesn't promise to remove the subject.
+ *
+ * <p>The values are outside the range of {@link Integer#valueOf}'s cache, so that boxing them
+ * shows up as allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PassingAssertionBenchmark {
+  // Not final, so that the JIT can't treat the values as constants.
+  private int intValue = 1000;
+  private long longValue = 1000L;
+  private double doubleValue = 1000.5;
+  private String stringValue = "value";
+
+  @Benchmark
+  public void int_isEqualTo() {
+    assertThat(intValue).isEqualTo(intValue);
+  }
+
+  @Benchmark
+  public void long_isEqualTo() {
+    assertThat(longValue).isEqualTo(longValue);
+  }
+
+  @Benchmark
+  public void double_isEqualTo() {
+    assertThat(doubleValue).isEqualTo(doubleValue);
+  }
+
+  @Benchmark
+  public void string_isEqualTo() {
+    assertThat(stringValue).isEqualTo(stringValue);
+  }
+
+  @Benchmark
+  public void int_isGreaterThan() {
+    assertThat(intValue).isGreaterThan(intValue - 1);
+  }
+}
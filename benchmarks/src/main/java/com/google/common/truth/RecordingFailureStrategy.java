@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * A {@link FailureStrategy} that keeps the latest failure instead of throwing it, so that the
+ * failing variant of a benchmark measures the assertion, including building its failure message,
+ * without the cost of unwinding the stack.
+ */
+final class RecordingFailureStrategy implements FailureStrategy {
+  @NullableDecl private AssertionError failure;
+
+  /** Returns a builder whose assertions record their failures here. */
+  StandardSubjectBuilder builder() {
+    return StandardSubjectBuilder.forCustomFailureStrategy(this);
+  }
+
+  @Override
+  public void fail(AssertionError failure) {
+    this.failure = failure;
+  }
+
+  /** Returns the failure recorded since the last call, or null if there was none. */
+  @NullableDecl
+  AssertionError takeFailure() {
+    AssertionError result = failure;
+    failure = null;
+    return result;
+  }
+
+  /**
+   * Checks that the result of a benchmark method is a failure if and only if one is expected, so
+   * that a benchmark can't silently measure the wrong path.
+   */
+  static void checkOutcome(boolean expectFailure, @NullableDecl Object result, String variant) {
+    checkState(
+        (result != null) == expectFailure,
+        "%s was expected to %s",
+        variant,
+        expectFailure ? "fail" : "pass");
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link StackTraceCleaner#cleanStackTrace} on a synthetic stack trace shaped like that
+ * of a failing test: Truth frames on top, then a test method, then streaks of application,
+ * concurrency, reflection, and JUnit frames, and finally the JUnit runner. The trace is cleaned
+ * either on its own or on a failure whose cause has the same trace.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StackTraceCleanerBenchmark {
+  /** The number of frames between the test method and the JUnit runner. */
+  @Param({"25", "100", "400"})
+  int depth;
+
+  private StackTraceElement[] stackTrace;
+  private final AssertionError failure = new AssertionError("failure");
+  private final AssertionError failureWithCause = new AssertionError("failure with cause");
+  private final RuntimeException cause = new RuntimeException("cause");
+
+  @Setup
+  public void setUp() {
+    List<StackTraceElement> frames = new ArrayList<>();
+    frames.add(frame("com.google.common.truth.FailureMetadata", "doFail"));
+    frames.add(frame("com.google.common.truth.FailureMetadata", "failEqualityCheck"));
+    frames.add(frame("com.google.common.truth.Subject", "failEqualityCheck"));
+    frames.add(frame("com.google.common.truth.Subject", "isEqualTo"));
+    frames.add(frame("com.example.widget.WidgetTest", "testWidget"));
+    String[][] streaks = {
+      {"com.example.widget.Widget", "render"},
+      {"com.google.common.util.concurrent.MoreExecutors$DirectExecutor", "execute"},
+      {"sun.reflect.NativeMethodAccessorImpl", "invoke"},
+      {"java.lang.reflect.Method", "invoke"},
+      {"org.junit.runners.model.FrameworkMethod$1", "runReflectiveCall"},
+      {"org.junit.internal.runners.statements.InvokeMethod", "evaluate"},
+    };
+    for (int i = 0; i < depth; i++) {
+      // Streaks of 3 frames of each kind.
+      String[] streak = streaks[(i / 3) % streaks.length];
+      frames.add(frame(streak[0], streak[1]));
+    }
+    frames.add(frame("org.junit.runners.ParentRunner", "run"));
+    frames.add(frame("org.junit.runner.JUnitCore", "run"));
+    frames.add(frame("org.junit.runner.JUnitCore", "main"));
+    stackTrace = frames.toArray(new StackTraceElement[0]);
+    failureWithCause.initCause(cause);
+
+    checkState(clean().getStackTrace().length < stackTrace.length);
+    checkState(clean_withCause().getCause().getStackTrace().length < stackTrace.length);
+  }
+
+  /** Cleans the trace of a failure, including resetting the trace. */
+  @Benchmark
+  public Throwable clean() {
+    failure.setStackTrace(stackTrace);
+    StackTraceCleaner.cleanStackTrace(failure);
+    return failure;
+  }
+
+  /** Cleans the traces of a failure and its cause, including resetting the traces. */
+  @Benchmark
+  public Throwable clean_withCause() {
+    failureWithCause.setStackTrace(stackTrace);
+    cause.setStackTrace(stackTrace);
+    StackTraceCleaner.cleanStackTrace(failureWithCause);
+    return failureWithCause;
+  }
+
+  private static StackTraceElement frame(String className, String methodName) {
+    String simpleName = className.substring(className.lastIndexOf('.') + 1);
+    return new StackTraceElement(className, methodName, simpleName + ".java", 42);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.RecordingFailureStrategy.checkOutcome;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks a failing {@link StringSubject#isEqualTo} on large multi-line strings, whose failure
+ * message includes a line diff.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StringDiffBenchmark {
+  /** The number of lines in each string. */
+  @Param({"1000", "100000"})
+  int lines;
+
+  /** The number of lines changed, spread evenly through the actual string. */
+  @Param({"1", "100"})
+  int changes;
+
+  private final RecordingFailureStrategy failures = new RecordingFailureStrategy();
+  private StandardSubjectBuilder expect;
+  private String expected;
+  private String actual;
+
+  @Setup
+  public void setUp() {
+    expect = failures.builder();
+    StringBuilder expectedBuilder = new StringBuilder();
+    StringBuilder actualBuilder = new StringBuilder();
+    int changeInterval = Math.max(1, lines / changes);
+    for (int i = 0; i < lines; i++) {
+      // Lines repeat every 100, as in generated files with boilerplate.
+      String line = "line " + (i % 100) + " of a generated file\n";
+      expectedBuilder.append(line);
+      actualBuilder.append(i % changeInterval == changeInterval / 2 ? "changed\n" : line);
+    }
+    expected = expectedBuilder.toString();
+    actual = actualBuilder.toString();
+
+    checkOutcome(true, isEqualTo_fail(), "isEqualTo_fail");
+  }
+
+  @Benchmark
+  public AssertionError isEqualTo_fail() {
+    expect.that(actual).isEqualTo(expected);
+    return failures.takeFailure();
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth.extensions.proto;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.Lists;
+import com.google.protobuf.DescriptorProtos;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks {@link ProtoTruthMessageDifferencer#diffMessages} on a {@link FileDescriptorSet} made
+ * of copies of the descriptor of {@code descriptor.proto}, which has deeply nested repeated fields.
+ * The matching variants compare equal sets, which under {@code ignoringRepeatedFieldOrder()} list
+ * their files in opposite orders. The mismatching variants rename the last message type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ProtoTruthMessageDifferencerBenchmark {
+  /** The number of copies of the file descriptor in each set. */
+  @Param({"1", "10", "100"})
+  int size;
+
+  @Param ConfigType configType;
+
+  public enum ConfigType {
+    DEFAULT {
+      @Override
+      FluentEqualityConfig config() {
+        return FluentEqualityConfig.defaultInstance();
+      }
+    },
+    IGNORING_REPEATED_FIELD_ORDER {
+      @Override
+      FluentEqualityConfig config() {
+        return FluentEqualityConfig.defaultInstance().ignoringRepeatedFieldOrder();
+      }
+    };
+
+    abstract FluentEqualityConfig config();
+  }
+
+  private ProtoTruthMessageDifferencer differencer;
+  private FileDescriptorSet expected;
+  private FileDescriptorSet matching;
+  private FileDescriptorSet mismatching;
+
+  @Setup
+  public void setUp() {
+    FileDescriptorProto file = DescriptorProtos.getDescriptor().toProto();
+    FileDescriptorSet.Builder expectedBuilder = FileDescriptorSet.newBuilder();
+    for (int i = 0; i < size; i++) {
+      expectedBuilder.addFile(file.toBuilder().setName("descriptor" + i + ".proto"));
+    }
+    expected = expectedBuilder.build();
+
+    FileDescriptorSet.Builder matchingBuilder = FileDescriptorSet.newBuilder();
+    if (configType == ConfigType.IGNORING_REPEATED_FIELD_ORDER) {
+      matchingBuilder.addAllFile(Lists.reverse(expected.getFileList()));
+    } else {
+      matchingBuilder.addAllFile(expected.getFileList());
+    }
+    matching = matchingBuilder.build();
+
+    FileDescriptorSet.Builder mismatchingBuilder = expected.toBuilder();
+    FileDescriptorProto.Builder lastFile = mismatchingBuilder.getFileBuilder(size - 1);
+    DescriptorProto.Builder lastMessage =
+        lastFile.getMessageTypeBuilder(lastFile.getMessageTypeCount() - 1);
+    lastMessage.setName(lastMessage.getName() + "Renamed");
+    mismatching = mismatchingBuilder.build();
+
+    differencer =
+        ProtoTruthMessageDifferencer.create(configType.config(), expected.getDescriptorForType());
+    checkState(differencer.diffMessages(matching, expected).isMatched());
+    checkState(!differencer.diffMessages(mismatching, expected).isMatched());
+  }
+
+  @Benchmark
+  public Object diffMessages_matching() {
+    return differencer.diffMessages(matching, expected);
+  }
+
+  @Benchmark
+  public Object diffMessages_mismatching() {
+    return differencer.diffMessages(mismatching, expected);
+  }
+
+  /** Also renders the report, as a failing assertion does. */
+  @Benchmark
+  public String diffMessages_mismatching_printed() {
+    return differencer
+        .diffMessages(mismatching, expected)
+        .printToString(/* reportMismatchesOnly = */ true);
+  }
+}
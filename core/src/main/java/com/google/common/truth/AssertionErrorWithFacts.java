@@ -18,14 +18,19 @@ package com.google.common.truth;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.truth.Fact.makeMessage;
 
+import com.google.common.annotations.GwtIncompatible;
 import com.google.common.collect.ImmutableList;
+import com.google.common.truth.LazyStackTraceCleaning.LazilyCleanedError;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 
 /**
  * An {@link AssertionError} composed of structured {@link Fact} instances and other string
  * messages.
  */
-final class AssertionErrorWithFacts extends AssertionError implements ErrorWithFacts {
+final class AssertionErrorWithFacts extends AssertionError
+    implements ErrorWithFacts, LazilyCleanedError {
   static AssertionErrorWithFacts create(
       ImmutableList<String> messages, ImmutableList<Fact> facts, @NullableDecl Throwable cause) {
     return new AssertionErrorWithFacts(messages, facts, cause);
@@ -36,6 +41,8 @@ final class AssertionErrorWithFacts extends AssertionError implements ErrorWithF
   /** Separate cause field, in case initCause() fails. */
   @NullableDecl private final Throwable cause;
 
+  private final LazyStackTraceCleaning lazyStackTraceCleaning = new LazyStackTraceCleaning();
+
   private AssertionErrorWithFacts(
       ImmutableList<String> messages, ImmutableList<Fact> facts, @NullableDecl Throwable cause) {
     super(makeMessage(messages, facts));
@@ -55,6 +62,30 @@ final class AssertionErrorWithFacts extends AssertionError implements ErrorWithF
     return cause;
   }
 
+  @Override
+  public void cleanStackTraceOnFirstUse() {
+    lazyStackTraceCleaning.defer();
+  }
+
+  @Override
+  public StackTraceElement[] getStackTrace() {
+    lazyStackTraceCleaning.cleanIfPending(this);
+    return super.getStackTrace();
+  }
+
+  @Override
+  public void printStackTrace(PrintStream s) {
+    LazyStackTraceCleaning.cleanPendingTraces(this);
+    super.printStackTrace(s);
+  }
+
+  @Override
+  @GwtIncompatible("java.io.PrintWriter")
+  public void printStackTrace(PrintWriter s) {
+    LazyStackTraceCleaning.cleanPendingTraces(this);
+    super.printStackTrace(s);
+  }
+
   @Override
   public String toString() {
     return getLocalizedMessage();
@@ -18,6 +18,8 @@ package com.google.common.truth;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.truth.DoubleSubject.checkTolerance;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Doubles;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 
 /**
@@ -84,6 +86,55 @@ public abstract class Correspondence<A, E> {
       return MathUtil.equalWithinTolerance(actualDouble, expectedDouble, tolerance);
     }
 
+    @Override
+    @NullableDecl
+    public Object actualBucket(@NullableDecl Number actual) {
+      return bucket(actual);
+    }
+
+    @Override
+    @NullableDecl
+    public Iterable<?> expectedBuckets(@NullableDecl Number expected) {
+      @NullableDecl Object bucket = bucket(expected);
+      if (bucket == null) {
+        return null;
+      } else if (tolerance == 0.0) {
+        return ImmutableList.of(bucket);
+      } else {
+        long index = (Long) bucket;
+        return ImmutableList.of(index - 1, index, index + 1);
+      }
+    }
+
+    /**
+     * Returns the bucket of the given value, or null if it should be compared with everything. The
+     * buckets are intervals of width {@code 2 * tolerance}, so that values within tolerance of each
+     * other are in the same or adjacent buckets even after rounding errors.
+     */
+    @NullableDecl
+    private Object bucket(@NullableDecl Number value) {
+      if (value == null || !isValid(tolerance)) {
+        return null; // compare() will throw, so let it
+      }
+      double doubleValue = value.doubleValue();
+      if (tolerance == 0.0) {
+        // Only equal values correspond. Adding 0.0 turns -0.0 into 0.0, which is equal to it.
+        return Doubles.isFinite(doubleValue) ? Double.valueOf(doubleValue + 0.0) : null;
+      }
+      double index = Math.floor(doubleValue / (2 * tolerance));
+      // Beyond this, the division's rounding errors could move a value by more than a bucket.
+      return Math.abs(index) < 0x1p50 ? Long.valueOf((long) index) : null;
+    }
+
+    private static boolean isValid(double tolerance) {
+      try {
+        checkTolerance(tolerance);
+        return true;
+      } catch (IllegalArgumentException e) {
+        return false;
+      }
+    }
+
     @Override
     public String toString() {
       return "is a finite number within " + tolerance + " of";
@@ -96,6 +147,36 @@ public abstract class Correspondence<A, E> {
    */
   public abstract boolean compare(@NullableDecl A actual, @NullableDecl E expected);
 
+  /**
+   * Returns a key identifying the bucket which the {@code actual} value falls into, or {@code null}
+   * if it should be compared with every expected value. See {@link #expectedBuckets}.
+   *
+   * <p>The implementation on the {@link Correspondence} base class always returns {@code null}.
+   */
+  @NullableDecl
+  public Object actualBucket(@NullableDecl A actual) {
+    return null;
+  }
+
+  /**
+   * Returns the keys of the buckets which an actual value must fall into in order to correspond to
+   * the {@code expected} value, or {@code null} if it should be compared with every actual value.
+   *
+   * <p>Subclasses may optionally override this and {@link #actualBucket} to let assertions on
+   * large collections skip pairs of values which can't correspond. If {@link #compare} returns
+   * {@code true} for a pair of values whose methods both return non-null, then the actual value's
+   * key must be one of the expected value's keys. The keys must have consistent implementations of
+   * {@link Object#equals} and {@link Object#hashCode}. For example, the implementation returned by
+   * {@link #tolerance} puts numbers into buckets of consecutive intervals, and returns the interval
+   * containing each expected number along with the intervals on either side.
+   *
+   * <p>The implementation on the {@link Correspondence} base class always returns {@code null}.
+   */
+  @NullableDecl
+  public Iterable<?> expectedBuckets(@NullableDecl E expected) {
+    return null;
+  }
+
   /**
    * Returns a {@link String} describing the difference between the {@code actual} and {@code
    * expected} values, if possible, or {@code null} if not.
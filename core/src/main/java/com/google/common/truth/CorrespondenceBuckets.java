@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import com.google.common.primitives.Ints;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * Uses the buckets declared by a {@link Correspondence} (see {@link
+ * Correspondence#expectedBuckets}) to find, for each element on one side, the elements on the other
+ * side which it might correspond to.
+ *
+ * <p>The candidates are returned as an array with, for each element, either the ascending indexes
+ * of its candidates or null if every element is a candidate.
+ */
+final class CorrespondenceBuckets {
+  private final Object[] actualBuckets;
+  private final Iterable<?>[] expectedBuckets;
+
+  /**
+   * Returns the buckets of the given elements, or null if the correspondence doesn't bucket the
+   * elements on one side or the other, in which case every pair of elements is a candidate.
+   */
+  @NullableDecl
+  static <A, E> CorrespondenceBuckets create(
+      Correspondence<A, E> correspondence, List<? extends A> actual, List<? extends E> expected) {
+    boolean anyActualBucketed = false;
+    Object[] actualBuckets = new Object[actual.size()];
+    for (int i = 0; i < actual.size(); i++) {
+      actualBuckets[i] = correspondence.actualBucket(actual.get(i));
+      anyActualBucketed |= actualBuckets[i] != null;
+    }
+    if (!anyActualBucketed) {
+      return null;
+    }
+    boolean anyExpectedBucketed = false;
+    Iterable<?>[] expectedBuckets = new Iterable<?>[expected.size()];
+    for (int i = 0; i < expected.size(); i++) {
+      expectedBuckets[i] = correspondence.expectedBuckets(expected.get(i));
+      anyExpectedBucketed |= expectedBuckets[i] != null;
+    }
+    if (!anyExpectedBucketed) {
+      return null;
+    }
+    return new CorrespondenceBuckets(actualBuckets, expectedBuckets);
+  }
+
+  private CorrespondenceBuckets(Object[] actualBuckets, Iterable<?>[] expectedBuckets) {
+    this.actualBuckets = actualBuckets;
+    this.expectedBuckets = expectedBuckets;
+  }
+
+  /** Returns the candidate expected elements for each actual element. */
+  int[][] expectedCandidates() {
+    Map<Object, List<Integer>> expectedIndexesByBucket = new HashMap<>();
+    List<Integer> unbucketedExpectedIndexes = new ArrayList<>();
+    for (int expectedIndex = 0; expectedIndex < expectedBuckets.length; expectedIndex++) {
+      if (expectedBuckets[expectedIndex] == null) {
+        unbucketedExpectedIndexes.add(expectedIndex);
+        continue;
+      }
+      for (Object bucket : expectedBuckets[expectedIndex]) {
+        List<Integer> indexes = expectedIndexesByBucket.get(bucket);
+        if (indexes == null) {
+          indexes = new ArrayList<>();
+          expectedIndexesByBucket.put(bucket, indexes);
+        }
+        // If an element gives the same bucket twice, it's already at the end of the list.
+        if (indexes.isEmpty() || indexes.get(indexes.size() - 1) != expectedIndex) {
+          indexes.add(expectedIndex);
+        }
+      }
+    }
+    int[][] candidates = new int[actualBuckets.length][];
+    for (int actualIndex = 0; actualIndex < actualBuckets.length; actualIndex++) {
+      if (actualBuckets[actualIndex] != null) {
+        List<Integer> indexes = new ArrayList<>(unbucketedExpectedIndexes);
+        List<Integer> bucketIndexes = expectedIndexesByBucket.get(actualBuckets[actualIndex]);
+        if (bucketIndexes != null) {
+          indexes.addAll(bucketIndexes);
+        }
+        candidates[actualIndex] = sortedDistinct(Ints.toArray(indexes));
+      }
+    }
+    return candidates;
+  }
+
+  /** Returns the candidate actual elements for each expected element. */
+  int[][] actualCandidates() {
+    Map<Object, List<Integer>> actualIndexesByBucket = new HashMap<>();
+    List<Integer> unbucketedActualIndexes = new ArrayList<>();
+    for (int actualIndex = 0; actualIndex < actualBuckets.length; actualIndex++) {
+      if (actualBuckets[actualIndex] == null) {
+        unbucketedActualIndexes.add(actualIndex);
+        continue;
+      }
+      List<Integer> indexes = actualIndexesByBucket.get(actualBuckets[actualIndex]);
+      if (indexes == null) {
+        indexes = new ArrayList<>();
+        actualIndexesByBucket.put(actualBuckets[actualIndex], indexes);
+      }
+      indexes.add(actualIndex);
+    }
+    int[][] candidates = new int[expectedBuckets.length][];
+    for (int expectedIndex = 0; expectedIndex < expectedBuckets.length; expectedIndex++) {
+      if (expectedBuckets[expectedIndex] != null) {
+        List<Integer> indexes = new ArrayList<>(unbucketedActualIndexes);
+        for (Object bucket : expectedBuckets[expectedIndex]) {
+          List<Integer> bucketIndexes = actualIndexesByBucket.get(bucket);
+          if (bucketIndexes != null) {
+            indexes.addAll(bucketIndexes);
+          }
+        }
+        candidates[expectedIndex] = sortedDistinct(Ints.toArray(indexes));
+      }
+    }
+    return candidates;
+  }
+
+  private static int[] sortedDistinct(int[] indexes) {
+    Arrays.sort(indexes);
+    int size = 0;
+    for (int i = 0; i < indexes.length; i++) {
+      if (size == 0 || indexes[size - 1] != indexes[i]) {
+        indexes[size++] = indexes[i];
+      }
+    }
+    return size == indexes.length ? indexes : Arrays.copyOf(indexes, size);
+  }
+}
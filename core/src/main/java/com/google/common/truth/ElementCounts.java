@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * Counts the occurrences of each distinct element, keeping the distinct elements in order of first
+ * occurrence, in expected constant time per element (see {@link ElementIndex}).
+ */
+final class ElementCounts<T> {
+  private final ElementIndex distinctElements = new ElementIndex();
+  private final List<Integer> counts = new ArrayList<>();
+
+  /** Counts the given elements. */
+  static <T> ElementCounts<T> of(Iterable<T> elements) {
+    ElementCounts<T> counts = new ElementCounts<>();
+    for (T element : elements) {
+      counts.add(element);
+    }
+    return counts;
+  }
+
+  private void add(@NullableDecl T element) {
+    int index = distinctElements.indexOf(element);
+    if (index == -1) {
+      distinctElements.add(element);
+      counts.add(1);
+    } else {
+      counts.set(index, counts.get(index) + 1);
+    }
+  }
+
+  /** Returns the number of distinct elements. */
+  int distinctCount() {
+    return distinctElements.size();
+  }
+
+  /** Returns the distinct element with the given index, in order of first occurrence. */
+  @SuppressWarnings("unchecked") // Only elements of type T are added.
+  T distinctElement(int index) {
+    return (T) distinctElements.get(index);
+  }
+
+  /** Returns the number of occurrences of the distinct element with the given index. */
+  int count(int index) {
+    return counts.get(index);
+  }
+}
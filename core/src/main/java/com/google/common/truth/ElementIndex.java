@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import com.google.common.base.Objects;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * A list of elements, some of which may be removed, in which the earliest remaining element equal
+ * to a given object can be found in expected constant time. The result is the same as that of a
+ * linear scan calling {@code Objects.equal(object, element)} on each remaining element.
+ *
+ * <p>Elements are indexed by {@link Object#hashCode}. Elements whose hashing is known to be broken
+ * (see {@link KnownBrokenHashCodes}) are kept out of the index and are found by a linear scan
+ * instead, as are all elements equal to such a value.
+ */
+final class ElementIndex {
+  private final List<Object> elements = new ArrayList<>();
+  private boolean[] removed = new boolean[16];
+  private boolean[] unhashed = new boolean[16];
+
+  /** Indexes, in ascending order, of the elements equal to each key. May include removed ones. */
+  private final Map<Object, ArrayDeque<Integer>> hashedIndexes = new HashMap<>();
+
+  /** Indexes, in ascending order, of the remaining elements that could not be hashed. */
+  private final List<Integer> unhashedIndexes = new ArrayList<>();
+
+  private final KnownBrokenHashCodes knownBrokenHashCodes = new KnownBrokenHashCodes();
+
+  /** Appends the given element, returning its index. */
+  int add(@NullableDecl Object element) {
+    int index = elements.size();
+    elements.add(element);
+    if (index == removed.length) {
+      removed = Arrays.copyOf(removed, 2 * index);
+      unhashed = Arrays.copyOf(unhashed, 2 * index);
+    }
+    ArrayDeque<Integer> indexes =
+        knownBrokenHashCodes.contains(element) ? null : hashedIndexes(element);
+    if (indexes == null) {
+      unhashed[index] = true;
+      unhashedIndexes.add(index);
+    } else {
+      indexes.add(index);
+    }
+    return index;
+  }
+
+  /** Returns the number of elements added, including removed ones. */
+  int size() {
+    return elements.size();
+  }
+
+  /** Returns the element with the given index. */
+  @NullableDecl
+  Object get(int index) {
+    return elements.get(index);
+  }
+
+  /** Returns whether the element with the given index has been removed. */
+  boolean isRemoved(int index) {
+    return removed[index];
+  }
+
+  /** Removes the element with the given index, which must not have been removed already. */
+  void remove(int index) {
+    removed[index] = true;
+    if (unhashed[index]) {
+      unhashedIndexes.remove(Integer.valueOf(index));
+    }
+  }
+
+  /**
+   * Returns the index of the earliest remaining element which {@code element} is equal to, or -1
+   * if there is none.
+   */
+  int indexOf(@NullableDecl Object element) {
+    if (knownBrokenHashCodes.contains(element)) {
+      return linearIndexOf(element);
+    }
+    int index = -1;
+    ArrayDeque<Integer> indexes;
+    try {
+      indexes = hashedIndexes.get(element);
+    } catch (RuntimeException e) {
+      knownBrokenHashCodes.add(element);
+      return linearIndexOf(element);
+    }
+    if (indexes != null) {
+      // Removals leave stale entries behind, so we skip those lazily here.
+      while (!indexes.isEmpty() && removed[indexes.peekFirst()]) {
+        indexes.removeFirst();
+      }
+      if (!indexes.isEmpty()) {
+        index = indexes.peekFirst();
+      }
+    }
+    // The element might also equal one of the unhashed elements, possibly an earlier one.
+    for (int unhashedIndex : unhashedIndexes) {
+      if (index != -1 && unhashedIndex > index) {
+        break;
+      }
+      if (Objects.equal(element, elements.get(unhashedIndex))) {
+        return unhashedIndex;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Returns the indexes of the elements equal to the given element, creating an empty entry if
+   * necessary, or null if the element's {@code hashCode()} turns out to throw.
+   */
+  @NullableDecl
+  private ArrayDeque<Integer> hashedIndexes(@NullableDecl Object element) {
+    try {
+      ArrayDeque<Integer> indexes = hashedIndexes.get(element);
+      if (indexes == null) {
+        indexes = new ArrayDeque<>();
+        hashedIndexes.put(element, indexes);
+      }
+      return indexes;
+    } catch (RuntimeException e) {
+      knownBrokenHashCodes.add(element);
+      return null;
+    }
+  }
+
+  private int linearIndexOf(@NullableDecl Object element) {
+    for (int i = 0; i < elements.size(); i++) {
+      if (!removed[i] && Objects.equal(element, elements.get(i))) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
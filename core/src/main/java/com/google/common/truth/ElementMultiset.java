@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * An ordered multiset of elements from which the earliest element equal to a given object can be
+ * removed. This behaves exactly like calling {@link List#remove(Object)} repeatedly on an {@link
+ * ArrayList}, but each removal takes expected constant time instead of linear time (see {@link
+ * ElementIndex}).
+ */
+final class ElementMultiset {
+  private final ElementIndex elements = new ElementIndex();
+  private int remaining;
+
+  ElementMultiset(Iterable<?> elements) {
+    for (Object element : elements) {
+      this.elements.add(element);
+    }
+    this.remaining = this.elements.size();
+  }
+
+  /**
+   * Removes the earliest remaining element which {@code element} is equal to, returning whether
+   * there was one.
+   */
+  boolean remove(@NullableDecl Object element) {
+    int index = elements.indexOf(element);
+    if (index == -1) {
+      return false;
+    }
+    elements.remove(index);
+    remaining--;
+    return true;
+  }
+
+  /** Returns whether all the elements have been removed. */
+  boolean isEmpty() {
+    return remaining == 0;
+  }
+
+  /** Returns the elements which have not been removed, in their original order. */
+  List<Object> remainingElements() {
+    List<Object> result = new ArrayList<>(remaining);
+    for (int i = 0; i < elements.size(); i++) {
+      if (!elements.isRemoved(i)) {
+        result.add(elements.get(i));
+      }
+    }
+    return result;
+  }
+}
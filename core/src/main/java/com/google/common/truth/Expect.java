@@ -15,21 +15,29 @@
  */
 package com.google.common.truth;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.padStart;
-import static com.google.common.base.Strings.repeat;
 import static com.google.common.base.Throwables.getStackTraceAsString;
 import static com.google.common.truth.Expect.TestPhase.AFTER;
 import static com.google.common.truth.Expect.TestPhase.BEFORE;
 import static com.google.common.truth.Expect.TestPhase.DURING;
 
 import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Objects;
 import com.google.common.base.Throwables;
 import com.google.common.truth.Truth.SimpleAssertionError;
-import com.google.errorprone.annotations.concurrent.GuardedBy;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 import org.junit.internal.AssumptionViolatedException;
 import org.junit.rules.ErrorCollector;
@@ -62,27 +70,88 @@ import org.junit.runners.model.Statement;
  * failures when the main thread finishes executing the test method. Thus, you must ensure that any
  * background threads complete their assertions before then, or your test may ignore their results.
  *
+ * <p>A test that checks many values, each of which may fail, can bound how many failures {@code
+ * Expect} keeps by creating it with {@link #createLimitingFailuresTo}.
+ *
  * <p>To record failures for the purpose of testing that an assertion fails when it should, see
  * {@link ExpectFailure}.
  */
 @GwtIncompatible("JUnit4")
 public final class Expect extends StandardSubjectBuilder implements TestRule {
 
+  /**
+   * Collects failures without locking, so that assertions from many threads don't contend.
+   *
+   * <p>Failures are reported in the order in which they were added to the queue, which for each
+   * thread is the order of its failing assertions. Failures from different threads are interleaved
+   * in whatever order their additions took effect.
+   *
+   * <p>The report includes every failure recorded before the test finished. A failure that might
+   * have been recorded too late to be included causes its assertion to throw {@link
+   * IllegalStateException}, as any assertion made after the test finished does: {@link #record}
+   * adds the failure before it reads the phase, and {@link #leaveRuleContext} sets the phase
+   * before it reads the failures, so at least one of them sees the other's write.
+   *
+   * <p>A gatherer with a failure limit retains at most that many distinct failures, and only counts
+   * the rest. A failure is a duplicate of an earlier one if the two would be reported identically:
+   * if they have the same class and message. (Such gatherers don't show stack traces.)
+   *
+   * <p>A gatherer with a sink passes each failure to the sink as soon as it's recorded, and it
+   * retains only the first failure, for the summary that fails the test.
+   *
+   * <p>A report's count of failures comes from the same snapshot as the failures it lists, so the
+   * two always agree. Without a sink, the count is computed from the snapshot: the failures it
+   * retains, the repeats of each, and the failures omitted. With a sink, the first failure is
+   * published before any failure is counted, and a snapshot reads the count before the first
+   * failure, so a report that counts any failures always shows the first.
+   */
   private static final class ExpectationGatherer implements FailureStrategy {
-    @GuardedBy("this")
-    private final List<AssertionError> failures = new ArrayList<AssertionError>();
+    private final Queue<RecordedFailure> failures = new ConcurrentLinkedQueue<RecordedFailure>();
+
+    /** The retained failures by signature, or null if every failure is retained separately. */
+    @NullableDecl private final ConcurrentMap<FailureSignature, RecordedFailure> bySignature;
+
+    private final AtomicInteger distinctCount = new AtomicInteger();
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong omittedCount = new AtomicLong();
 
-    @GuardedBy("this")
-    private TestPhase inRuleContext = BEFORE;
+    /** With a sink, the first failure, which is the only one retained. */
+    private final AtomicReference<RecordedFailure> firstFailure =
+        new AtomicReference<RecordedFailure>();
+
+    private volatile TestPhase inRuleContext = BEFORE;
 
     private final boolean showStackTrace;
+    private final int maxDistinctFailures;
+    @NullableDecl private final FailureStrategy sink;
 
     ExpectationGatherer(boolean showStackTrace) {
       this.showStackTrace = showStackTrace;
+      this.maxDistinctFailures = Integer.MAX_VALUE;
+      this.bySignature = null;
+      this.sink = null;
+    }
+
+    ExpectationGatherer(int maxDistinctFailures) {
+      checkArgument(
+          maxDistinctFailures > 0,
+          "maxDistinctFailures (%s) must be positive",
+          maxDistinctFailures);
+      this.showStackTrace = false;
+      this.maxDistinctFailures = maxDistinctFailures;
+      this.bySignature = new ConcurrentHashMap<FailureSignature, RecordedFailure>();
+      this.sink = null;
+    }
+
+    ExpectationGatherer(FailureStrategy sink) {
+      this.showStackTrace = false;
+      this.maxDistinctFailures = 1;
+      this.bySignature = null;
+      this.sink = checkNotNull(sink);
     }
 
     @Override
-    public synchronized void fail(AssertionError failure) {
+    public void fail(AssertionError failure) {
       record(failure);
     }
 
@@ -92,82 +161,198 @@ public final class Expect extends StandardSubjectBuilder implements TestRule {
     }
 
     synchronized void leaveRuleContext(@NullableDecl Throwable caught) throws Throwable {
-      try {
-        if (caught == null) {
-          doLeaveRuleContext();
-        } else {
-          doLeaveRuleContext(caught);
-        }
-        /*
-         * We'd like to check this even if an exception was thrown, but we don't want to override
-         * the "real" failure. TODO(cpovirk): Maybe attach as a suppressed exception once we require
-         * a newer version of Android.
-         */
-        checkState(inRuleContext == DURING);
-      } finally {
-        inRuleContext = AFTER;
+      TestPhase phase = inRuleContext;
+      // Any failure recorded after this point will see AFTER and throw.
+      inRuleContext = AFTER;
+      Report report = snapshot();
+      if (caught == null) {
+        doLeaveRuleContext(report);
+      } else {
+        doLeaveRuleContext(report, caught);
       }
+      /*
+       * We'd like to check this even if an exception was thrown, but we don't want to override the
+       * "real" failure. TODO(cpovirk): Maybe attach as a suppressed exception once we require a
+       * newer version of Android.
+       */
+      checkState(phase == DURING);
     }
 
-    synchronized void checkInRuleContext() {
+    void checkInRuleContext() {
       doCheckInRuleContext(null);
     }
 
-    synchronized boolean hasFailures() {
-      return !failures.isEmpty();
+    boolean hasFailures() {
+      return totalCount.get() > 0;
     }
 
     @Override
-    public synchronized String toString() {
-      if (failures.isEmpty()) {
-        return "No expectation failed.";
-      }
-      int numFailures = failures.size();
-      StringBuilder message =
-          new StringBuilder(
-              numFailures + (numFailures > 1 ? " expectations" : " expectation") + " failed:\n");
-      int countLength = String.valueOf(failures.size() + 1).length();
-      int count = 0;
-      for (AssertionError failure : failures) {
-        count++;
-        message.append("  ");
-        message.append(padStart(String.valueOf(count), countLength, ' '));
-        message.append(". ");
-        if (count == 1) {
-          appendIndented(
-              countLength,
-              message,
-              showStackTrace ? getStackTraceAsString(failure) : failure.getMessage());
-        } else {
-          appendIndented(
-              countLength,
-              message,
-              showStackTrace
-                  ? printSubsequentFailure(failures.get(0).getStackTrace(), failure)
-                  : failure.getMessage());
+    public String toString() {
+      return snapshot().describe();
+    }
+
+    private Report snapshot() {
+      if (sink != null) {
+        // The count is read first, since the first failure is published before any count.
+        long total = totalCount.get();
+        RecordedFailure first = firstFailure.get();
+        List<RecordedFailure> retained = new ArrayList<RecordedFailure>();
+        if (first != null) {
+          retained.add(first);
         }
-        message.append("\n");
+        return new Report(retained, new long[retained.size()], total, 0);
+      }
+      List<RecordedFailure> retained = new ArrayList<RecordedFailure>(failures);
+      long[] repeats = new long[retained.size()];
+      long total = retained.size();
+      for (int i = 0; i < repeats.length; i++) {
+        repeats[i] = retained.get(i).repeats.get();
+        total += repeats[i];
+      }
+      long omitted = omittedCount.get();
+      return new Report(retained, repeats, total + omitted, omitted);
+    }
+
+    /** A point-in-time view of the recorded failures, which renders the report. */
+    private final class Report {
+      final List<RecordedFailure> failures;
+      /** The number of repeats of each failure, as of the snapshot. */
+      final long[] repeats;
+
+      final long totalCount;
+      final long omittedCount;
+
+      Report(List<RecordedFailure> failures, long[] repeats, long totalCount, long omittedCount) {
+        this.failures = failures;
+        this.repeats = repeats;
+        this.totalCount = totalCount;
+        this.omittedCount = omittedCount;
+      }
+
+      /** Returns a report that also includes the given failure. */
+      Report plus(AssertionError failure) {
+        List<RecordedFailure> newFailures = new ArrayList<RecordedFailure>(failures);
+        newFailures.add(new RecordedFailure(failure));
+        return new Report(
+            newFailures, Arrays.copyOf(repeats, repeats.length + 1), totalCount + 1, omittedCount);
+      }
+
+      /** Returns a report that counts one more failure, without showing it. */
+      Report plusUnshown() {
+        return new Report(failures, repeats, totalCount + 1, omittedCount);
+      }
+
+      boolean isEmpty() {
+        return totalCount == 0;
       }
 
-      return message.toString();
+      String describe() {
+        if (isEmpty()) {
+          return "No expectation failed.";
+        }
+        StringBuilder message =
+            new StringBuilder()
+                .append(totalCount)
+                .append(totalCount > 1 ? " expectations" : " expectation")
+                .append(" failed:\n");
+        int countLength = String.valueOf(failures.size() + 1).length();
+        int count = 0;
+        for (RecordedFailure recorded : failures) {
+          AssertionError failure = recorded.failure;
+          count++;
+          message.append("  ");
+          message.append(padStart(String.valueOf(count), countLength, ' '));
+          message.append(". ");
+          if (count == 1) {
+            appendIndented(
+                countLength,
+                message,
+                showStackTrace ? getStackTraceAsString(failure) : failure.getMessage());
+          } else {
+            appendIndented(
+                countLength,
+                message,
+                showStackTrace
+                    ? printSubsequentFailure(failures.get(0).failure.getStackTrace(), failure)
+                    : failure.getMessage());
+          }
+          long repeats = this.repeats[count - 1];
+          if (repeats > 0) {
+            appendIndented(
+                countLength,
+                message,
+                "\n(repeated " + repeats + (repeats > 1 ? " more times)" : " more time)"));
+          }
+          message.append("\n");
+        }
+        if (sink != null) {
+          message.append(
+              "  (Only the first failure is shown. All failures were passed to the sink.)\n");
+        } else if (omittedCount > 0) {
+          message
+              .append("  ... and ")
+              .append(omittedCount)
+              .append(omittedCount > 1 ? " more failures" : " more failure")
+              .append(" not shown, since at most ")
+              .append(maxDistinctFailures)
+              .append(" distinct failures are kept\n");
+        }
+        return message.toString();
+      }
     }
 
-    private static void appendIndented(int countLength, StringBuilder builder, String toAppend) {
+    /** Appends the given text, indenting each line after the first to follow the count. */
+    private static void appendIndented(
+        int countLength, StringBuilder builder, @NullableDecl String toAppend) {
       int indent = countLength + 4; // "  " and ". "
-      builder.append(toAppend.replace("\n", "\n" + repeat(" ", indent)));
+      if (toAppend == null) {
+        builder.append((String) null);
+        return;
+      }
+      int lineStart = 0;
+      for (int newline = toAppend.indexOf('\n');
+          newline != -1;
+          newline = toAppend.indexOf('\n', lineStart)) {
+        builder.append(toAppend, lineStart, newline + 1);
+        for (int i = 0; i < indent; i++) {
+          builder.append(' ');
+        }
+        lineStart = newline + 1;
+      }
+      builder.append(toAppend, lineStart, toAppend.length());
     }
 
-    private String printSubsequentFailure(
+    /**
+     * Returns the stack trace of {@code toPrint}, omitting the frames it has in common with the
+     * given frames of the first failure, as it would be printed as the cause of that failure.
+     */
+    private static String printSubsequentFailure(
         StackTraceElement[] baseTraceFrames, AssertionError toPrint) {
-      Exception e = new RuntimeException("__EXCEPTION_MARKER__", toPrint);
+      // The wrapper prints toPrint as its cause, bypassing the overrides that clean lazily.
+      LazyStackTraceCleaning.cleanPendingTraces(toPrint);
+      Exception e = new RuntimeException(EXCEPTION_MARKER, toPrint);
       e.setStackTrace(baseTraceFrames);
       String s = Throwables.getStackTraceAsString(e);
-      // Force single line reluctant matching
-      return s.replaceFirst("(?s)^.*?__EXCEPTION_MARKER__.*?Caused by:\\s+", "");
+      int markerIndex = s.indexOf(EXCEPTION_MARKER);
+      int causeIndex = markerIndex == -1 ? -1 : s.indexOf(CAUSED_BY, markerIndex);
+      if (causeIndex == -1) {
+        return s;
+      }
+      int start = causeIndex + CAUSED_BY.length();
+      while (start < s.length() && Character.isWhitespace(s.charAt(start))) {
+        start++;
+      }
+      return s.substring(start);
     }
 
-    @GuardedBy("this")
+    private static final String EXCEPTION_MARKER = "__EXCEPTION_MARKER__";
+    private static final String CAUSED_BY = "Caused by:";
+
     private void doCheckInRuleContext(@NullableDecl AssertionError failure) {
+      if (failure != null && inRuleContext != DURING) {
+        // The failure becomes the cause of the exception thrown below.
+        LazyStackTraceCleaning.cleanPendingTraces(failure);
+      }
       switch (inRuleContext) {
         case BEFORE:
           throw new IllegalStateException(
@@ -188,31 +373,111 @@ public final class Expect extends StandardSubjectBuilder implements TestRule {
       throw new AssertionError();
     }
 
-    @GuardedBy("this")
-    private void doLeaveRuleContext() {
-      if (hasFailures()) {
-        throw SimpleAssertionError.createWithNoStack(this.toString());
+    private void doLeaveRuleContext(Report report) {
+      if (!report.isEmpty()) {
+        throw SimpleAssertionError.createWithNoStack(report.describe());
       }
     }
 
-    @GuardedBy("this")
-    private void doLeaveRuleContext(Throwable caught) throws Throwable {
-      if (hasFailures()) {
+    private void doLeaveRuleContext(Report report, Throwable caught) throws Throwable {
+      if (!report.isEmpty()) {
         String message =
             caught instanceof AssumptionViolatedException
                 ? "Also, after those failures, an assumption was violated"
                 : "Also, after those failures, an exception was thrown";
-        record(SimpleAssertionError.createWithNoStack(message + ": " + caught, caught));
-        throw SimpleAssertionError.createWithNoStack(this.toString());
+        AssertionError failure =
+            SimpleAssertionError.createWithNoStack(message + ": " + caught, caught);
+        if (sink != null) {
+          // Like the earlier failures, this one goes to the sink, and the summary only counts it.
+          sink.fail(failure);
+          report = report.plusUnshown();
+        } else {
+          report = report.plus(failure);
+        }
+        throw SimpleAssertionError.createWithNoStack(report.describe());
       } else {
         throw caught;
       }
     }
 
-    @GuardedBy("this")
     private void record(AssertionError failure) {
       doCheckInRuleContext(failure);
-      failures.add(failure);
+      if (sink != null) {
+        sink.fail(failure);
+        if (firstFailure.get() == null) {
+          firstFailure.compareAndSet(null, new RecordedFailure(failure));
+        }
+        totalCount.incrementAndGet();
+      } else {
+        if (bySignature == null) {
+          failures.add(new RecordedFailure(failure));
+        } else {
+          recordUnlessDuplicate(failure);
+        }
+        totalCount.incrementAndGet();
+      }
+      // If the test finished while we were adding the failure, it might not have seen it.
+      doCheckInRuleContext(failure);
+    }
+
+    private void recordUnlessDuplicate(AssertionError failure) {
+      FailureSignature signature = new FailureSignature(failure);
+      RecordedFailure existing = bySignature.get(signature);
+      if (existing == null) {
+        if (distinctCount.incrementAndGet() > maxDistinctFailures) {
+          distinctCount.decrementAndGet();
+          omittedCount.incrementAndGet();
+          return;
+        }
+        RecordedFailure recorded = new RecordedFailure(failure);
+        existing = bySignature.putIfAbsent(signature, recorded);
+        if (existing == null) {
+          failures.add(recorded);
+          return;
+        }
+        // Another thread recorded the same failure first.
+        distinctCount.decrementAndGet();
+      }
+      existing.repeats.incrementAndGet();
+    }
+  }
+
+  /** A retained failure, with the number of later failures that duplicated it. */
+  private static final class RecordedFailure {
+    final AssertionError failure;
+    final AtomicLong repeats = new AtomicLong();
+
+    RecordedFailure(AssertionError failure) {
+      this.failure = failure;
+    }
+  }
+
+  /** The parts of a failure that appear in the report, for detecting duplicates. */
+  private static final class FailureSignature {
+    private final Class<?> type;
+    @NullableDecl private final String message;
+    private final int hashCode;
+
+    FailureSignature(AssertionError failure) {
+      this.type = failure.getClass();
+      this.message = failure.getMessage();
+      this.hashCode = Objects.hashCode(type, message);
+    }
+
+    @Override
+    public boolean equals(@NullableDecl Object o) {
+      if (!(o instanceof FailureSignature)) {
+        return false;
+      }
+      FailureSignature that = (FailureSignature) o;
+      return hashCode == that.hashCode
+          && type == that.type
+          && Objects.equal(message, that.message);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
     }
   }
 
@@ -226,6 +491,39 @@ public final class Expect extends StandardSubjectBuilder implements TestRule {
     return new Expect(new ExpectationGatherer(true /* showStackTrace */));
   }
 
+  /**
+   * Creates an {@code Expect} that keeps memory and the length of its report bounded however many
+   * assertions fail. It reports a failure that duplicates an earlier one only as a count on the
+   * earlier one, and it keeps at most {@code maxDistinctFailures} distinct failures, reporting only
+   * how many others there were. Failures are reported without stack traces, so failures with the
+   * same class and message are duplicates even if they come from different assertions.
+   *
+   * <p>Use this for tests that check many values, such as every row of a large data set, so that
+   * a systematic failure doesn't exhaust memory or produce a report too long to read.
+   *
+   * @throws IllegalArgumentException if {@code maxDistinctFailures} is not positive
+   */
+  public static Expect createLimitingFailuresTo(int maxDistinctFailures) {
+    return new Expect(new ExpectationGatherer(maxDistinctFailures));
+  }
+
+  /**
+   * Creates an {@code Expect} that passes each failure to the given sink as soon as it's recorded,
+   * rather than keeping it until the end of the test. This gives early feedback from long-running
+   * tests, and it keeps memory bounded: the {@code Expect} keeps only the first failure, and if
+   * there were any failures, it fails the test with a summary of the first one and the total count.
+   * If the test throws an exception after a failure, the exception is passed to the sink as one
+   * more failure.
+   *
+   * <p>The sink is called from whichever thread made the failing assertion, so it must be safe to
+   * call concurrently if the test makes assertions from several threads. It might write each
+   * failure to a file or log, for example. If the sink throws, the exception propagates from the
+   * failing assertion.
+   */
+  public static Expect createReportingFailuresTo(FailureStrategy sink) {
+    return new Expect(new ExpectationGatherer(sink));
+  }
+
   private Expect(ExpectationGatherer gatherer) {
     super(FailureMetadata.forFailureStrategy(gatherer));
     this.gatherer = checkNotNull(gatherer);
@@ -30,7 +30,11 @@ import com.google.common.base.Function;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.truth.LazyStackTraceCleaning.LazilyCleanedError;
 import com.google.common.truth.Truth.SimpleAssertionError;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 
@@ -57,25 +61,36 @@ import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 public final class FailureMetadata {
   static FailureMetadata forFailureStrategy(FailureStrategy failureStrategy) {
     return new FailureMetadata(
-        failureStrategy, ImmutableList.<LazyMessage>of(), ImmutableList.<Step>of());
+        failureStrategy,
+        ImmutableList.<LazyMessage>of(),
+        /* lastStep= */ null,
+        USE_DEFAULT_RENDERING_BUDGET);
   }
 
   private final FailureStrategy strategy;
 
   /**
    * The data from a call to either (a) a {@link Subject} constructor or (b) {@link Subject#check}.
+   *
+   * <p>Each step links to the step before it, so the steps form an immutable cactus stack: Every
+   * subject shares the steps of the chain that led to it, and adding a step costs a single
+   * allocation, however long the chain.
    */
   private static final class Step {
-    static Step subjectCreation(Subject<?, ?> subject) {
-      return new Step(checkNotNull(subject), null, null);
+    static Step subjectCreation(@NullableDecl Step previous, Subject<?, ?> subject) {
+      return new Step(previous, checkNotNull(subject), null, null);
     }
 
     static Step checkCall(
+        @NullableDecl Step previous,
         OldAndNewValuesAreSimilar valuesAreSimilar,
         @NullableDecl Function<String, String> descriptionUpdate) {
-      return new Step(null, descriptionUpdate, valuesAreSimilar);
+      return new Step(previous, null, descriptionUpdate, valuesAreSimilar);
     }
 
+    /** The step before this one, or null if this is the first step of the chain. */
+    @NullableDecl final Step previous;
+
     /*
      * We store Subject, rather than the actual value itself, so that we can call actualAsString(),
      * which lets subjects customize display through actualCustomStringRepresentation(). Why not
@@ -92,9 +107,11 @@ public final class FailureMetadata {
     @NullableDecl final OldAndNewValuesAreSimilar valuesAreSimilar;
 
     private Step(
+        @NullableDecl Step previous,
         @NullableDecl Subject<?, ?> subject,
         @NullableDecl Function<String, String> descriptionUpdate,
         @NullableDecl OldAndNewValuesAreSimilar valuesAreSimilar) {
+      this.previous = previous;
       this.subject = subject;
       this.descriptionUpdate = descriptionUpdate;
       this.valuesAreSimilar = valuesAreSimilar;
@@ -106,22 +123,37 @@ public final class FailureMetadata {
   }
 
   /*
-   * TODO(cpovirk): This implementation is wasteful, especially because `steps` is used even by
-   * non-chaining assertions. If it ever does matter, we could use an immutable cactus stack -- or
-   * probably even avoid storing most of the chain entirely (unless we end up wanting more of the
-   * chain to show "telescoping context," as in "the int value of this optional in this list in this
-   * multimap").
+   * TODO(cpovirk): We could probably even avoid storing most of the chain entirely (unless we end
+   * up wanting more of the chain to show "telescoping context," as in "the int value of this
+   * optional in this list in this multimap").
    */
 
   private final ImmutableList<LazyMessage> messages;
 
-  private final ImmutableList<Step> steps;
+  /**
+   * The last step of the chain, or null if there are no steps yet. The earlier steps are reachable
+   * through {@link Step#previous}, and they're put in order by {@link #steps} only on failure.
+   */
+  @NullableDecl private final Step lastStep;
+
+  /**
+   * The maximum length of the rendering of a collection in a failure message, or {@link
+   * #USE_DEFAULT_RENDERING_BUDGET} to look up {@link RenderingBudget#defaultBudget} at the time of
+   * the failure.
+   */
+  private final int renderingBudget;
+
+  private static final int USE_DEFAULT_RENDERING_BUDGET = 0;
 
   FailureMetadata(
-      FailureStrategy strategy, ImmutableList<LazyMessage> messages, ImmutableList<Step> steps) {
+      FailureStrategy strategy,
+      ImmutableList<LazyMessage> messages,
+      @NullableDecl Step lastStep,
+      int renderingBudget) {
     this.strategy = checkNotNull(strategy);
     this.messages = checkNotNull(messages);
-    this.steps = checkNotNull(steps);
+    this.lastStep = lastStep;
+    this.renderingBudget = renderingBudget;
   }
 
   /**
@@ -131,21 +163,17 @@ public final class FailureMetadata {
    * ThrowableSubject#hasMessageThat}.
    */
   FailureMetadata updateForSubject(Subject<?, ?> subject) {
-    ImmutableList<Step> steps = append(this.steps, Step.subjectCreation(subject));
-    return derive(messages, steps);
+    return derive(messages, Step.subjectCreation(lastStep, subject));
   }
 
   FailureMetadata updateForCheckCall() {
-    ImmutableList<Step> steps = append(this.steps, Step.checkCall(null, null));
-    return derive(messages, steps);
+    return derive(messages, Step.checkCall(lastStep, null, null));
   }
 
   FailureMetadata updateForCheckCall(
       OldAndNewValuesAreSimilar valuesAreSimilar, Function<String, String> descriptionUpdate) {
     checkNotNull(descriptionUpdate);
-    ImmutableList<Step> steps =
-        append(this.steps, Step.checkCall(valuesAreSimilar, descriptionUpdate));
-    return derive(messages, steps);
+    return derive(messages, Step.checkCall(lastStep, valuesAreSimilar, descriptionUpdate));
   }
 
   /**
@@ -167,7 +195,24 @@ public final class FailureMetadata {
    */
   FailureMetadata withMessage(String format, Object[] args) {
     ImmutableList<LazyMessage> messages = append(this.messages, new LazyMessage(format, args));
-    return derive(messages, steps);
+    return derive(messages, lastStep);
+  }
+
+  /**
+   * Returns a new instance whose failure messages will render collections in at most the given
+   * number of characters. The way for Truth users to set a budget is {@link
+   * StandardSubjectBuilder#withRenderingBudget}.
+   */
+  FailureMetadata withRenderingBudget(int maxCharacters) {
+    return new FailureMetadata(
+        strategy, messages, lastStep, RenderingBudget.checkBudget(maxCharacters));
+  }
+
+  /** Returns the budget for rendering collections in failure messages. */
+  int renderingBudget() {
+    return renderingBudget == USE_DEFAULT_RENDERING_BUDGET
+        ? RenderingBudget.defaultBudget()
+        : renderingBudget;
   }
 
   void failEqualityCheck(
@@ -227,7 +272,11 @@ public final class FailureMetadata {
   }
 
   private void doFail(AssertionError failure) {
-    cleanStackTrace(failure);
+    if (failure instanceof LazilyCleanedError && Platform.isStackTraceCleaningDeferred()) {
+      ((LazilyCleanedError) failure).cleanStackTraceOnFirstUse();
+    } else {
+      cleanStackTrace(failure);
+    }
     strategy.fail(failure);
   }
 
@@ -253,8 +302,18 @@ public final class FailureMetadata {
     return concat(messages, descriptionAsStrings());
   }
 
-  private FailureMetadata derive(ImmutableList<LazyMessage> messages, ImmutableList<Step> steps) {
-    return new FailureMetadata(strategy, messages, steps);
+  private FailureMetadata derive(
+      ImmutableList<LazyMessage> messages, @NullableDecl Step lastStep) {
+    return new FailureMetadata(strategy, messages, lastStep, renderingBudget);
+  }
+
+  /** Returns the steps of the chain, from first to last. */
+  private ImmutableList<Step> steps() {
+    List<Step> steps = new ArrayList<>();
+    for (Step step = lastStep; step != null; step = step.previous) {
+      steps.add(step);
+    }
+    return ImmutableList.copyOf(Lists.reverse(steps));
   }
 
   /**
@@ -279,7 +338,7 @@ public final class FailureMetadata {
   private Optional<Fact> description() {
     String description = null;
     boolean descriptionWasDerived = false;
-    for (Step step : steps) {
+    for (Step step : steps()) {
       if (step.isCheckCall()) {
         checkState(description != null);
         if (step.descriptionUpdate == null) {
@@ -340,7 +399,7 @@ public final class FailureMetadata {
   private Optional<Fact> rootUnlessThrowable() {
     Step rootSubject = null;
     boolean seenDerivation = false;
-    for (Step step : steps) {
+    for (Step step : steps()) {
       if (step.isCheckCall()) {
         /*
          * If we don't have a description update, don't trigger display of a root object. (If we
@@ -394,7 +453,7 @@ public final class FailureMetadata {
    * cause only if the assertion chain contains a {@link ThrowableSubject}.
    */
   private Optional<Throwable> rootCause() {
-    for (Step step : steps) {
+    for (Step step : steps()) {
       if (!step.isCheckCall() && step.subject.actual() instanceof Throwable) {
         return Optional.of((Throwable) step.subject.actual());
       }
@@ -15,16 +15,17 @@
  */
 package com.google.common.truth;
 
-import com.google.common.base.Optional;
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.Multimap;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
-import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 
 /**
  * Helper routines related to <a href="https://en.wikipedia.org/wiki/Matching_(graph_theory)">graph
@@ -50,11 +51,75 @@ final class GraphMatching {
    *
    * <p>If there are multiple matchings which share the maximum cardinality, an arbitrary one is
    * returned.
+   *
+   * <p>This is an adapter over {@link #maximumCardinalityBipartiteMatching(int, int[], int[])},
+   * which callers that can number their vertices themselves should prefer.
    */
   static <U, V> ImmutableBiMap<U, V> maximumCardinalityBipartiteMatching(Multimap<U, V> graph) {
-    return HopcroftKarp.overBipartiteGraph(graph).perform();
+    List<U> lhsVertices = new ArrayList<>(graph.keySet());
+    List<V> rhsVertices = new ArrayList<>();
+    Map<V, Integer> rhsIndexes = new HashMap<>();
+    int[] adjacencyStarts = new int[lhsVertices.size() + 1];
+    int[] adjacency = new int[graph.size()];
+    int edge = 0;
+    for (int lhs = 0; lhs < lhsVertices.size(); lhs++) {
+      adjacencyStarts[lhs] = edge;
+      for (V rhsVertex : graph.get(checkNotNull(lhsVertices.get(lhs)))) {
+        Integer rhs = rhsIndexes.get(checkNotNull(rhsVertex));
+        if (rhs == null) {
+          rhs = rhsVertices.size();
+          rhsVertices.add(rhsVertex);
+          rhsIndexes.put(rhsVertex, rhs);
+        }
+        adjacency[edge++] = rhs;
+      }
+    }
+    adjacencyStarts[lhsVertices.size()] = edge;
+
+    int[] matching =
+        maximumCardinalityBipartiteMatching(rhsVertices.size(), adjacencyStarts, adjacency);
+    ImmutableBiMap.Builder<U, V> result = ImmutableBiMap.builder();
+    for (int lhs = 0; lhs < matching.length; lhs++) {
+      if (matching[lhs] != UNMATCHED) {
+        result.put(lhsVertices.get(lhs), rhsVertices.get(matching[lhs]));
+      }
+    }
+    return result.build();
+  }
+
+  /**
+   * Finds a maximum cardinality matching of a bipartite graph whose vertices are identified by
+   * indexes: the LHS vertices are {@code 0} to {@code adjacencyStarts.length - 2} and the RHS
+   * vertices are {@code 0} to {@code rhsCount - 1}. The edges are given in compressed sparse row
+   * form: the RHS vertices adjacent to the LHS vertex {@code lhs} are the elements of {@code
+   * adjacency} from index {@code adjacencyStarts[lhs]} (inclusive) to index {@code
+   * adjacencyStarts[lhs + 1]} (exclusive). Returns an array giving the RHS vertex matched to each
+   * LHS vertex, or {@link #UNMATCHED} for LHS vertices not in the matching.
+   *
+   * <p>If there are multiple matchings which share the maximum cardinality, an arbitrary one is
+   * returned.
+   */
+  static int[] maximumCardinalityBipartiteMatching(
+      int rhsCount, int[] adjacencyStarts, int[] adjacency) {
+    int[] initialMatching = new int[adjacencyStarts.length - 1];
+    Arrays.fill(initialMatching, UNMATCHED);
+    return maximumCardinalityBipartiteMatching(
+        rhsCount, adjacencyStarts, adjacency, initialMatching);
   }
 
+  /**
+   * Like {@link #maximumCardinalityBipartiteMatching(int, int[], int[])}, but starts from the given
+   * matching (in the same form as the output) instead of from an empty one. This saves work when a
+   * large matching is already known. The initial matching must only use edges of the graph.
+   */
+  static int[] maximumCardinalityBipartiteMatching(
+      int rhsCount, int[] adjacencyStarts, int[] adjacency, int[] initialMatching) {
+    return new HopcroftKarp(rhsCount, adjacencyStarts, adjacency, initialMatching).perform();
+  }
+
+  /** The value used to indicate that a vertex is not in a matching. */
+  static final int UNMATCHED = -1;
+
   private GraphMatching() {}
 
   /**
@@ -65,45 +130,82 @@ final class GraphMatching {
    * <p>The worst-case complexity is {@code O(E V^0.5)} where the graph contains {@code E} edges and
    * {@code V} vertices. For dense graphs, where {@code E} is {@code O(V^2)}, this is {@code V^2.5}
    * (and non-dense graphs perform better than dense graphs with the same number of vertices).
+   *
+   * <p>All the state is kept in {@code int} arrays indexed by vertex, and the DFS is iterative, so
+   * that long augmenting paths cannot overflow the stack.
    */
-  private static class HopcroftKarp<U, V> {
+  private static final class HopcroftKarp {
 
-    private final Multimap<U, V> graph;
+    /** The layer value of an LHS vertex which was not visited by the BFS. */
+    private static final int NOT_VISITED = 0;
 
     /**
-     * Factory method which returns an instance ready to perform the algorithm over the bipartite
-     * graph described by the given multimap.
+     * The layer value of an LHS vertex from which the DFS has already failed during the current
+     * phase. A DFS from such a vertex would fail again, because within a phase the edges which lead
+     * to the next layer only ever get removed, never added.
      */
-    static <U, V> HopcroftKarp<U, V> overBipartiteGraph(Multimap<U, V> graph) {
-      return new HopcroftKarp<>(graph);
-    }
+    private static final int EXHAUSTED = -1;
+
+    private final int lhsCount;
+    private final int[] adjacencyStarts;
+    private final int[] adjacency;
+
+    /** The RHS vertex matched to each LHS vertex, or {@link #UNMATCHED}. */
+    private final int[] lhsMatches;
+
+    /** The LHS vertex matched to each RHS vertex, or {@link #UNMATCHED}. */
+    private final int[] rhsMatches;
 
-    private HopcroftKarp(Multimap<U, V> graph) {
-      this.graph = graph;
+    /** The layer of each LHS vertex in the most recent BFS. See {@link #breadthFirstSearch}. */
+    private final int[] layers;
+
+    /** The queue used by the BFS. */
+    private final int[] queue;
+
+    /** The LHS vertices on the current path of the DFS. */
+    private final int[] pathLhs;
+
+    /** The index into {@link #adjacency} of the edge followed from each vertex on the path. */
+    private final int[] pathEdges;
+
+    HopcroftKarp(int rhsCount, int[] adjacencyStarts, int[] adjacency, int[] initialMatching) {
+      this.lhsCount = adjacencyStarts.length - 1;
+      this.adjacencyStarts = adjacencyStarts;
+      this.adjacency = adjacency;
+      this.lhsMatches = initialMatching.clone();
+      this.rhsMatches = new int[rhsCount];
+      Arrays.fill(rhsMatches, UNMATCHED);
+      for (int lhs = 0; lhs < lhsCount; lhs++) {
+        if (lhsMatches[lhs] != UNMATCHED) {
+          rhsMatches[lhsMatches[lhs]] = lhs;
+        }
+      }
+      this.layers = new int[lhsCount];
+      this.queue = new int[lhsCount];
+      this.pathLhs = new int[lhsCount];
+      this.pathEdges = new int[lhsCount];
     }
 
-    /** Performs the algorithm, and returns a bimap describing the matching found. */
-    ImmutableBiMap<U, V> perform() {
-      BiMap<U, V> matching = HashBiMap.create();
+    /** Performs the algorithm, and returns the RHS vertex matched to each LHS vertex. */
+    int[] perform() {
       while (true) {
         // Perform the BFS as described below. This finds the length of the shortest augmenting path
         // and a guide which locates all the augmenting paths of that length.
-        Map<U, Integer> layers = new HashMap<>();
-        Optional<Integer> freeRhsVertexLayer = breadthFirstSearch(matching, layers);
-        if (!freeRhsVertexLayer.isPresent()) {
+        int freeRhsVertexLayer = breadthFirstSearch();
+        if (freeRhsVertexLayer == NOT_VISITED) {
           // The BFS failed, i.e. we found no augmenting paths. So we're done.
           break;
         }
         // Perform the DFS and update the matching as described below starting from each free LHS
         // vertex. This finds a disjoint set of augmenting paths of the shortest length and updates
         // the matching by computing the symmetric difference with that set.
-        for (U lhs : graph.keySet()) {
-          if (!matching.containsKey(lhs)) {
-            depthFirstSearch(matching, layers, freeRhsVertexLayer.get(), lhs);
+        for (int lhs = 0; lhs < lhsCount; lhs++) {
+          if (lhsMatches[lhs] == UNMATCHED) {
+            depthFirstSearch(freeRhsVertexLayer, lhs);
           }
         }
       }
-      return ImmutableBiMap.copyOf(matching);
+      return lhsMatches;
     }
 
     /**
@@ -120,54 +222,56 @@ final class GraphMatching {
      * that every path in a successful search starts with a free LHS vertex and ends with a free RHS
      * vertex, with every intermediate vertex being non-free.
      *
-     * @param matching A bimap describing the matching to be used for the BFS, which is not modified
-     *     by this method
-     * @param layers A map to be filled with the layer of each LHS vertex visited during the BFS,
-     *     which should be empty when passed into this method and will be modified by this method
-     * @return The number of the layer in which the first free RHS vertex was found, if any, and the
-     *     absent value if the BFS was exhausted without finding any free RHS vertex
+     * <p>Fills {@link #layers} with the layer of each LHS vertex visited during the BFS, and with
+     * {@link #NOT_VISITED} for the others.
+     *
+     * @return The number of the layer in which the first free RHS vertex was found, if any, and
+     *     {@link #NOT_VISITED} if the BFS was exhausted without finding any free RHS vertex
      */
-    private Optional<Integer> breadthFirstSearch(BiMap<U, V> matching, Map<U, Integer> layers) {
-      Queue<U> queue = new ArrayDeque<>();
-      Optional<Integer> freeRhsVertexLayer = Optional.absent();
+    private int breadthFirstSearch() {
+      int queueHead = 0;
+      int queueTail = 0;
+      int freeRhsVertexLayer = NOT_VISITED;
 
       // Enqueue all free LHS vertices and assign them to layer 1.
-      for (U lhs : graph.keySet()) {
-        if (!matching.containsKey(lhs)) {
-          layers.put(lhs, 1);
-          queue.add(lhs);
+      Arrays.fill(layers, NOT_VISITED);
+      for (int lhs = 0; lhs < lhsCount; lhs++) {
+        if (lhsMatches[lhs] == UNMATCHED) {
+          layers[lhs] = 1;
+          queue[queueTail++] = lhs;
         }
       }
 
       // Now proceed with the BFS.
-      while (!queue.isEmpty()) {
-        U lhs = queue.remove();
-        int layer = layers.get(lhs);
+      while (queueHead < queueTail) {
+        int lhs = queue[queueHead++];
+        int layer = layers[lhs];
         // If the BFS has proceeded past a layer in which a free RHS vertex was found, stop.
-        if (freeRhsVertexLayer.isPresent() && layer > freeRhsVertexLayer.get()) {
+        if (freeRhsVertexLayer != NOT_VISITED && layer > freeRhsVertexLayer) {
           break;
         }
         // We want to consider all the unmatched edges from the current LHS vertex to the RHS, and
         // then all the matched edges from those RHS vertices back to the LHS, to find the next
         // layer of LHS vertices. We actually iterate over all edges, both matched and unmatched,
         // from the current LHS vertex: we'll just do nothing for matched edges.
-        for (V rhs : graph.get(lhs)) {
-          if (!matching.containsValue(rhs)) {
+        for (int edge = adjacencyStarts[lhs]; edge < adjacencyStarts[lhs + 1]; edge++) {
+          int rhs = adjacency[edge];
+          int nextLhs = rhsMatches[rhs];
+          if (nextLhs == UNMATCHED) {
             // We found a free RHS vertex. Record the layer at which we found it. Since the RHS
             // vertex is free, there is no matched edge to follow. (Note that the edge from the LHS
             // to the RHS must be unmatched, because a matched edge cannot lead to a free vertex.)
-            if (!freeRhsVertexLayer.isPresent()) {
-              freeRhsVertexLayer = Optional.of(layer);
+            if (freeRhsVertexLayer == NOT_VISITED) {
+              freeRhsVertexLayer = layer;
             }
           } else {
             // We found an RHS vertex with a matched vertex back to the LHS. If we haven't visited
             // that new LHS vertex yet, add it to the next layer. (If the edge from the LHS to the
             // RHS was matched then the matched edge from the RHS to the LHS will lead back to the
             // current LHS vertex, which has definitely been visited, so we correctly do nothing.)
-            U nextLhs = matching.inverse().get(rhs);
-            if (!layers.containsKey(nextLhs)) {
-              layers.put(nextLhs, layer + 1);
-              queue.add(nextLhs);
+            if (layers[nextLhs] == NOT_VISITED) {
+              layers[nextLhs] = layer + 1;
+              queue[queueTail++] = nextLhs;
             }
           }
         }
@@ -204,18 +308,17 @@ final class GraphMatching {
      *       (i.e. the set of edges used in the paths found by repeated DFSes are disjoint).
      * </ul>
      *
-     * @param matching A bimap describing the matching to be used for the BFS, which will be
-     *     modified by this method as described above
-     * @param layers A map giving the layer of each LHS vertex visited during the BFS, which will
-     *     not be modified by this method
+     * <p>The search path is kept in {@link #pathLhs} and {@link #pathEdges} rather than on the
+     * call stack. Its length is bounded by the number of layers, and so by the number of LHS
+     * vertices.
+     *
      * @param freeRhsVertexLayer The number of the layer in which the first free RHS vertex was
      *     found
-     * @param lhs The LHS vertex from which to start the DFS
+     * @param start The LHS vertex from which to start the DFS
      * @return Whether or not the DFS was successful
      */
     @CanIgnoreReturnValue
-    private boolean depthFirstSearch(
-        BiMap<U, V> matching, Map<U, Integer> layers, int freeRhsVertexLayer, U lhs) {
+    private boolean depthFirstSearch(int freeRhsVertexLayer, int start) {
       // Note that this differs from the method described in the text of the wikipedia article (at
       // time of writing) in two ways. Firstly, we proceed from a free LHS vertex to a free RHS
       // vertex in the target layer instead of the other way around, which makes no difference.
@@ -223,37 +326,51 @@ final class GraphMatching {
       // rather than using all the paths at the end of the phase. As explained above, the effect of
       // this is that we automatically find only the disjoint set of paths, as required. This is,
       // fact, the approach taken in the pseudocode of the wikipedia article (at time of writing).
-      int layer = layers.get(lhs);
-      if (layer > freeRhsVertexLayer) {
+      if (layers[start] > freeRhsVertexLayer) {
         // We've gone past the target layer, so we're not going to find what we're looking for.
         return false;
       }
-      // Consider every edge from this LHS vertex.
-      for (V rhs : graph.get(lhs)) {
-        if (!matching.containsValue(rhs)) {
+      int depth = 0;
+      pathLhs[0] = start;
+      pathEdges[0] = adjacencyStarts[start];
+      while (depth >= 0) {
+        int lhs = pathLhs[depth];
+        int edge = pathEdges[depth];
+        if (edge == adjacencyStarts[lhs + 1]) {
+          // We've considered every edge from this LHS vertex without success, so backtrack.
+          layers[lhs] = EXHAUSTED;
+          depth--;
+          if (depth >= 0) {
+            pathEdges[depth]++;
+          }
+          continue;
+        }
+        int rhs = adjacency[edge];
+        int nextLhs = rhsMatches[rhs];
+        if (nextLhs == UNMATCHED) {
           // We found a free RHS vertex. (This must have been in the target layer because, by
           // definition, no free RHS vertex is reachable in any earlier layer, and because we stop
-          // when we get past that layer.) We add the unmatched edge used to get here to the
-          // matching, and remove any previous matched edge leading to the LHS vertex.
-          matching.forcePut(lhs, rhs);
+          // when we get past that layer.) We flip every edge on the search path: we put the
+          // unmatched edge from each LHS vertex to the RHS vertex we followed from it into the
+          // matching, which implicitly removes the matched edge previously leading to the next LHS
+          // vertex on the path. The effect is to update the matching as described in the javadoc.
+          for (int i = depth; i >= 0; i--) {
+            int pathRhs = adjacency[pathEdges[i]];
+            lhsMatches[pathLhs[i]] = pathRhs;
+            rhsMatches[pathRhs] = pathLhs[i];
+          }
           return true;
+        }
+        // We found a non-free RHS vertex. Follow the matched edge from that RHS vertex to find the
+        // next LHS vertex.
+        if (layers[nextLhs] == layers[lhs] + 1 && layers[nextLhs] <= freeRhsVertexLayer) {
+          // The next LHS vertex is in the next layer of the BFS, and not past the target layer, so
+          // we can use this path for our DFS. Descend into it.
+          depth++;
+          pathLhs[depth] = nextLhs;
+          pathEdges[depth] = adjacencyStarts[nextLhs];
         } else {
-          // We found a non-free RHS vertex. Follow the matched edge from that RHS vertex to find
-          // the next LHS vertex.
-          U nextLhs = matching.inverse().get(rhs);
-          if (layers.containsKey(nextLhs) && layers.get(nextLhs) == layer + 1) {
-            // The next LHS vertex is in the next layer of the BFS, so we can use this path for our
-            // DFS. Recurse into the DFS.
-            if (depthFirstSearch(matching, layers, freeRhsVertexLayer, nextLhs)) {
-              // The DFS succeeded, and we're reversing back up the search path. At each stage we
-              // put the unmatched edge from the LHS to the RHS into the matching, and remove any
-              // matched edge previously leading to the LHS. The combined effect of all the
-              // modifications made while reversing all the way back up the search path is to update
-              // the matching as described in the javadoc.
-              matching.forcePut(lhs, rhs);
-              return true;
-            }
-          }
+          pathEdges[depth]++;
         }
       }
       return false;
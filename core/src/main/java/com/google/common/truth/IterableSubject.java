@@ -39,8 +39,6 @@ import com.google.common.base.Optional;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.ImmutableBiMap;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMultimap;
-import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.LinkedHashMultiset;
@@ -73,6 +71,8 @@ import org.checkerframework.checker.nullness.compatqual.NullableDecl;
  *       (sometimes known as a "one-shot iterable"), you must copy your iterable into a collection
  *       which does (e.g. {@code ImmutableList.copyOf(iterable)} or, if your iterable may contain
  *       null, {@code newArrayList(iterable)}). If you don't, you may see surprising failures.
+ *       Alternatively, if you need only {@code containsExactly} or {@code containsAll}, see {@link
+ *       #oneShotIterables}.
  *   <li>Assertions may also require that the elements in the given {@link Iterable} implement
  *       {@link Object#hashCode} correctly.
  * </ul>
@@ -92,6 +92,37 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
     super(metadata, iterable);
   }
 
+  /**
+   * Returns a factory for subjects about iterables that can be iterated only once, like a view of a
+   * stream or of a lazily generated dataset, for use with {@link Truth#assertAbout}. Such subjects
+   * support a single call to {@link #containsExactly}, {@link #containsExactlyElementsIn}, {@link
+   * #containsAllOf}, or {@link #containsAllIn} (optionally followed by {@code inOrder()}).
+   *
+   * <p>Those assertions consume the actual elements in a single pass, comparing them in order as
+   * they go by and keeping only a count of the expected elements that are still outstanding, plus
+   * any unexpected actual elements. Failure messages show the actual elements within the rendering
+   * budget (see {@link StandardSubjectBuilder#withRenderingBudget}), which bounds how many of them
+   * are retained. Other assertions may need to iterate more than once, in which case they throw
+   * {@link IllegalStateException}.
+   */
+  public static Factory<IterableSubject, Iterable<?>> oneShotIterables() {
+    return ONE_SHOT_ITERABLES;
+  }
+
+  private static final Factory<IterableSubject, Iterable<?>> ONE_SHOT_ITERABLES =
+      new Factory<IterableSubject, Iterable<?>>() {
+        @Override
+        public IterableSubject createSubject(
+            FailureMetadata metadata, @NullableDecl Iterable<?> actual) {
+          return new IterableSubject(
+              metadata, (actual == null) ? null : oneShot(actual, metadata.renderingBudget()));
+        }
+      };
+
+  private static <T> Iterable<T> oneShot(Iterable<T> actual, int renderingBudget) {
+    return new OneShotIterable<T>(actual, renderingBudget);
+  }
+
   @Override
   protected String actualCustomStringRepresentation() {
     if (actual() != null) {
@@ -102,7 +133,7 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
               + '@'
               + Integer.toHexString(System.identityHashCode(actual()));
       if (actual().toString().equals(objectToString)) {
-        return Iterables.toString(actual());
+        return renderElementsWithinBudget(actual());
       }
     }
     return super.actualCustomStringRepresentation();
@@ -193,7 +224,7 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
           countDuplicatesAndAddTypeInfo(
               retainMatchingToString(actual(), expected /* itemsToCheck */)));
     } else {
-      fail("contains any of", expected);
+      fail("contains any of", renderWithinBudget(expected));
     }
   }
 
@@ -233,29 +264,18 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
    */
   @CanIgnoreReturnValue
   public final Ordered containsAllIn(Iterable<?> expectedIterable) {
-    List<?> actual = Lists.newLinkedList(actual());
+    if (actual() instanceof OneShotIterable) {
+      return containsAllInOnePass(iterableToList(expectedIterable));
+    }
+    List<?> actual = Lists.newArrayList(actual());
     Collection<?> expected = iterableToCollection(expectedIterable);
 
     List<Object> missing = newArrayList();
-    List<Object> actualNotInOrder = newArrayList();
-
-    boolean ordered = true;
-    // step through the expected elements...
-    for (Object e : expected) {
-      int index = actual.indexOf(e);
-      if (index != -1) { // if we find the element in the actual list...
-        // drain all the elements that come before that element into actualNotInOrder
-        moveElements(actual, actualNotInOrder, index);
-        // and remove the element from the actual list
-        actual.remove(0);
-      } else { // otherwise try removing it from actualNotInOrder...
-        if (actualNotInOrder.remove(e)) { // if it was in actualNotInOrder, we're not in order
-          ordered = false;
-        } else { // if it's not in actualNotInOrder, we're missing an expected element
-          missing.add(e);
-        }
-      }
-    }
+    SubsequenceMatcher matcher = SubsequenceMatcher.create(actual, expected);
+    boolean ordered =
+        (matcher != null)
+            ? matcher.matchAll(expected, missing)
+            : matchAllByLinearScan(Lists.newLinkedList(actual), expected, missing);
     // if we have any missing expected elements, fail
     if (!missing.isEmpty()) {
       if (hasMatchingToStringPair(actual(), missing)) {
@@ -263,7 +283,7 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
             "Not true that %s contains at least <%s>. "
                 + "It is missing <%s>. However, it does contain <%s>.",
             actualAsString(),
-            annotateEmptyStrings(expected),
+            renderWithinBudget(annotateEmptyStrings(expected)),
             countDuplicatesAndAddTypeInfo(annotateEmptyStrings(missing)),
             countDuplicatesAndAddTypeInfo(
                 annotateEmptyStrings(
@@ -271,7 +291,7 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
       } else {
         failWithBadResults(
             "contains at least",
-            annotateEmptyStrings(expected),
+            renderWithinBudget(annotateEmptyStrings(expected)),
             "is missing",
             countDuplicates(annotateEmptyStrings(missing)));
       }
@@ -293,6 +313,68 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
     return containsAllIn(asList(expected));
   }
 
+  /**
+   * Implements {@link #containsAllIn} by consuming the actual elements only once, keeping only the
+   * expected elements that haven't been seen yet. Whether they appear in order is found by matching
+   * each expected element to the earliest possible actual element, which finds a matching
+   * subsequence whenever there is one.
+   *
+   * <p>Unlike the general implementation, the failure message can't point out actual elements that
+   * have the same string representation as missing ones, since the actual elements aren't kept.
+   */
+  private Ordered containsAllInOnePass(List<?> expected) {
+    ElementMultiset outstanding = new ElementMultiset(expected);
+    int inOrderCount = 0;
+    Iterator<?> actualIter = actual().iterator();
+    while (actualIter.hasNext()
+        && !(outstanding.isEmpty() && inOrderCount == expected.size())) {
+      Object actualElement = actualIter.next();
+      if (inOrderCount < expected.size()
+          && Objects.equal(actualElement, expected.get(inOrderCount))) {
+        inOrderCount++;
+      }
+      outstanding.remove(actualElement);
+    }
+    if (!outstanding.isEmpty()) {
+      failWithBadResults(
+          "contains at least",
+          renderWithinBudget(annotateEmptyStrings(expected)),
+          "is missing",
+          countDuplicates(annotateEmptyStrings(outstanding.remainingElements())));
+    }
+    return (inOrderCount == expected.size())
+        ? IN_ORDER
+        : new NotInOrder(this, "contains all elements in order", expected);
+  }
+
+  /**
+   * Does the same work as {@link SubsequenceMatcher#matchAll} but without relying on {@code
+   * hashCode()}, for elements whose hashing is known to be broken. This takes quadratic time.
+   */
+  private static boolean matchAllByLinearScan(
+      List<?> actual, Collection<?> expected, Collection<Object> missing) {
+    List<Object> actualNotInOrder = newArrayList();
+
+    boolean ordered = true;
+    // step through the expected elements...
+    for (Object e : expected) {
+      int index = actual.indexOf(e);
+      if (index != -1) { // if we find the element in the actual list...
+        // drain all the elements that come before that element into actualNotInOrder
+        moveElements(actual, actualNotInOrder, index);
+        // and remove the element from the actual list
+        actual.remove(0);
+      } else { // otherwise try removing it from actualNotInOrder...
+        if (actualNotInOrder.remove(e)) { // if it was in actualNotInOrder, we're not in order
+          ordered = false;
+        } else { // if it's not in actualNotInOrder, we're missing an expected element
+          missing.add(e);
+        }
+      }
+    }
+    return ordered;
+  }
+
   /**
    * Removes at most the given number of available elements from the input list and adds them to the
    * given output collection.
@@ -358,7 +440,8 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
 
     if (!requiredIter.hasNext()) {
       if (actualIter.hasNext()) {
-        isEmpty(); // fails
+        // Fail as isEmpty() would, without iterating again.
+        fail(factWithoutValue("expected to be empty"));
         return ALREADY_FAILED;
       } else {
         return IN_ORDER;
@@ -399,12 +482,14 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
           return ALREADY_FAILED;
         }
         // Missing elements; elements that are not missing will be removed as we iterate.
-        Collection<Object> missing = newArrayList();
-        missing.add(requiredElement);
-        Iterators.addAll(missing, requiredIter);
+        List<Object> missingList = newArrayList();
+        missingList.add(requiredElement);
+        Iterators.addAll(missingList, requiredIter);
+        // Indexed by hash code so that each removal is cheap, even for large iterables.
+        ElementMultiset missing = new ElementMultiset(missingList);
 
         // Extra elements that the subject had but shouldn't have.
-        Collection<Object> extra = newArrayList();
+        UnexpectedElements extra = new UnexpectedElements(maxListedElements());
 
         // Remove all actual elements from missing, and add any that weren't in missing
         // to extra.
@@ -418,14 +503,19 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
           }
         }
 
-        if (missing.isEmpty() && extra.isEmpty()) {
+        if (missing.isEmpty() && extra.kept.isEmpty()) {
           /*
            * This containsExactly() call is a success. But the iterables were not in the same order,
            * so return an object that will fail the test if the user calls inOrder().
            */
           return new NotInOrder(this, "contains exactly these elements in order", required);
         }
-        return failExactly(required, addElementsInWarning, missing, extra);
+        return failExactly(
+            required,
+            addElementsInWarning,
+            missing.remainingElements(),
+            extra.kept,
+            extra.omittedCount);
       }
 
       isFirst = false;
@@ -435,17 +525,23 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
     // pairs of elements that differ. If the actual iterator still has elements, they're
     // extras. If the required iterator has elements, they're missing elements.
     if (actualIter.hasNext()) {
+      UnexpectedElements extra = new UnexpectedElements(maxListedElements());
+      while (actualIter.hasNext()) {
+        extra.add(actualIter.next());
+      }
       return failExactly(
           required,
           addElementsInWarning,
           /* missing= */ ImmutableList.of(),
-          /* extra= */ newArrayList(actualIter));
+          extra.kept,
+          extra.omittedCount);
     } else if (requiredIter.hasNext()) {
       return failExactly(
           required,
           addElementsInWarning,
           /* missing= */ newArrayList(requiredIter),
-          /* extra= */ ImmutableList.of());
+          /* extra= */ ImmutableList.of(),
+          /* omittedExtraCount= */ 0);
     }
 
     // If neither iterator has elements, we reached the end and the elements were in
@@ -453,11 +549,41 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
     return IN_ORDER;
   }
 
+  /**
+   * Returns how many unexpected elements to keep for a failure message. Only a one-shot iterable
+   * limits them, since other iterables hold all of their elements anyway.
+   */
+  private int maxListedElements() {
+    return (actual() instanceof OneShotIterable)
+        ? ((OneShotIterable<?>) actual()).maxListedElements()
+        : Integer.MAX_VALUE;
+  }
+
+  /** Unexpected elements for a failure message: the first few are kept, and the rest counted. */
+  private static final class UnexpectedElements {
+    final List<Object> kept = newArrayList();
+    final int maxKept;
+    long omittedCount;
+
+    UnexpectedElements(int maxKept) {
+      this.maxKept = maxKept;
+    }
+
+    void add(@NullableDecl Object element) {
+      if (kept.size() < maxKept) {
+        kept.add(element);
+      } else {
+        omittedCount++;
+      }
+    }
+  }
+
   private Ordered failExactly(
       Iterable<?> required,
       boolean addElementsInWarning,
       Collection<?> missing,
-      Collection<?> extra) {
+      Collection<?> extra,
+      long omittedExtraCount) {
     // TODO(kak): Possible enhancement: Include "[1 copy]" if the element does appear in
     // the subject but not enough times. Similarly for unexpected extra items.
     // Subject is both missing required elements and contains extra elements
@@ -466,7 +592,7 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
         new StringBuilder(
             format(
                 "Not true that %s contains exactly <%s>. It ",
-                actualAsString(), annotateEmptyStrings(required)));
+                actualAsString(), renderWithinBudget(annotateEmptyStrings(required))));
     /*
      * Fact keys like "missing (1)" and "unexpected (2)" violate our recommendation that keys
      * should be fixed strings. This violation lets the fact value contain only the elements
@@ -490,6 +616,9 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
               addTypeInfo
                   ? countDuplicatesAndAddTypeInfo(annotateEmptyStrings(extra))
                   : countDuplicates(annotateEmptyStrings(extra))));
+      if (omittedExtraCount > 0) {
+        message.append(format(" (and %s more)", omittedExtraCount));
+      }
     }
     if (addElementsInWarning) {
       message.append(
@@ -528,7 +657,7 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
     if (!present.isEmpty()) {
       failWithBadResults(
           "contains none of",
-          annotateEmptyStrings(excluded),
+          renderWithinBudget(annotateEmptyStrings(excluded)),
           "contains",
           annotateEmptyStrings(present));
     }
@@ -557,7 +686,7 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
 
     @Override
     public void inOrder() {
-      subject.fail(check, required);
+      subject.fail(check, subject.renderWithinBudget(required));
     }
   }
 
@@ -721,21 +850,29 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
     private final IterableSubject subject;
     private final Correspondence<? super A, ? super E> correspondence;
     private final Optional<Pairer> pairer;
+    private final int parallelism;
 
     UsingCorrespondence(
         IterableSubject subject, Correspondence<? super A, ? super E> correspondence) {
-      this.subject = checkNotNull(subject);
-      this.correspondence = checkNotNull(correspondence);
-      this.pairer = Optional.absent();
+      this(subject, correspondence, Optional.<Pairer>absent(), 1);
     }
 
     UsingCorrespondence(
         IterableSubject subject,
         Correspondence<? super A, ? super E> correspondence,
         Pairer pairer) {
+      this(subject, correspondence, Optional.of(pairer), 1);
+    }
+
+    private UsingCorrespondence(
+        IterableSubject subject,
+        Correspondence<? super A, ? super E> correspondence,
+        Optional<Pairer> pairer,
+        int parallelism) {
       this.subject = checkNotNull(subject);
       this.correspondence = checkNotNull(correspondence);
-      this.pairer = Optional.of(pairer);
+      this.pairer = checkNotNull(pairer);
+      this.parallelism = parallelism;
     }
 
     /**
@@ -819,7 +956,39 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
         Function<? super A, ? extends Object> actualKeyFunction,
         Function<? super E, ? extends Object> expectedKeyFunction) {
       return new UsingCorrespondence<>(
-          subject, correspondence, new Pairer(actualKeyFunction, expectedKeyFunction));
+          subject,
+          correspondence,
+          Optional.of(new Pairer(actualKeyFunction, expectedKeyFunction)),
+          parallelism);
+    }
+
+    /**
+     * Specifies that the correspondence should be evaluated on up to {@code threadCount} threads
+     * when checking {@link #containsExactlyElementsIn}, {@link #containsAllIn}, {@link
+     * #containsNoneIn}, and their overloads. For example:
+     *
+     * <pre>{@code
+     * assertThat(actualRecords)
+     *     .comparingElementsUsing(RECORD_CORRESPONDENCE)
+     *     .comparingInParallel(Runtime.getRuntime().availableProcessors())
+     *     .containsExactlyElementsIn(expectedRecords);
+     * }</pre>
+     *
+     * <p>This is worthwhile only when {@link Correspondence#compare} is expensive and the iterables
+     * are large, and it requires {@link Correspondence#compare} to be thread-safe.
+     *
+     * <p>Parallel evaluation compares some pairs of elements that serial evaluation doesn't. After
+     * the elements that correspond in order are paired up, serial evaluation compares each
+     * remaining element only until it finds one to pair it with. Parallel evaluation instead
+     * compares each remaining element with all of its possible partners at once. If {@link
+     * Correspondence#compare} throws for a pair that serial evaluation wouldn't have compared, the
+     * exception is ignored. So whether a test passes or fails, the failure message, and any
+     * exception rethrown from {@link Correspondence#compare} are the same either way. Under GWT,
+     * this method has no effect at all.
+     */
+    public UsingCorrespondence<A, E> comparingInParallel(int threadCount) {
+      checkArgument(threadCount > 0, "threadCount (%s) must be positive", threadCount);
+      return new UsingCorrespondence<>(subject, correspondence, pairer, threadCount);
     }
 
     /**
@@ -907,21 +1076,30 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
 
       // Check if the elements correspond in order. This allows the common case of a passing test
       // using inOrder() to complete in linear time.
-      if (correspondInOrderExactly(actualList.iterator(), expectedList.iterator())) {
+      LazyBipartiteMatcher candidateMapping = findCandidateMapping(actualList, expectedList);
+      candidateMapping.matchInOrder();
+      if (actualList.size() == expectedList.size() && candidateMapping.allLhsMatched()) {
         return IN_ORDER;
       }
       // We know they don't correspond in order, so we're going to have to do an any-order test.
-      // Find a many:many mapping between the indexes of the elements which correspond, and check
-      // it for completeness.
-      ImmutableSetMultimap<Integer, Integer> candidateMapping =
-          findCandidateMapping(actualList, expectedList);
+      // Pair up the remaining elements greedily, which succeeds in roughly quadratic time in the
+      // common case of a passing test not using inOrder().
+      candidateMapping.matchGreedily();
+      if (candidateMapping.allLhsMatched() && candidateMapping.allRhsMatched()) {
+        return new NotInOrder(
+            subject,
+            "contains, in order, exactly one element that " + correspondence + " each element of",
+            expected);
+      }
+      // Check the many:many mapping between the indexes of the elements which correspond for
+      // completeness.
       if (failIfCandidateMappingHasMissingOrExtra(actualList, expectedList, candidateMapping)) {
         return ALREADY_FAILED;
       }
       // We know that every expected element maps to at least one actual element, and vice versa.
       // Find a maximal 1:1 mapping, and check it for completeness.
       ImmutableBiMap<Integer, Integer> maximalOneToOneMapping =
-          findMaximalOneToOneMapping(candidateMapping);
+          findMaximalOneToOneMapping(candidateMapping, actualList.size());
       if (failIfOneToOneMappingHasMissingOrExtra(
           actualList, expectedList, maximalOneToOneMapping)) {
         return ALREADY_FAILED;
@@ -948,59 +1126,79 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
     }
 
     /**
-     * Returns whether the actual and expected iterators have the same number of elements and, when
-     * iterated pairwise, every pair of actual and expected values satisfies the correspondence.
+     * Given a list of actual elements and a list of expected elements, returns a matcher for the
+     * many:many mapping between actual and expected elements where a pair of elements maps if it
+     * satisfies the correspondence. The LHS vertices are indexes into the actual list and the RHS
+     * vertices are indexes into the expected list. The correspondence is only tested on the pairs
+     * of elements that the matcher asks about, and only if they share a bucket.
      */
-    private boolean correspondInOrderExactly(
-        Iterator<? extends A> actual, Iterator<? extends E> expected) {
-      while (actual.hasNext() && expected.hasNext()) {
-        A actualElement = actual.next();
-        E expectedElement = expected.next();
-        if (!correspondence.compare(actualElement, expectedElement)) {
-          return false;
-        }
-      }
-      return !(actual.hasNext() || expected.hasNext());
+    private LazyBipartiteMatcher findCandidateMapping(
+        final List<? extends A> actual, final List<? extends E> expected) {
+      @NullableDecl
+      CorrespondenceBuckets buckets =
+          CorrespondenceBuckets.create(correspondence, actual, expected);
+      return new LazyBipartiteMatcher(
+          actual.size(),
+          expected.size(),
+          new LazyBipartiteMatcher.EdgeTest() {
+            @Override
+            public boolean hasEdge(int actualIndex, int expectedIndex) {
+              return correspondence.compare(actual.get(actualIndex), expected.get(expectedIndex));
+            }
+          },
+          buckets == null ? null : buckets.expectedCandidates(),
+          parallelism);
     }
 
     /**
-     * Given a list of actual elements and a list of expected elements, finds a many:many mapping
-     * between actual and expected elements where a pair of elements maps if it satisfies the
-     * correspondence. Returns this mapping as a multimap where the keys are indexes into the actual
-     * list and the values are indexes into the expected list.
+     * Like {@link #findCandidateMapping}, but the LHS vertices are indexes into the expected list
+     * and the RHS vertices are indexes into the actual list.
      */
-    private ImmutableSetMultimap<Integer, Integer> findCandidateMapping(
-        List<? extends A> actual, List<? extends E> expected) {
-      ImmutableSetMultimap.Builder<Integer, Integer> mapping = ImmutableSetMultimap.builder();
-      for (int actualIndex = 0; actualIndex < actual.size(); actualIndex++) {
-        for (int expectedIndex = 0; expectedIndex < expected.size(); expectedIndex++) {
-          if (correspondence.compare(actual.get(actualIndex), expected.get(expectedIndex))) {
-            mapping.put(actualIndex, expectedIndex);
-          }
-        }
-      }
-      return mapping.build();
+    private LazyBipartiteMatcher findInverseCandidateMapping(
+        final List<? extends A> actual, final List<? extends E> expected) {
+      @NullableDecl
+      CorrespondenceBuckets buckets =
+          CorrespondenceBuckets.create(correspondence, actual, expected);
+      return new LazyBipartiteMatcher(
+          expected.size(),
+          actual.size(),
+          new LazyBipartiteMatcher.EdgeTest() {
+            @Override
+            public boolean hasEdge(int expectedIndex, int actualIndex) {
+              return correspondence.compare(actual.get(actualIndex), expected.get(expectedIndex));
+            }
+          },
+          buckets == null ? null : buckets.actualCandidates(),
+          parallelism);
     }
 
     /**
      * Given a list of actual elements, a list of expected elements, and a many:many mapping between
-     * actual and expected elements specified as a multimap of indexes into the actual list to
+     * actual and expected elements specified as a matcher from indexes into the actual list to
      * indexes into the expected list, checks that every actual element maps to at least one
      * expected element and vice versa, and fails if this is not the case. Returns whether the
      * assertion failed.
      */
     private boolean failIfCandidateMappingHasMissingOrExtra(
-        List<? extends A> actual,
-        List<? extends E> expected,
-        ImmutableSetMultimap<Integer, Integer> mapping) {
-      List<? extends A> extra = findNotIndexed(actual, mapping.keySet());
-      List<? extends E> missing = findNotIndexed(expected, mapping.inverse().keySet());
+        List<? extends A> actual, List<? extends E> expected, LazyBipartiteMatcher mapping) {
+      List<A> extra = newArrayList();
+      for (int actualIndex = 0; actualIndex < actual.size(); actualIndex++) {
+        if (!mapping.lhsHasEdge(actualIndex)) {
+          extra.add(actual.get(actualIndex));
+        }
+      }
+      List<E> missing = newArrayList();
+      for (int expectedIndex = 0; expectedIndex < expected.size(); expectedIndex++) {
+        if (!mapping.rhsHasEdge(expectedIndex)) {
+          missing.add(expected.get(expectedIndex));
+        }
+      }
       if (!missing.isEmpty() || !extra.isEmpty()) {
         subject.failWithRawMessage(
             "Not true that %s contains exactly one element that %s each element of <%s>. It %s",
             subject.actualAsString(),
             correspondence,
-            expected,
+            subject.renderWithinBudget(expected),
             describeMissingOrExtra(missing, extra));
         return true;
       }
@@ -1114,13 +1312,13 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
     /**
      * Given a many:many mapping between actual elements and expected elements, finds a 1:1 mapping
      * which is the subset of that many:many mapping which includes the largest possible number of
-     * elements. The input and output mappings are each described as a map or multimap where the
-     * keys are indexes into the actual list and the values are indexes into the expected list. If
-     * there are multiple possible output mappings tying for the largest possible, this returns an
-     * arbitrary one.
+     * elements. The input mapping is described as a matcher whose vertices are indexes into the
+     * actual and expected lists, one list on each side, and the output mapping as a bimap from the
+     * matcher's LHS indexes to its RHS indexes. If there are multiple possible output mappings
+     * tying for the largest possible, this returns an arbitrary one.
      */
-    private ImmutableBiMap<Integer, Integer> findMaximalOneToOneMapping(
-        ImmutableMultimap<Integer, Integer> edges) {
+    private static ImmutableBiMap<Integer, Integer> findMaximalOneToOneMapping(
+        LazyBipartiteMatcher edges, int lhsCount) {
       /*
        * Finding this 1:1 mapping is analogous to finding a maximum cardinality bipartite matching
        * (https://en.wikipedia.org/wiki/Matching_(graph_theory)#In_unweighted_bipartite_graphs).
@@ -1133,9 +1331,17 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
        *  - And the 1:1 mapping which includes the largest possible number of elements corresponds
        * to the maximum cardinality matching.
        *
-       * So we'll apply a standard algorithm for doing maximum cardinality bipartite matching.
+       * So we'll apply a standard algorithm for doing maximum cardinality bipartite matching,
+       * starting from the partial matching which the matcher has already found.
        */
-      return GraphMatching.maximumCardinalityBipartiteMatching(edges);
+      int[] matching = edges.maximize();
+      ImmutableBiMap.Builder<Integer, Integer> mapping = ImmutableBiMap.builder();
+      for (int lhs = 0; lhs < lhsCount; lhs++) {
+        if (matching[lhs] != GraphMatching.UNMATCHED) {
+          mapping.put(lhs, matching[lhs]);
+        }
+      }
+      return mapping.build();
     }
 
     /**
@@ -1158,7 +1364,7 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
                 + "it %s",
             subject.actualAsString(),
             correspondence,
-            expected,
+            subject.renderWithinBudget(expected),
             describeMissingOrExtra(missing, extra));
         return true;
       }
@@ -1200,17 +1406,25 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
         return IN_ORDER;
       }
       // We know they don't correspond in order, so we're going to have to do an any-order test.
-      // Find a many:many mapping between the indexes of the elements which correspond, and check
-      // it for completeness.
-      ImmutableSetMultimap<Integer, Integer> candidateMapping =
-          findCandidateMapping(actualList, expectedList);
+      // Pair up the elements greedily, which is usually enough when the test passes. The matcher
+      // is keyed by expected element, since the expected elements are the ones that must all match.
+      LazyBipartiteMatcher candidateMapping = findInverseCandidateMapping(actualList, expectedList);
+      candidateMapping.matchGreedily();
+      if (candidateMapping.allLhsMatched()) {
+        return new NotInOrder(
+            subject,
+            "contains, in order, at least one element that " + correspondence + " each element of",
+            expected);
+      }
+      // Check the many:many mapping between the indexes of the elements which correspond for
+      // completeness.
       if (failIfCandidateMappingHasMissing(actualList, expectedList, candidateMapping)) {
         return ALREADY_FAILED;
       }
       // We know that every expected element maps to at least one actual element, and vice versa.
       // Find a maximal 1:1 mapping, and check it for completeness.
       ImmutableBiMap<Integer, Integer> maximalOneToOneMapping =
-          findMaximalOneToOneMapping(candidateMapping);
+          findMaximalOneToOneMapping(candidateMapping, expectedList.size()).inverse();
       if (failIfOneToOneMappingHasMissing(actualList, expectedList, maximalOneToOneMapping)) {
         return ALREADY_FAILED;
       }
@@ -1274,21 +1488,35 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
 
     /**
      * Given a list of actual elements, a list of expected elements, and a many:many mapping between
-     * actual and expected elements specified as a multimap of indexes into an actual list to
-     * indexes into the expected list, checks that every expected element maps to at least one
+     * actual and expected elements specified as a matcher from indexes into the expected list to
+     * indexes into the actual list, checks that every expected element maps to at least one
      * actual element, and fails if this is not the case. Actual elements which do not map to any
      * expected elements are ignored.
      */
     private boolean failIfCandidateMappingHasMissing(
-        List<? extends A> actual,
-        List<? extends E> expected,
-        ImmutableSetMultimap<Integer, Integer> mapping) {
-      List<? extends E> missing = findNotIndexed(expected, mapping.inverse().keySet());
+        List<? extends A> actual, List<? extends E> expected, LazyBipartiteMatcher mapping) {
+      List<E> missing = newArrayList();
+      for (int expectedIndex = 0; expectedIndex < expected.size(); expectedIndex++) {
+        if (!mapping.lhsHasEdge(expectedIndex)) {
+          missing.add(expected.get(expectedIndex));
+        }
+      }
       if (!missing.isEmpty()) {
-        List<? extends A> extra = findNotIndexed(actual, mapping.keySet());
+        // The extra elements are only described when there's a pairer, so only look for them then.
+        List<A> extra = newArrayList();
+        if (pairer.isPresent()) {
+          for (int actualIndex = 0; actualIndex < actual.size(); actualIndex++) {
+            if (!mapping.rhsHasEdge(actualIndex)) {
+              extra.add(actual.get(actualIndex));
+            }
+          }
+        }
         subject.failWithRawMessage(
             "Not true that %s contains at least one element that %s each element of <%s>. It %s",
-            subject.actualAsString(), correspondence, expected, describeMissing(missing, extra));
+            subject.actualAsString(),
+            correspondence,
+            subject.renderWithinBudget(expected),
+            describeMissing(missing, extra));
         return true;
       }
       return false;
@@ -1361,7 +1589,10 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
                 + "but there was no 1:1 mapping between all the expected elements and any subset "
                 + "of the actual elements. Using the most complete 1:1 mapping (or one such "
                 + "mapping, if there is a tie), it %s",
-            subject.actualAsString(), correspondence, expected, describeMissing(missing, extra));
+            subject.actualAsString(),
+            correspondence,
+            subject.renderWithinBudget(expected),
+            describeMissing(missing, extra));
         return true;
       }
       return false;
@@ -1412,20 +1643,27 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
           if (!pairing.pairedKeysToExpectedValues.isEmpty()) {
             subject.failWithRawMessage(
                 "Not true that %s %s <%s>. It contains the following values that match by key: %s",
-                subject.actualAsString(), failVerb, expected, describeAnyMatchesByKey(pairing));
+                subject.actualAsString(),
+                failVerb,
+                subject.renderWithinBudget(expected),
+                describeAnyMatchesByKey(pairing));
           } else {
             subject.failWithRawMessage(
                 "Not true that %s %s <%s>. It does not contain any matches by key, either",
-                subject.actualAsString(), failVerb, expected);
+                subject.actualAsString(),
+                failVerb,
+                subject.renderWithinBudget(expected));
           }
         } else {
           subject.failWithRawMessage(
               "Not true that %s %s <%s>. (N.B. A key function which does not uniquely key the "
                   + "expected elements was provided and has consequently been ignored.)",
-              subject.actualAsString(), failVerb, expected);
+              subject.actualAsString(),
+              failVerb,
+              subject.renderWithinBudget(expected));
         }
       } else {
-        subject.fail(failVerb, expected);
+        subject.fail(failVerb, subject.renderWithinBudget(expected));
       }
     }
 
@@ -1474,14 +1712,19 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
     }
 
     private void containsNone(String excludedPrefix, Iterable<? extends E> excluded) {
-      Collection<A> actual = iterableToCollection(getCastActual());
+      List<A> actual = iterableToList(getCastActual());
+      List<E> distinctExcluded = newArrayList(Sets.newLinkedHashSet(excluded));
+      // Only compare the pairs of elements which share a bucket, if the correspondence has them.
+      @NullableDecl
+      CorrespondenceBuckets buckets =
+          CorrespondenceBuckets.create(correspondence, actual, distinctExcluded);
+      @NullableDecl int[][] candidates = (buckets == null) ? null : buckets.actualCandidates();
+      List<List<A>> presentByExcludedIndex =
+          findCorresponding(actual, distinctExcluded, candidates);
       ListMultimap<E, A> present = LinkedListMultimap.create();
-      for (E excludedItem : Sets.newLinkedHashSet(excluded)) {
-        for (A actualItem : actual) {
-          if (correspondence.compare(actualItem, excludedItem)) {
-            present.put(excludedItem, actualItem);
-          }
-        }
+      for (int excludedIndex = 0; excludedIndex < distinctExcluded.size(); excludedIndex++) {
+        present.putAll(
+            distinctExcluded.get(excludedIndex), presentByExcludedIndex.get(excludedIndex));
       }
       if (!present.isEmpty()) {
         StringBuilder presentDescription = new StringBuilder();
@@ -1504,8 +1747,54 @@ public class IterableSubject extends Subject<IterableSubject, Iterable<?>> {
         }
         subject.failWithRawMessage(
             "Not true that %s contains no element that %s %s <%s>. It contains <[%s]>",
-            subject.actualAsString(), correspondence, excludedPrefix, excluded, presentDescription);
+            subject.actualAsString(),
+            correspondence,
+            excludedPrefix,
+            subject.renderWithinBudget(excluded),
+            presentDescription);
+      }
+    }
+
+    /**
+     * Returns, for each expected element, the actual elements which correspond to it, in order.
+     * Only compares each expected element with its candidates, if it has any (see {@link
+     * CorrespondenceBuckets}). The expected elements are handled on up to {@code parallelism}
+     * threads.
+     */
+    private List<List<A>> findCorresponding(
+        final List<A> actual,
+        final List<? extends E> expected,
+        @NullableDecl final int[][] candidates) {
+      final List<List<A>> corresponding = new ArrayList<>();
+      List<Runnable> tasks = new ArrayList<>();
+      for (int expectedIndex = 0; expectedIndex < expected.size(); expectedIndex++) {
+        corresponding.add(new ArrayList<A>());
+        final int index = expectedIndex;
+        tasks.add(
+            new Runnable() {
+              @Override
+              public void run() {
+                E expectedItem = expected.get(index);
+                List<A> matches = corresponding.get(index);
+                if (candidates == null || candidates[index] == null) {
+                  for (A actualItem : actual) {
+                    if (correspondence.compare(actualItem, expectedItem)) {
+                      matches.add(actualItem);
+                    }
+                  }
+                } else {
+                  for (int actualIndex : candidates[index]) {
+                    A actualItem = actual.get(actualIndex);
+                    if (correspondence.compare(actualItem, expectedItem)) {
+                      matches.add(actualItem);
+                    }
+                  }
+                }
+              }
+            });
       }
+      Platform.runInParallel(tasks, parallelism);
+      return corresponding;
     }
 
     @SuppressWarnings("unchecked") // throwing ClassCastException is the correct behaviour
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * Tracks the classes whose {@code hashCode()} can't be trusted, so that hash-based fast paths can
+ * fall back to linear scans for their instances. A class is in the set if {@link
+ * Platform#hashCodeIsKnownBroken} says so or if its {@code hashCode()} has been seen to throw.
+ *
+ * <p>Results are cached per instance, so callers should create one per assertion.
+ */
+final class KnownBrokenHashCodes {
+  private final Map<Class<?>, Boolean> brokenByClass = new HashMap<>();
+
+  /** Returns whether the given element's class is known to have a broken {@code hashCode()}. */
+  boolean contains(@NullableDecl Object element) {
+    if (element == null) {
+      return false;
+    }
+    Class<?> clazz = element.getClass();
+    Boolean broken = brokenByClass.get(clazz);
+    if (broken == null) {
+      broken = Platform.hashCodeIsKnownBroken(clazz);
+      brokenByClass.put(clazz, broken);
+    }
+    return broken;
+  }
+
+  /** Records that the given element's {@code hashCode()} threw. */
+  void add(Object element) {
+    brokenByClass.put(element.getClass(), true);
+  }
+}
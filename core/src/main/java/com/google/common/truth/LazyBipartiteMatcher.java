@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.google.common.truth.GraphMatching.UNMATCHED;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * Builds a maximum cardinality matching of a bipartite graph whose edges are expensive to test,
+ * such as the graph of pairs of actual and expected elements which satisfy a {@link
+ * Correspondence}. The vertices are identified by indexes, as in {@link
+ * GraphMatching#maximumCardinalityBipartiteMatching(int, int[], int[])}, and the edges are only
+ * tested on demand.
+ *
+ * <p>The matching is built in stages, each of which only tests the edges it needs:
+ *
+ * <ol>
+ *   <li>{@link #matchInOrder} pairs up vertices with the same index, which is all that's needed
+ *       when the elements correspond in order.
+ *   <li>{@link #matchGreedily} pairs each remaining LHS vertex with the first remaining RHS vertex
+ *       it has an edge to, which is usually all that's needed when the elements correspond in a
+ *       different order.
+ *   <li>{@link #maximize} finds the remaining augmenting paths, if any. It only tests the edges
+ *       from the LHS vertices that can be reached from an unmatched LHS vertex by an alternating
+ *       path. Augmenting paths never leave that set (and augmenting along them doesn't grow it), so
+ *       the other LHS vertices can keep only the edges they are already matched with. Only if every
+ *       LHS vertex can be reached does this stage test every edge.
+ * </ol>
+ *
+ * <p>The matcher may also be given the candidate RHS vertices of each LHS vertex, in which case it
+ * never tests any other edges.
+ *
+ * <p>If the matcher is given a parallelism greater than 1, it tests edges on that many threads, in
+ * which case the edge test must be thread-safe. It then tests the edges of the unmatched LHS
+ * vertices up front rather than matching them greedily one at a time, since the greedy stage is
+ * inherently sequential, and then consumes the results in the serial order. That tests edges which
+ * the serial greedy stage never would, but the resulting matching is the same, and an exception
+ * thrown by an edge test is only rethrown if the serial greedy stage would have tested that edge.
+ */
+final class LazyBipartiteMatcher {
+  /** Tests whether there is an edge between two vertices. */
+  interface EdgeTest {
+    boolean hasEdge(int lhs, int rhs);
+  }
+
+  private final int lhsCount;
+  private final int rhsCount;
+  private final EdgeTest edgeTest;
+  private final int parallelism;
+
+  /** The RHS vertex matched to each LHS vertex, or {@link GraphMatching#UNMATCHED}. */
+  private final int[] lhsMatches;
+
+  /** The LHS vertex matched to each RHS vertex, or {@link GraphMatching#UNMATCHED}. */
+  private final int[] rhsMatches;
+
+  /**
+   * The RHS vertices which each LHS vertex might be adjacent to, in ascending order, or null if any
+   * of them might be. May itself be null.
+   */
+  @NullableDecl private final int[][] candidates;
+
+  /** The RHS vertices adjacent to each LHS vertex, in ascending order, or null if not yet known. */
+  private final int[][] rows;
+
+  private int matchCount;
+  private boolean matchedInOrder;
+
+  LazyBipartiteMatcher(int lhsCount, int rhsCount, EdgeTest edgeTest) {
+    this(lhsCount, rhsCount, edgeTest, null, 1);
+  }
+
+  /**
+   * Returns a matcher which only tests the edges to the given candidate RHS vertices of each LHS
+   * vertex, on up to {@code parallelism} threads. The candidates of each LHS vertex must be in
+   * ascending order, or null if every RHS vertex is a candidate.
+   */
+  LazyBipartiteMatcher(
+      int lhsCount,
+      int rhsCount,
+      EdgeTest edgeTest,
+      @NullableDecl int[][] candidates,
+      int parallelism) {
+    this.lhsCount = lhsCount;
+    this.rhsCount = rhsCount;
+    this.edgeTest = edgeTest;
+    this.parallelism = parallelism;
+    this.candidates = candidates;
+    this.lhsMatches = new int[lhsCount];
+    this.rhsMatches = new int[rhsCount];
+    Arrays.fill(lhsMatches, UNMATCHED);
+    Arrays.fill(rhsMatches, UNMATCHED);
+    this.rows = new int[lhsCount][];
+  }
+
+  /** Matches each vertex with the vertex with the same index on the other side, if adjacent. */
+  void matchInOrder() {
+    int count = Math.min(lhsCount, rhsCount);
+    final boolean[] diagonal = new boolean[count];
+    List<Runnable> tasks = new ArrayList<>();
+    for (final int[] range : split(count)) {
+      tasks.add(
+          new Runnable() {
+            @Override
+            public void run() {
+              for (int i = range[0]; i < range[1]; i++) {
+                diagonal[i] = hasEdge(i, i);
+              }
+            }
+          });
+    }
+    Platform.runInParallel(tasks, parallelism);
+    for (int i = 0; i < count; i++) {
+      if (diagonal[i]) {
+        match(i, i);
+      }
+    }
+    matchedInOrder = true;
+  }
+
+  /**
+   * Matches each unmatched LHS vertex, in order, with the first unmatched RHS vertex it has an edge
+   * to.
+   */
+  void matchGreedily() {
+    if (parallelism > 1) {
+      matchGreedilyInParallel();
+      return;
+    }
+    // The unmatched RHS vertices, as a doubly-linked list, so that we never revisit matched ones.
+    int[] next = new int[rhsCount + 1];
+    int[] previous = new int[rhsCount + 1];
+    int head = rhsCount; // a sentinel
+    int tail = head;
+    for (int rhs = 0; rhs < rhsCount; rhs++) {
+      if (rhsMatches[rhs] == UNMATCHED) {
+        next[tail] = rhs;
+        previous[rhs] = tail;
+        tail = rhs;
+      }
+    }
+    next[tail] = head;
+    previous[head] = tail;
+
+    for (int lhs = 0; lhs < lhsCount && next[head] != head; lhs++) {
+      if (lhsMatches[lhs] != UNMATCHED) {
+        continue;
+      }
+      int rhs =
+          (candidates == null || candidates[lhs] == null)
+              ? firstAdjacent(lhs, next, head)
+              : firstAdjacentCandidate(lhs);
+      if (rhs != UNMATCHED) {
+        match(lhs, rhs);
+        next[previous[rhs]] = next[rhs];
+        previous[next[rhs]] = previous[rhs];
+      }
+    }
+  }
+
+  /**
+   * Makes the same matches as the serial greedy stage, but tests the edges of all the unmatched LHS
+   * vertices up front, in parallel. If an edge test throws, the vertex's remaining edges aren't
+   * tested up front, and the exception is only rethrown if the serial greedy stage would have
+   * reached that edge, which is when no earlier unmatched RHS vertex is adjacent and the RHS vertex
+   * is itself still unmatched. Otherwise, the edges after it are tested serially, as needed.
+   */
+  private void matchGreedilyInParallel() {
+    final int[] unmatched = new int[lhsCount - matchCount];
+    int unmatchedCount = 0;
+    for (int lhs = 0; lhs < lhsCount; lhs++) {
+      if (lhsMatches[lhs] == UNMATCHED) {
+        unmatched[unmatchedCount++] = lhs;
+      }
+    }
+    final SpeculativeRow[] speculativeRows = new SpeculativeRow[lhsCount];
+    List<Runnable> tasks = new ArrayList<>();
+    for (final int[] range : split(unmatchedCount)) {
+      tasks.add(
+          new Runnable() {
+            @Override
+            public void run() {
+              for (int i = range[0]; i < range[1]; i++) {
+                SpeculativeRow speculativeRow = new SpeculativeRow();
+                speculativeRow.adjacent = testEdges(unmatched[i], speculativeRow);
+                speculativeRows[unmatched[i]] = speculativeRow;
+              }
+            }
+          });
+    }
+    Platform.runInParallel(tasks, parallelism);
+
+    for (int lhs : unmatched) {
+      SpeculativeRow speculativeRow = speculativeRows[lhs];
+      int match = UNMATCHED;
+      for (int rhs : speculativeRow.adjacent) {
+        if (rhsMatches[rhs] == UNMATCHED) {
+          match = rhs;
+          break;
+        }
+      }
+      if (speculativeRow.failure == null) {
+        rows[lhs] = speculativeRow.adjacent;
+      } else if (match == UNMATCHED) {
+        if (rhsMatches[speculativeRow.failedRhs] == UNMATCHED) {
+          throwIfUnchecked(speculativeRow.failure);
+          throw new AssertionError(speculativeRow.failure);
+        }
+        match = firstAdjacentAfter(lhs, speculativeRow.failedRhs);
+      }
+      if (match != UNMATCHED) {
+        match(lhs, match);
+      }
+    }
+  }
+
+  /**
+   * Returns the first unmatched RHS vertex after {@code after} which is a candidate of the given LHS
+   * vertex and adjacent to it, or {@link GraphMatching#UNMATCHED}.
+   */
+  private int firstAdjacentAfter(int lhs, int after) {
+    boolean allCandidates = candidates == null || candidates[lhs] == null;
+    int candidateCount = allCandidates ? rhsCount : candidates[lhs].length;
+    for (int i = 0; i < candidateCount; i++) {
+      int rhs = allCandidates ? i : candidates[lhs][i];
+      if (rhs > after
+          && rhsMatches[rhs] == UNMATCHED
+          && !(matchedInOrder && rhs == lhs)
+          && edgeTest.hasEdge(lhs, rhs)) {
+        return rhs;
+      }
+    }
+    return UNMATCHED;
+  }
+
+  /**
+   * Returns the first RHS vertex in the given linked list which is adjacent to the given LHS
+   * vertex, or {@link GraphMatching#UNMATCHED}.
+   */
+  private int firstAdjacent(int lhs, int[] next, int head) {
+    for (int rhs = next[head]; rhs != head; rhs = next[rhs]) {
+      if (matchedInOrder && rhs == lhs) {
+        continue; // We already know that there's no edge.
+      }
+      if (edgeTest.hasEdge(lhs, rhs)) {
+        return rhs;
+      }
+    }
+    return UNMATCHED;
+  }
+
+  /**
+   * Returns the first unmatched candidate of the given LHS vertex which is adjacent to it, or
+   * {@link GraphMatching#UNMATCHED}.
+   */
+  private int firstAdjacentCandidate(int lhs) {
+    for (int rhs : candidates[lhs]) {
+      if (rhsMatches[rhs] == UNMATCHED
+          && !(matchedInOrder && rhs == lhs)
+          && edgeTest.hasEdge(lhs, rhs)) {
+        return rhs;
+      }
+    }
+    return UNMATCHED;
+  }
+
+  /** Returns whether every LHS vertex is matched. */
+  boolean allLhsMatched() {
+    return matchCount == lhsCount;
+  }
+
+  /** Returns whether every RHS vertex is matched. */
+  boolean allRhsMatched() {
+    return matchCount == rhsCount;
+  }
+
+  /** Returns whether the given LHS vertex has an edge to any RHS vertex. */
+  boolean lhsHasEdge(int lhs) {
+    return lhsMatches[lhs] != UNMATCHED || row(lhs).length > 0;
+  }
+
+  /** Returns whether the given RHS vertex has an edge to any LHS vertex. */
+  boolean rhsHasEdge(int rhs) {
+    if (rhsMatches[rhs] != UNMATCHED) {
+      return true;
+    }
+    // Look through the edges we already know before testing any more.
+    for (int lhs = 0; lhs < lhsCount; lhs++) {
+      if (rows[lhs] != null && Arrays.binarySearch(rows[lhs], rhs) >= 0) {
+        return true;
+      }
+    }
+    for (int lhs = 0; lhs < lhsCount; lhs++) {
+      if (rows[lhs] == null && hasEdge(lhs, rhs)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Extends the current matching to a maximum cardinality matching, and returns it as an array
+   * giving the RHS vertex matched to each LHS vertex, or {@link GraphMatching#UNMATCHED}.
+   */
+  int[] maximize() {
+    if (matchCount == Math.min(lhsCount, rhsCount)) {
+      return lhsMatches.clone();
+    }
+    // Find every LHS vertex reachable from an unmatched one by an alternating path, testing all its
+    // edges as we go.
+    boolean[] reachable = new boolean[lhsCount];
+    int[] queue = new int[lhsCount];
+    int queueTail = 0;
+    for (int lhs = 0; lhs < lhsCount; lhs++) {
+      if (lhsMatches[lhs] == UNMATCHED) {
+        reachable[lhs] = true;
+        queue[queueTail++] = lhs;
+      }
+    }
+    // We go a layer at a time so that each layer's edges can be tested in parallel.
+    for (int layerStart = 0, layerEnd = queueTail; layerStart < layerEnd; ) {
+      computeRows(queue, layerStart, layerEnd);
+      for (int queueHead = layerStart; queueHead < layerEnd; queueHead++) {
+        for (int rhs : rows[queue[queueHead]]) {
+          int nextLhs = rhsMatches[rhs];
+          if (nextLhs != UNMATCHED && !reachable[nextLhs]) {
+            reachable[nextLhs] = true;
+            queue[queueTail++] = nextLhs;
+          }
+        }
+      }
+      layerStart = layerEnd;
+      layerEnd = queueTail;
+    }
+
+    // The unreachable LHS vertices are all matched, and only need their matched edges.
+    int[] adjacencyStarts = new int[lhsCount + 1];
+    int edgeCount = 0;
+    for (int lhs = 0; lhs < lhsCount; lhs++) {
+      edgeCount += reachable[lhs] ? rows[lhs].length : 1;
+    }
+    int[] adjacency = new int[edgeCount];
+    int edge = 0;
+    for (int lhs = 0; lhs < lhsCount; lhs++) {
+      adjacencyStarts[lhs] = edge;
+      if (reachable[lhs]) {
+        System.arraycopy(rows[lhs], 0, adjacency, edge, rows[lhs].length);
+        edge += rows[lhs].length;
+      } else {
+        adjacency[edge++] = lhsMatches[lhs];
+      }
+    }
+    adjacencyStarts[lhsCount] = edge;
+    return GraphMatching.maximumCardinalityBipartiteMatching(
+        rhsCount, adjacencyStarts, adjacency, lhsMatches);
+  }
+
+  private void match(int lhs, int rhs) {
+    lhsMatches[lhs] = rhs;
+    rhsMatches[rhs] = lhs;
+    matchCount++;
+  }
+
+  /** Tests whether there is an edge between two vertices, unless it isn't a candidate. */
+  private boolean hasEdge(int lhs, int rhs) {
+    return isCandidate(lhs, rhs) && edgeTest.hasEdge(lhs, rhs);
+  }
+
+  private boolean isCandidate(int lhs, int rhs) {
+    return candidates == null
+        || candidates[lhs] == null
+        || Arrays.binarySearch(candidates[lhs], rhs) >= 0;
+  }
+
+  /** Ensures that the rows of the given LHS vertices are known, testing their edges in parallel. */
+  private void computeRows(final int[] lhsVertices, int start, int end) {
+    List<Runnable> tasks = new ArrayList<>();
+    for (final int[] range : split(end - start)) {
+      final int offset = start;
+      tasks.add(
+          new Runnable() {
+            @Override
+            public void run() {
+              for (int i = range[0]; i < range[1]; i++) {
+                row(lhsVertices[offset + i]);
+              }
+            }
+          });
+    }
+    Platform.runInParallel(tasks, parallelism);
+  }
+
+  /**
+   * Splits the range from 0 to {@code count} into contiguous ranges, a few for each thread, so that
+   * the threads share the work out reasonably evenly.
+   */
+  private List<int[]> split(int count) {
+    int rangeCount = Math.min(count, parallelism == 1 ? 1 : parallelism * 4);
+    List<int[]> ranges = new ArrayList<>();
+    for (int i = 0; i < rangeCount; i++) {
+      ranges.add(
+          new int[] {
+            (int) ((long) count * i / rangeCount), (int) ((long) count * (i + 1) / rangeCount)
+          });
+    }
+    return ranges;
+  }
+
+  /** Returns the RHS vertices adjacent to the given LHS vertex, testing its edges if necessary. */
+  private int[] row(int lhs) {
+    if (rows[lhs] == null) {
+      rows[lhs] = testEdges(lhs, null);
+    }
+    return rows[lhs];
+  }
+
+  /**
+   * Tests the edges of the given LHS vertex in ascending order of RHS vertex, and returns the
+   * adjacent RHS vertices. If an edge test throws and a {@code speculativeRow} is given, the
+   * exception is recorded in it, and only the RHS vertices found adjacent before then are returned.
+   */
+  private int[] testEdges(int lhs, @NullableDecl SpeculativeRow speculativeRow) {
+    boolean allCandidates = candidates == null || candidates[lhs] == null;
+    int candidateCount = allCandidates ? rhsCount : candidates[lhs].length;
+    int[] row = new int[candidateCount];
+    int size = 0;
+    for (int i = 0; i < candidateCount; i++) {
+      int rhs = allCandidates ? i : candidates[lhs][i];
+      boolean adjacent;
+      try {
+        // If the vertices with the same index weren't matched in order, they aren't adjacent.
+        adjacent =
+            rhs == lhsMatches[lhs]
+                || (!(matchedInOrder && rhs == lhs) && edgeTest.hasEdge(lhs, rhs));
+      } catch (RuntimeException | Error e) {
+        if (speculativeRow == null) {
+          throw e;
+        }
+        speculativeRow.failedRhs = rhs;
+        speculativeRow.failure = e;
+        break;
+      }
+      if (adjacent) {
+        row[size++] = rhs;
+      }
+    }
+    return Arrays.copyOf(row, size);
+  }
+
+  /** The edges of an LHS vertex, tested ahead of the greedy stage which may not need them all. */
+  private static final class SpeculativeRow {
+    /** The adjacent RHS vertices, in ascending order, up to {@link #failedRhs} if there is one. */
+    int[] adjacent;
+
+    /** The RHS vertex whose edge test threw, after which no more edges were tested. */
+    int failedRhs = UNMATCHED;
+
+    /** What the edge test threw, or null if none did. */
+    @NullableDecl Throwable failure;
+  }
+}
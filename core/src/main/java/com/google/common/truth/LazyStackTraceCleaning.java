@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import com.google.common.collect.Sets;
+import java.util.Set;
+
+/**
+ * Defers cleaning the stack trace of a failure until the trace is first used, so that failures
+ * whose traces are never printed (such as those that a test collects only to inspect their
+ * messages) don't pay for cleaning.
+ *
+ * <p>Each failure type that supports deferred cleaning holds an instance and calls {@link
+ * #cleanIfPending} before each use of its trace: {@link Throwable#getStackTrace} and {@link
+ * Throwable#printStackTrace}.
+ *
+ * <p>When a throwable prints its causes and suppressed exceptions, it reads their traces directly,
+ * without calling those methods. So before a failure is printed, {@link #cleanPendingTraces} cleans
+ * the throwables it encloses, too. Throwables that enclose failures but aren't Truth's own, such as
+ * an exception that Truth creates with a failure as its cause, must be passed to it explicitly.
+ */
+final class LazyStackTraceCleaning {
+  /**
+   * Supertype of Truth's {@link AssertionError} subclasses that can clean their stack traces when
+   * the traces are first used.
+   */
+  interface LazilyCleanedError {
+    /** Arranges for the stack trace to be cleaned when it is first used. */
+    void cleanStackTraceOnFirstUse();
+  }
+
+  private boolean pending;
+
+  synchronized void defer() {
+    pending = true;
+  }
+
+  synchronized void cleanIfPending(Throwable failure) {
+    if (pending) {
+      // Cleared first: the cleaner itself calls getStackTrace().
+      pending = false;
+      Platform.cleanStackTrace(failure);
+    }
+  }
+
+  /**
+   * Cleans the traces of the given throwable and of the throwables it encloses, its causes and
+   * suppressed exceptions, where cleaning is still pending.
+   */
+  static void cleanPendingTraces(Throwable throwable) {
+    cleanPendingTraces(throwable, Sets.<Throwable>newIdentityHashSet());
+  }
+
+  private static void cleanPendingTraces(Throwable throwable, Set<Throwable> seenThrowables) {
+    // Prevent infinite recursion if there is a reference cycle between Throwables.
+    if (!seenThrowables.add(throwable)) {
+      return;
+    }
+    if (throwable instanceof LazilyCleanedError) {
+      // Cleans the trace if cleaning is pending.
+      throwable.getStackTrace();
+    }
+    if (throwable.getCause() != null) {
+      cleanPendingTraces(throwable.getCause(), seenThrowables);
+    }
+    for (Throwable suppressed : Platform.getSuppressed(throwable)) {
+      cleanPendingTraces(suppressed, seenThrowables);
+    }
+  }
+}
@@ -0,0 +1,476 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.Fact.fact;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * Computes a line-based diff of two strings, rendered in the unified format with the same hunks
+ * and headers as {@code difflib.DiffUtils.generateUnifiedDiff}, without its "---" and "+++" lines.
+ *
+ * <p>Large, mostly equal inputs are the common case, so the diff is computed in stages that each
+ * avoid work on the lines that the earlier stages settled:
+ *
+ * <ul>
+ *   <li>Lines are found by scanning for {@code '\n'}, and they're kept as offsets into the input
+ *       rather than copied out.
+ *   <li>The lines that the inputs have in common at their start and end are matched first, by
+ *       comparing characters.
+ *   <li>Only the remaining lines are hashed, and each distinct line is assigned an int ID.
+ *   <li>Those IDs are diffed in the manner of a histogram diff: within each region, the line that
+ *       occurs least often is matched, along with the equal lines around it, and the regions before
+ *       and after it are diffed the same way.
+ *   <li>The length of the rendered diff is computed before it is rendered, so that a diff which
+ *       would be too long to be useful is never built.
+ * </ul>
+ */
+final class LineDiff {
+  private static final int CONTEXT_SIZE = 3;
+
+  /**
+   * How many line comparisons per input line the histogram diff may spend. Once it has spent them,
+   * it reports each remaining region as a single change. That's still a correct diff, just maybe
+   * not a minimal one, and it bounds the time spent on inputs with many repeated lines.
+   */
+  private static final int WORK_PER_LINE = 64;
+
+  private final Lines expected;
+  private final Lines actual;
+
+  /** Each change as 4 ints: expected position, expected count, actual position, actual count. */
+  private int[] deltas = new int[16];
+
+  private int deltaCount;
+
+  private LineDiff(String expected, String actual) {
+    this.expected = new Lines(expected);
+    this.actual = new Lines(actual);
+  }
+
+  /**
+   * Returns a fact with the diff of the given strings, or null if the diff would be longer than
+   * both strings.
+   */
+  @NullableDecl
+  static ImmutableList<Fact> makeDiff(String expected, String actual) {
+    LineDiff diff = new LineDiff(expected, actual);
+    diff.computeDeltas();
+    if (diff.deltaCount == 0) {
+      return ImmutableList.of(
+          fact("diff", "(line contents match, but line-break characters differ)"));
+      // TODO(cpovirk): Possibly include the expected/actual value, too?
+    }
+    long maxLength = Math.max(expected.length(), actual.length());
+    long length = diff.renderedLength(maxLength);
+    if (length > maxLength) {
+      return null;
+    }
+    StringBuilder result = new StringBuilder((int) length);
+    diff.render(result);
+    return ImmutableList.of(fact("diff", result.toString()));
+  }
+
+  private void computeDeltas() {
+    int expectedEnd = expected.count;
+    int actualEnd = actual.count;
+    int prefix = 0;
+    while (prefix < expectedEnd && prefix < actualEnd && lineEquals(prefix, prefix)) {
+      prefix++;
+    }
+    while (expectedEnd > prefix
+        && actualEnd > prefix
+        && lineEquals(expectedEnd - 1, actualEnd - 1)) {
+      expectedEnd--;
+      actualEnd--;
+    }
+    if (prefix == expectedEnd || prefix == actualEnd) {
+      addDelta(prefix, expectedEnd, prefix, actualEnd);
+      return;
+    }
+
+    LineInterner interner = new LineInterner();
+    int[] a = new int[expectedEnd - prefix];
+    for (int i = 0; i < a.length; i++) {
+      a[i] = interner.intern(expected, prefix + i);
+    }
+    int[] b = new int[actualEnd - prefix];
+    for (int j = 0; j < b.length; j++) {
+      b[j] = interner.intern(actual, prefix + j);
+    }
+    new HistogramDiff(a, b, interner.size()).run(prefix);
+  }
+
+  private boolean lineEquals(int expectedLine, int actualLine) {
+    int start = expected.start(expectedLine);
+    int length = expected.end(expectedLine) - start;
+    int actualStart = actual.start(actualLine);
+    return length == actual.end(actualLine) - actualStart
+        && expected.text.regionMatches(start, actual.text, actualStart, length);
+  }
+
+  /** Records a change, unless it is empty. */
+  private void addDelta(int expectedStart, int expectedEnd, int actualStart, int actualEnd) {
+    if (expectedStart == expectedEnd && actualStart == actualEnd) {
+      return;
+    }
+    if (deltaCount * 4 == deltas.length) {
+      deltas = Arrays.copyOf(deltas, deltas.length * 2);
+    }
+    int i = deltaCount * 4;
+    deltas[i] = expectedStart;
+    deltas[i + 1] = expectedEnd - expectedStart;
+    deltas[i + 2] = actualStart;
+    deltas[i + 3] = actualEnd - actualStart;
+    deltaCount++;
+  }
+
+  /**
+   * Diffs two arrays of line IDs, adding their changes in order. Regions are processed from an
+   * explicit stack, so that inputs that split into many regions can't overflow the call stack.
+   */
+  private final class HistogramDiff {
+    private final int[] a;
+    private final int[] b;
+
+    /** For each line ID, scratch space for its count in the current region of {@code a}. */
+    private final int[] counts;
+
+    /** For each line ID, scratch space for its first index in the current region of {@code a}. */
+    private final int[] firstIndexes;
+
+    private long remainingWork;
+
+    HistogramDiff(int[] a, int[] b, int idCount) {
+      this.a = a;
+      this.b = b;
+      this.counts = new int[idCount];
+      this.firstIndexes = new int[idCount];
+      this.remainingWork = WORK_PER_LINE * ((long) a.length + b.length);
+    }
+
+    /** Adds the changes, offsetting their positions by the given number of leading lines. */
+    void run(int offset) {
+      Deque<int[]> regions = new ArrayDeque<>();
+      regions.push(new int[] {0, a.length, 0, b.length});
+      while (!regions.isEmpty()) {
+        int[] region = regions.pop();
+        int aStart = region[0];
+        int aEnd = region[1];
+        int bStart = region[2];
+        int bEnd = region[3];
+        while (aStart < aEnd && bStart < bEnd && a[aStart] == b[bStart]) {
+          aStart++;
+          bStart++;
+        }
+        while (aEnd > aStart && bEnd > bStart && a[aEnd - 1] == b[bEnd - 1]) {
+          aEnd--;
+          bEnd--;
+        }
+        remainingWork -= (aEnd - aStart) + (bEnd - bStart);
+        int[] anchor =
+            (aStart == aEnd || bStart == bEnd || remainingWork < 0)
+                ? null
+                : findAnchor(aStart, aEnd, bStart, bEnd);
+        if (anchor == null) {
+          addDelta(offset + aStart, offset + aEnd, offset + bStart, offset + bEnd);
+          continue;
+        }
+        // Pushed in reverse, so that the region before the anchor is diffed first.
+        regions.push(new int[] {anchor[1], aEnd, anchor[3], bEnd});
+        regions.push(new int[] {aStart, anchor[0], bStart, anchor[2]});
+      }
+    }
+
+    /**
+     * Returns the bounds of a run of equal lines to match within the given region, chosen around
+     * the line that occurs in both but least often in {@code a}, or null if no line occurs in both.
+     */
+    @NullableDecl
+    private int[] findAnchor(int aStart, int aEnd, int bStart, int bEnd) {
+      for (int i = aEnd - 1; i >= aStart; i--) {
+        counts[a[i]]++;
+        firstIndexes[a[i]] = i;
+      }
+      int bestCount = Integer.MAX_VALUE;
+      int bestB = -1;
+      for (int j = bStart; j < bEnd && bestCount > 1; j++) {
+        int count = counts[b[j]];
+        if (count > 0 && count < bestCount) {
+          bestCount = count;
+          bestB = j;
+        }
+      }
+      int bestA = bestB == -1 ? -1 : firstIndexes[b[bestB]];
+      for (int i = aStart; i < aEnd; i++) {
+        counts[a[i]] = 0;
+      }
+      if (bestB == -1) {
+        return null;
+      }
+      int anchorAStart = bestA;
+      int anchorBStart = bestB;
+      while (anchorAStart > aStart
+          && anchorBStart > bStart
+          && a[anchorAStart - 1] == b[anchorBStart - 1]) {
+        anchorAStart--;
+        anchorBStart--;
+      }
+      int anchorAEnd = bestA + 1;
+      int anchorBEnd = bestB + 1;
+      while (anchorAEnd < aEnd && anchorBEnd < bEnd && a[anchorAEnd] == b[anchorBEnd]) {
+        anchorAEnd++;
+        anchorBEnd++;
+      }
+      return new int[] {anchorAStart, anchorAEnd, anchorBStart, anchorBEnd};
+    }
+  }
+
+  /**
+   * Returns the length of the rendered diff, or a number greater than {@code maxLength} if it is
+   * longer than that.
+   */
+  private long renderedLength(long maxLength) {
+    long length = -1; // The first line has no preceding newline.
+    for (int first = 0; first < deltaCount && length <= maxLength; ) {
+      int last = lastDeltaOfHunk(first);
+      length += hunkHeader(first, last).length() + 1;
+      for (int line = contextStart(first); line < contextEnd(last); line++) {
+        length += expected.end(line) - expected.start(line) + 2;
+      }
+      for (int d = first; d <= last; d++) {
+        int i = d * 4;
+        for (int line = deltas[i + 2]; line < deltas[i + 2] + deltas[i + 3]; line++) {
+          length += actual.end(line) - actual.start(line) + 2;
+        }
+      }
+      first = last + 1;
+    }
+    return length;
+  }
+
+  private void render(StringBuilder out) {
+    for (int first = 0; first < deltaCount; ) {
+      int last = lastDeltaOfHunk(first);
+      if (out.length() > 0) {
+        out.append('\n');
+      }
+      out.append(hunkHeader(first, last));
+      int line = contextStart(first);
+      for (int d = first; d <= last; d++) {
+        int i = d * 4;
+        for (; line < deltas[i]; line++) {
+          appendLine(out, ' ', expected, line);
+        }
+        for (; line < deltas[i] + deltas[i + 1]; line++) {
+          appendLine(out, '-', expected, line);
+        }
+        for (int j = deltas[i + 2]; j < deltas[i + 2] + deltas[i + 3]; j++) {
+          appendLine(out, '+', actual, j);
+        }
+      }
+      for (; line < contextEnd(last); line++) {
+        appendLine(out, ' ', expected, line);
+      }
+      first = last + 1;
+    }
+  }
+
+  private static void appendLine(StringBuilder out, char prefix, Lines lines, int line) {
+    out.append('\n').append(prefix).append(lines.text, lines.start(line), lines.end(line));
+  }
+
+  /**
+   * Returns the index of the last change in the hunk that starts with the given change. As in
+   * difflib, a change joins the hunk if at most twice the context size of lines separate it from
+   * the previous change.
+   */
+  private int lastDeltaOfHunk(int first) {
+    int last = first;
+    while (last + 1 < deltaCount
+        && deltas[last * 4] + deltas[last * 4 + 1] + CONTEXT_SIZE
+            >= deltas[(last + 1) * 4] - CONTEXT_SIZE) {
+      last++;
+    }
+    return last;
+  }
+
+  private int contextStart(int firstDelta) {
+    return Math.max(deltas[firstDelta * 4] - CONTEXT_SIZE, 0);
+  }
+
+  private int contextEnd(int lastDelta) {
+    return Math.min(
+        deltas[lastDelta * 4] + deltas[lastDelta * 4 + 1] + CONTEXT_SIZE, expected.count);
+  }
+
+  /**
+   * Returns the "@@" line of the given hunk. As in difflib, the counts are always present, and the
+   * start lines count from 1 even when a side has no lines.
+   */
+  private String hunkHeader(int first, int last) {
+    int contextStart = contextStart(first);
+    int leadingContext = deltas[first * 4] - contextStart;
+    int trailingContext = contextEnd(last) - (deltas[last * 4] + deltas[last * 4 + 1]);
+    int expectedCount = leadingContext + trailingContext;
+    int actualCount = leadingContext + trailingContext;
+    for (int d = first; d <= last; d++) {
+      int i = d * 4;
+      expectedCount += deltas[i + 1];
+      actualCount += deltas[i + 3];
+      if (d > first) {
+        int unchanged = deltas[i] - (deltas[i - 4] + deltas[i - 3]);
+        expectedCount += unchanged;
+        actualCount += unchanged;
+      }
+    }
+    int expectedStart = Math.max(deltas[first * 4] + 1 - CONTEXT_SIZE, 1);
+    int actualStart = Math.max(deltas[first * 4 + 2] + 1 - CONTEXT_SIZE, 1);
+    return "@@ -"
+        + expectedStart
+        + ","
+        + expectedCount
+        + " +"
+        + actualStart
+        + ","
+        + actualCount
+        + " @@";
+  }
+
+  /**
+   * The lines of a string, split at each {@code "\n"} or {@code "\r\n"}, stored as offsets. A
+   * string has one more line than it has line breaks, so a trailing line break yields an empty
+   * final line.
+   */
+  private static final class Lines {
+    final String text;
+
+    /** The offset at which each line starts, which is just after the previous line's break. */
+    private final int[] starts;
+
+    final int count;
+
+    Lines(String text) {
+      this.text = text;
+      int[] starts = new int[16];
+      int count = 1;
+      for (int i = text.indexOf('\n'); i != -1; i = text.indexOf('\n', i + 1)) {
+        if (count == starts.length) {
+          starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = i + 1;
+      }
+      this.starts = starts;
+      this.count = count;
+    }
+
+    int start(int line) {
+      return starts[line];
+    }
+
+    /** Returns the offset at which the given line ends, excluding its line break. */
+    int end(int line) {
+      if (line + 1 == count) {
+        return text.length();
+      }
+      int end = starts[line + 1] - 1;
+      return (end > starts[line] && text.charAt(end - 1) == '\r') ? end - 1 : end;
+    }
+  }
+
+  /** Assigns each distinct line an int ID, using an open-addressing table of line offsets. */
+  private static final class LineInterner {
+    private Lines[] idLines = new Lines[16];
+    private int[] idLineNumbers = new int[16];
+    private int[] idHashes = new int[16];
+    private int size;
+
+    /** Each slot holds an ID plus one, or 0 if it is empty. */
+    private int[] table = new int[32];
+
+    int intern(Lines lines, int line) {
+      int hash = hash(lines, line);
+      int mask = table.length - 1;
+      for (int slot = smear(hash) & mask; ; slot = (slot + 1) & mask) {
+        int id = table[slot] - 1;
+        if (id == -1) {
+          return add(lines, line, hash, slot);
+        }
+        if (idHashes[id] == hash && equal(lines, line, idLines[id], idLineNumbers[id])) {
+          return id;
+        }
+      }
+    }
+
+    int size() {
+      return size;
+    }
+
+    private int add(Lines lines, int line, int hash, int slot) {
+      if (size == idHashes.length) {
+        idLines = Arrays.copyOf(idLines, size * 2);
+        idLineNumbers = Arrays.copyOf(idLineNumbers, size * 2);
+        idHashes = Arrays.copyOf(idHashes, size * 2);
+      }
+      int id = size++;
+      idLines[id] = lines;
+      idLineNumbers[id] = line;
+      idHashes[id] = hash;
+      table[slot] = id + 1;
+      if (size * 2 > table.length) {
+        rehash();
+      }
+      return id;
+    }
+
+    private void rehash() {
+      table = new int[table.length * 2];
+      int mask = table.length - 1;
+      for (int id = 0; id < size; id++) {
+        int slot = smear(idHashes[id]) & mask;
+        while (table[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+      }
+    }
+
+    private static int hash(Lines lines, int line) {
+      int hash = 0;
+      for (int i = lines.start(line); i < lines.end(line); i++) {
+        hash = 31 * hash + lines.text.charAt(i);
+      }
+      return hash;
+    }
+
+    private static int smear(int hash) {
+      return 0x1b873593 * Integer.rotateLeft(hash * 0xcc9e2d51, 15);
+    }
+
+    private static boolean equal(Lines lines, int line, Lines otherLines, int otherLine) {
+      int start = lines.start(line);
+      int length = lines.end(line) - start;
+      int otherStart = otherLines.start(otherLine);
+      return length == otherLines.end(otherLine) - otherStart
+          && lines.text.regionMatches(start, otherLines.text, otherStart, length);
+    }
+  }
+}
@@ -34,6 +34,17 @@ public class LongSubject extends ComparableSubject<LongSubject, Long> {
     super(metadata, actual);
   }
 
+  /**
+   * Fails if the subject is not equal to the given value. This is the same check as {@link
+   * #isEqualTo(Object)}, except that a passing check doesn't box the expected value.
+   */
+  public void isEqualTo(long expected) {
+    Long actual = actual();
+    if (actual == null || actual != expected) {
+      isEqualTo((Object) expected);
+    }
+  }
+
   /** @deprecated Use {@link #isEqualTo} instead. Long comparison is consistent with equality. */
   @Override
   @Deprecated
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.collect.UnmodifiableIterator;
+import com.google.common.truth.RenderingBudget.ElementRecorder;
+import java.util.Iterator;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * A view of an iterable that may be iterated only once, such as a view of a stream. As the elements
+ * go by, it records a bounded sample of them (see {@link ElementRecorder}), which its {@link
+ * #toString} renders after they've been consumed.
+ */
+final class OneShotIterable<T> implements Iterable<T> {
+  private final Iterable<T> source;
+  private final ElementRecorder recorder;
+  private final int renderingBudget;
+  @NullableDecl private Iterator<T> sourceIterator;
+
+  OneShotIterable(Iterable<T> source, int renderingBudget) {
+    this.source = checkNotNull(source);
+    this.recorder = new ElementRecorder(null, renderingBudget);
+    this.renderingBudget = renderingBudget;
+  }
+
+  /**
+   * Returns how many elements a list in a failure message can need, at most, to fill the rendering
+   * budget. (Each element takes at least three characters, counting its separator.) Assertions keep
+   * no more elements than this for their messages, and only count the rest.
+   */
+  int maxListedElements() {
+    return (renderingBudget == RenderingBudget.UNLIMITED)
+        ? Integer.MAX_VALUE
+        : renderingBudget / 3 + 1;
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    checkState(
+        sourceIterator == null,
+        "This iterable may be iterated only once. Of the assertions about it, only containsExactly "
+            + "and containsAll support a single pass.");
+    sourceIterator = source.iterator();
+    return new UnmodifiableIterator<T>() {
+      @Override
+      public boolean hasNext() {
+        return sourceIterator.hasNext();
+      }
+
+      @Override
+      public T next() {
+        T element = sourceIterator.next();
+        recorder.add(element);
+        return element;
+      }
+    };
+  }
+
+  /**
+   * Renders the recorded elements, first consuming any elements that haven't been iterated yet.
+   */
+  @Override
+  public String toString() {
+    if (sourceIterator == null) {
+      sourceIterator = source.iterator();
+    }
+    while (sourceIterator.hasNext()) {
+      recorder.add(sourceIterator.next());
+    }
+    return recorder.render().text();
+  }
+}
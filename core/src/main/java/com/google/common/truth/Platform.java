@@ -15,20 +15,28 @@
  */
 package com.google.common.truth;
 
-import static com.google.common.truth.Fact.fact;
 import static com.google.common.truth.Platform.ComparisonFailureMessageStrategy.INCLUDE_COMPARISON_FAILURE_GENERATED_MESSAGE;
 import static com.google.common.truth.Truth.appendSuffixIfNotNull;
-import static difflib.DiffUtils.diff;
-import static difflib.DiffUtils.generateUnifiedDiff;
+import static com.google.common.util.concurrent.Uninterruptibles.getUninterruptibly;
 
-import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
-import difflib.Patch;
+import com.google.common.truth.LazyStackTraceCleaning.LazilyCleanedError;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 import org.junit.ComparisonFailure;
@@ -75,28 +83,130 @@ final class Platform {
     StackTraceCleaner.cleanStackTrace(throwable);
   }
 
-  @NullableDecl
-  static ImmutableList<Fact> makeDiff(String expected, String actual) {
-    ImmutableList<String> expectedLines = splitLines(expected);
-    ImmutableList<String> actualLines = splitLines(actual);
-    Patch<String> diff = diff(expectedLines, actualLines);
-    List<String> unifiedDiff =
-        generateUnifiedDiff("expected", "actual", expectedLines, diff, /* contextSize= */ 3);
-    if (unifiedDiff.isEmpty()) {
-      return ImmutableList.of(
-          fact("diff", "(line contents match, but line-break characters differ)"));
-      // TODO(cpovirk): Possibly include the expected/actual value, too?
+  /**
+   * Returns whether the arrays are equal, comparing elements as {@link Double#equals} does: by
+   * their bits, so that {@code NaN} is equal to itself and {@code 0.0} isn't equal to {@code -0.0}.
+   */
+  static boolean doubleArraysEqual(double[] expected, double[] actual) {
+    return Arrays.equals(expected, actual);
+  }
+
+  /**
+   * Returns whether the arrays are equal, comparing elements as {@link Float#equals} does: by their
+   * bits, so that {@code NaN} is equal to itself and {@code 0.0f} isn't equal to {@code -0.0f}.
+   */
+  static boolean floatArraysEqual(float[] expected, float[] actual) {
+    return Arrays.equals(expected, actual);
+  }
+
+  /**
+   * Calls {@link PrimitiveArrayDiff#addMismatch} with each index below {@code length} at which the
+   * arrays differ, in ascending order. The arrays are compared eight bytes at a time, and
+   * individual bytes are compared only within chunks that differ.
+   */
+  static void findByteMismatches(
+      byte[] expected, byte[] actual, int length, PrimitiveArrayDiff diff) {
+    ByteBuffer expectedBuffer = ByteBuffer.wrap(expected);
+    ByteBuffer actualBuffer = ByteBuffer.wrap(actual);
+    int i = 0;
+    for (; i <= length - 8; i += 8) {
+      if (expectedBuffer.getLong(i) != actualBuffer.getLong(i)) {
+        for (int j = i; j < i + 8; j++) {
+          if (expected[j] != actual[j]) {
+            diff.addMismatch(j);
+          }
+        }
+      }
     }
-    unifiedDiff = unifiedDiff.subList(2, unifiedDiff.size()); // remove "--- expected," "+++ actual"
-    String result = Joiner.on("\n").join(unifiedDiff);
-    if (result.length() > expected.length() && result.length() > actual.length()) {
-      return null;
+    for (; i < length; i++) {
+      if (expected[i] != actual[i]) {
+        diff.addMismatch(i);
+      }
     }
-    return ImmutableList.of(fact("diff", result));
   }
-  private static ImmutableList<String> splitLines(String s) {
-    // splitToList is @Beta, so we avoid it.
-    return ImmutableList.copyOf(Splitter.onPattern("\r?\n").split(s));
+
+  static boolean isStackTraceCleaningDeferred() {
+    return StackTraceCleaner.isStackTraceCleaningDeferred();
+  }
+
+  /**
+   * Returns true if instances of the given class are known to have a {@code hashCode()} that is
+   * inconsistent with their {@code equals()}, meaning that they cannot be looked up in hash-based
+   * collections. This is the case for classes that override {@code equals()} but inherit {@code
+   * hashCode()} from {@code Object}.
+   */
+  static boolean hashCodeIsKnownBroken(Class<?> clazz) {
+    try {
+      return clazz.getMethod("equals", Object.class).getDeclaringClass() != Object.class
+          && clazz.getMethod("hashCode").getDeclaringClass() == Object.class;
+    } catch (NoSuchMethodException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Runs the given tasks on up to {@code parallelism} threads, including the calling thread,
+   * returning once they have all finished. If any of them throws, rethrows the exception from the
+   * earliest such task.
+   */
+  static void runInParallel(final List<? extends Runnable> tasks, int parallelism) {
+    if (parallelism <= 1 || tasks.size() <= 1) {
+      for (Runnable task : tasks) {
+        task.run();
+      }
+      return;
+    }
+    final AtomicInteger nextTask = new AtomicInteger();
+    // Each slot is written by at most one worker, and read after waiting for all of them.
+    final Throwable[] thrown = new Throwable[tasks.size()];
+    Runnable worker =
+        new Runnable() {
+          @Override
+          public void run() {
+            int i;
+            while ((i = nextTask.getAndIncrement()) < tasks.size()) {
+              try {
+                tasks.get(i).run();
+              } catch (Throwable t) {
+                thrown[i] = t;
+              }
+            }
+          }
+        };
+    List<Future<?>> helpers = new ArrayList<>();
+    for (int i = 1; i < Math.min(parallelism, tasks.size()); i++) {
+      helpers.add(ParallelExecutor.INSTANCE.submit(worker));
+    }
+    worker.run();
+    for (Future<?> helper : helpers) {
+      try {
+        getUninterruptibly(helper);
+      } catch (ExecutionException e) {
+        // The worker catches everything its tasks throw.
+        throw new AssertionError(e);
+      }
+    }
+    for (Throwable t : thrown) {
+      if (t != null) {
+        Throwables.throwIfUnchecked(t);
+        throw new UncheckedExecutionException(t);
+      }
+    }
+  }
+
+  /**
+   * The threads that {@link #runInParallel} shares out its tasks to. They're created as needed,
+   * reused by later calls, and left to exit once they've been idle for a minute.
+   */
+  private static final class ParallelExecutor {
+    static final ExecutorService INSTANCE =
+        Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("truth-compare-%d").build());
+  }
+
+  @NullableDecl
+  static ImmutableList<Fact> makeDiff(String expected, String actual) {
+    return LineDiff.makeDiff(expected, actual);
   }
 
   enum ComparisonFailureMessageStrategy {
@@ -105,7 +215,8 @@ final class Platform {
   }
 
   // TODO(cpovirk): Figure out which parameters can be null (and whether we want them to be).
-  abstract static class PlatformComparisonFailure extends ComparisonFailure {
+  abstract static class PlatformComparisonFailure extends ComparisonFailure
+      implements LazilyCleanedError {
     private final String message;
 
     /** Separate cause field, in case initCause() fails. */
@@ -115,6 +226,8 @@ final class Platform {
 
     private final ComparisonFailureMessageStrategy messageStrategy;
 
+    private final LazyStackTraceCleaning lazyStackTraceCleaning = new LazyStackTraceCleaning();
+
     // TODO(cpovirk): Do we ever pass null for message, expected, or actual?
     PlatformComparisonFailure(
         @NullableDecl String message,
@@ -151,6 +264,29 @@ final class Platform {
       return cause;
     }
 
+    @Override
+    public final void cleanStackTraceOnFirstUse() {
+      lazyStackTraceCleaning.defer();
+    }
+
+    @Override
+    public final StackTraceElement[] getStackTrace() {
+      lazyStackTraceCleaning.cleanIfPending(this);
+      return super.getStackTrace();
+    }
+
+    @Override
+    public final void printStackTrace(PrintStream s) {
+      LazyStackTraceCleaning.cleanPendingTraces(this);
+      super.printStackTrace(s);
+    }
+
+    @Override
+    public final void printStackTrace(PrintWriter s) {
+      LazyStackTraceCleaning.cleanPendingTraces(this);
+      super.printStackTrace(s);
+    }
+
     @Override
     public final String toString() {
       return getLocalizedMessage();
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.truth.Fact.fact;
+import static com.google.common.truth.Fact.factWithoutValue;
+import static com.google.common.truth.Platform.doubleToString;
+import static com.google.common.truth.Platform.floatToString;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.truth.RenderingBudget.Rendering;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact description of the differences between two primitive arrays of the same type that are
+ * too large to render in full. Rather than the whole arrays, it renders only the first few regions
+ * in which they differ, with a little context around each, in the format of {@link
+ * RenderingBudget}: {@code [... (1000 more) ..., 4, 5, 6, 7, 8, ... (2000 more) ...]}. It also
+ * counts the mismatched elements.
+ *
+ * <p>Elements are compared as {@link Subject#isEqualTo} compares them: floating-point elements by
+ * their bits, so {@code NaN} is equal to itself and {@code 0.0} isn't equal to {@code -0.0}.
+ */
+final class PrimitiveArrayDiff {
+  /** The number of equal elements to render on each side of a region of mismatched elements. */
+  private static final int CONTEXT = 3;
+
+  /** The number of regions of mismatched elements to render. */
+  private static final int MAX_REGIONS = 5;
+
+  /**
+   * Returns whether the arrays should be described by a {@link PrimitiveArrayDiff}: whether they're
+   * primitive arrays of the same type, and at least one has too many elements to render in the
+   * given budget. (Each element takes at least two characters, counting its separator.)
+   */
+  static boolean appliesTo(Object expected, Object actual, int budget) {
+    return expected.getClass() == actual.getClass()
+        && expected.getClass().getComponentType().isPrimitive()
+        && 2L * max(Array.getLength(expected), Array.getLength(actual)) > budget;
+  }
+
+  /** Compares the arrays, which must satisfy {@link #appliesTo}. */
+  static PrimitiveArrayDiff compare(Object expected, Object actual) {
+    return new PrimitiveArrayDiff(expected, actual);
+  }
+
+  private final Object expected;
+  private final Object actual;
+
+  /** The start and end of each region to render, merged when their contexts would overlap. */
+  private final List<int[]> regions = new ArrayList<>();
+
+  private int regionCount;
+  /** The end of the last region, whether or not it's among those rendered. */
+  private int lastRegionEnd;
+  private long mismatchCount;
+  private int firstMismatch = -1;
+
+  private PrimitiveArrayDiff(Object expected, Object actual) {
+    this.expected = expected;
+    this.actual = actual;
+    int commonLength = min(Array.getLength(expected), Array.getLength(actual));
+    // The type is checked once, so that each scan is a tight loop over one type of array.
+    if (expected instanceof int[]) {
+      findMismatches((int[]) expected, (int[]) actual, commonLength);
+    } else if (expected instanceof long[]) {
+      findMismatches((long[]) expected, (long[]) actual, commonLength);
+    } else if (expected instanceof byte[]) {
+      Platform.findByteMismatches((byte[]) expected, (byte[]) actual, commonLength, this);
+    } else if (expected instanceof char[]) {
+      findMismatches((char[]) expected, (char[]) actual, commonLength);
+    } else if (expected instanceof short[]) {
+      findMismatches((short[]) expected, (short[]) actual, commonLength);
+    } else if (expected instanceof boolean[]) {
+      findMismatches((boolean[]) expected, (boolean[]) actual, commonLength);
+    } else if (expected instanceof double[]) {
+      findMismatches((double[]) expected, (double[]) actual, commonLength);
+    } else {
+      findMismatches((float[]) expected, (float[]) actual, commonLength);
+    }
+    int maxLength = max(Array.getLength(expected), Array.getLength(actual));
+    if (maxLength > commonLength) {
+      addMismatches(commonLength, maxLength);
+    }
+  }
+
+  private void findMismatches(int[] expected, int[] actual, int length) {
+    for (int i = 0; i < length; i++) {
+      if (expected[i] != actual[i]) {
+        addMismatch(i);
+      }
+    }
+  }
+
+  private void findMismatches(long[] expected, long[] actual, int length) {
+    for (int i = 0; i < length; i++) {
+      if (expected[i] != actual[i]) {
+        addMismatch(i);
+      }
+    }
+  }
+
+  private void findMismatches(char[] expected, char[] actual, int length) {
+    for (int i = 0; i < length; i++) {
+      if (expected[i] != actual[i]) {
+        addMismatch(i);
+      }
+    }
+  }
+
+  private void findMismatches(short[] expected, short[] actual, int length) {
+    for (int i = 0; i < length; i++) {
+      if (expected[i] != actual[i]) {
+        addMismatch(i);
+      }
+    }
+  }
+
+  private void findMismatches(boolean[] expected, boolean[] actual, int length) {
+    for (int i = 0; i < length; i++) {
+      if (expected[i] != actual[i]) {
+        addMismatch(i);
+      }
+    }
+  }
+
+  private void findMismatches(double[] expected, double[] actual, int length) {
+    for (int i = 0; i < length; i++) {
+      if (Double.doubleToLongBits(expected[i]) != Double.doubleToLongBits(actual[i])) {
+        addMismatch(i);
+      }
+    }
+  }
+
+  private void findMismatches(float[] expected, float[] actual, int length) {
+    for (int i = 0; i < length; i++) {
+      if (Float.floatToIntBits(expected[i]) != Float.floatToIntBits(actual[i])) {
+        addMismatch(i);
+      }
+    }
+  }
+
+  /** Records a mismatch at the given index. Mismatches must be recorded in ascending order. */
+  void addMismatch(int index) {
+    if (firstMismatch == -1) {
+      firstMismatch = index;
+    }
+    addMismatches(index, index + 1);
+  }
+
+  private void addMismatches(int start, int end) {
+    mismatchCount += end - start;
+    if (regionCount > 0 && start - lastRegionEnd <= 2 * CONTEXT) {
+      if (regionCount == regions.size()) {
+        regions.get(regions.size() - 1)[1] = end;
+      }
+    } else {
+      regionCount++;
+      if (regions.size() < MAX_REGIONS) {
+        regions.add(new int[] {start, end});
+      }
+    }
+    lastRegionEnd = end;
+  }
+
+  /** Returns the rendering of the expected array. */
+  Rendering expectedRendering() {
+    return render(expected);
+  }
+
+  /** Returns the rendering of the actual array. */
+  Rendering actualRendering() {
+    return render(actual);
+  }
+
+  /** Returns facts describing the mismatches. */
+  ImmutableList<Fact> facts() {
+    ImmutableList.Builder<Fact> facts = ImmutableList.builder();
+    if (Array.getLength(expected) != Array.getLength(actual)) {
+      facts.add(
+          factWithoutValue("wrong length"),
+          fact("expected", Array.getLength(expected)),
+          fact("but was", Array.getLength(actual)));
+    }
+    if (firstMismatch != -1) {
+      facts.add(fact("differs at index", "[" + firstMismatch + "]"));
+    }
+    facts.add(fact("mismatched elements", mismatchCount));
+    if (regionCount > regions.size()) {
+      facts.add(fact("regions shown", regions.size() + " of " + regionCount));
+    }
+    return facts.build();
+  }
+
+  private Rendering render(Object array) {
+    int length = Array.getLength(array);
+    StringBuilder builder = new StringBuilder().append('[');
+    boolean omitsElements = false;
+    int rendered = 0;
+    for (int[] region : regions) {
+      int windowStart = max(rendered, region[0] - CONTEXT);
+      int windowEnd = min(length, region[1] + CONTEXT);
+      omitsElements |= appendOmission(builder, rendered, windowStart);
+      for (int i = windowStart; i < windowEnd; i++) {
+        appendSeparator(builder);
+        builder.append(renderElement(array, i));
+      }
+      rendered = max(rendered, windowEnd);
+    }
+    omitsElements |= appendOmission(builder, rendered, length);
+    return new Rendering(builder.append(']').toString(), omitsElements);
+  }
+
+  /** Appends the count of the elements from start to end, if any, and returns whether it did. */
+  private static boolean appendOmission(StringBuilder builder, int start, int end) {
+    if (end <= start) {
+      return false;
+    }
+    appendSeparator(builder);
+    builder.append("... (").append(end - start).append(" more) ...");
+    return true;
+  }
+
+  private static void appendSeparator(StringBuilder builder) {
+    if (builder.length() > 1) {
+      builder.append(", ");
+    }
+  }
+
+  private static String renderElement(Object array, int i) {
+    if (array instanceof int[]) {
+      return String.valueOf(((int[]) array)[i]);
+    } else if (array instanceof long[]) {
+      return String.valueOf(((long[]) array)[i]);
+    } else if (array instanceof byte[]) {
+      return String.valueOf(((byte[]) array)[i]);
+    } else if (array instanceof char[]) {
+      return String.valueOf(((char[]) array)[i]);
+    } else if (array instanceof short[]) {
+      return String.valueOf(((short[]) array)[i]);
+    } else if (array instanceof boolean[]) {
+      return String.valueOf(((boolean[]) array)[i]);
+    } else if (array instanceof double[]) {
+      return doubleToString(((double[]) array)[i]);
+    } else {
+      return floatToString(((float[]) array)[i]);
+    }
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * Renders collections for failure messages in a bounded number of characters, so that a failing
+ * assertion about a huge collection doesn't build a string of the whole collection.
+ *
+ * <p>A collection is rendered element by element only if it has too many elements to fit in the
+ * budget. Smaller collections are rendered with their own {@code toString()}, which might be
+ * customized.
+ *
+ * <p>Elements are rendered one at a time. Once the rendering would exceed the budget, the elements
+ * in the middle are replaced by a count of the elements omitted, keeping as many of the first and
+ * last elements as fit in half of the budget each. Lists that support random access are rendered
+ * from both ends, so the omitted elements are never converted to strings at all.
+ */
+final class RenderingBudget {
+  /** The budget that renders every value in full, as {@link Object#toString} would. */
+  static final int UNLIMITED = Integer.MAX_VALUE;
+
+  /**
+   * The fewest characters an element can add to a rendering: one character for the element and two
+   * for its separator.
+   */
+  private static final int MIN_ELEMENT_WIDTH = 3;
+
+  /** The default budget: about a million characters per rendered value. */
+  private static volatile int defaultBudget = 1 << 20;
+
+  private RenderingBudget() {}
+
+  static int defaultBudget() {
+    return defaultBudget;
+  }
+
+  static void setDefaultBudget(int maxCharacters) {
+    defaultBudget = checkBudget(maxCharacters);
+  }
+
+  static int checkBudget(int maxCharacters) {
+    checkArgument(maxCharacters > 0, "maxCharacters (%s) must be positive", maxCharacters);
+    return maxCharacters;
+  }
+
+  /** A string representation of a value, and whether any of the value's elements were omitted. */
+  static final class Rendering {
+    private final String text;
+    private final boolean omitsElements;
+
+    Rendering(String text, boolean omitsElements) {
+      this.text = text;
+      this.omitsElements = omitsElements;
+    }
+
+    String text() {
+      return text;
+    }
+
+    /** Returns whether elements were omitted from this rendering, at any level of nesting. */
+    boolean omitsElements() {
+      return omitsElements;
+    }
+  }
+
+  /**
+   * Returns the string representation of the given value, rendering lists and sets within the
+   * given budget if they have too many elements to fit in it. Other values are rendered in full.
+   */
+  static Rendering render(@NullableDecl Object value, int budget) {
+    if (budget != UNLIMITED
+        && (value instanceof List || value instanceof Set)
+        && (long) ((Collection<?>) value).size() * MIN_ELEMENT_WIDTH > budget) {
+      return renderElements((Iterable<?>) value, budget);
+    }
+    return new Rendering(String.valueOf(value), false);
+  }
+
+  /**
+   * Returns the elements in the format of {@link java.util.AbstractCollection#toString}, eliding
+   * elements from the middle if the result would otherwise be longer than the budget.
+   */
+  static Rendering renderElements(Iterable<?> elements, int budget) {
+    if (!(elements instanceof List && elements instanceof RandomAccess)) {
+      ElementRecorder recorder = new ElementRecorder(elements, budget);
+      for (Object element : elements) {
+        recorder.add(element);
+      }
+      return recorder.render();
+    }
+    List<?> list = (List<?>) elements;
+    int halfBudget = budget / 2;
+    StringBuilder head = new StringBuilder().append('[');
+    boolean nestedOmissions = false;
+    int headEnd = 0;
+    for (; headEnd < list.size(); headEnd++) {
+      Rendering element = renderElement(list.get(headEnd), elements, halfBudget);
+      if (!fits(head.length() - 1, element, headEnd, halfBudget)) {
+        break;
+      }
+      appendElement(head, element.text(), headEnd);
+      nestedOmissions |= element.omitsElements();
+    }
+    Deque<String> tail = new ArrayDeque<>();
+    int tailStart = list.size();
+    int tailLength = 0;
+    while (tailStart > headEnd) {
+      Rendering element = renderElement(list.get(tailStart - 1), elements, halfBudget);
+      if (!fits(tailLength, element, 1, halfBudget)) {
+        break;
+      }
+      tail.addFirst(element.text());
+      tailLength += element.text().length() + 2;
+      nestedOmissions |= element.omitsElements();
+      tailStart--;
+    }
+    return finish(head, headEnd, tailStart - headEnd, tail, nestedOmissions);
+  }
+
+  /**
+   * Records a bounded sample of elements as they go by, for rendering them later in the format of
+   * {@link #renderElements}. The first elements are rendered as they're added, until they fill half
+   * of the budget. After that, only as many of the latest elements are kept as could fit in the
+   * other half, and they aren't rendered until {@link #render} is called. Elements which can't be
+   * part of the rendering are only counted.
+   */
+  static final class ElementRecorder {
+    @NullableDecl private final Object container;
+    private final int halfBudget;
+    private final StringBuilder head = new StringBuilder().append('[');
+    private int headCount;
+    private boolean headIsFull;
+    private boolean headOmissions;
+
+    /** The latest elements after the head, as a ring buffer that grows up to tailCapacity. */
+    private Object[] tail = new Object[0];
+
+    private int tailStart;
+    private int tailSize;
+    private final int tailCapacity;
+    private long droppedCount;
+
+    /**
+     * Creates a recorder for the elements of the given container, which is rendered as "(this
+     * Collection)" if it is one of its own elements.
+     */
+    ElementRecorder(@NullableDecl Object container, int budget) {
+      this.container = container;
+      this.halfBudget = budget / 2;
+      // Each element after the first costs at least the two characters of its separator.
+      this.tailCapacity = halfBudget / 2 + 1;
+    }
+
+    void add(@NullableDecl Object element) {
+      if (!headIsFull) {
+        Rendering rendered = renderElement(element, container, halfBudget);
+        if (fits(head.length() - 1, rendered, headCount, halfBudget)) {
+          appendElement(head, rendered.text(), headCount++);
+          headOmissions |= rendered.omitsElements();
+          return;
+        }
+        headIsFull = true;
+      }
+      if (tailSize == tailCapacity) {
+        tail[tailStart] = element;
+        tailStart = (tailStart + 1) % tail.length;
+        droppedCount++;
+        return;
+      }
+      if (tailSize == tail.length) {
+        Object[] grown = new Object[(int) Math.min(Math.max(16, 2L * tail.length), tailCapacity)];
+        for (int i = 0; i < tailSize; i++) {
+          grown[i] = tail[(tailStart + i) % tail.length];
+        }
+        tail = grown;
+        tailStart = 0;
+      }
+      tail[(tailStart + tailSize) % tail.length] = element;
+      tailSize++;
+    }
+
+    Rendering render() {
+      Deque<String> renderedTail = new ArrayDeque<>();
+      boolean nestedOmissions = headOmissions;
+      int tailLength = 0;
+      for (int i = tailSize - 1; i >= 0; i--) {
+        Rendering rendered =
+            renderElement(tail[(tailStart + i) % tail.length], container, halfBudget);
+        if (!fits(tailLength, rendered, 1, halfBudget)) {
+          break;
+        }
+        renderedTail.addFirst(rendered.text());
+        tailLength += rendered.text().length() + 2;
+        nestedOmissions |= rendered.omitsElements();
+      }
+      long omittedCount = droppedCount + tailSize - renderedTail.size();
+      return finish(
+          new StringBuilder(head), headCount, omittedCount, renderedTail, nestedOmissions);
+    }
+  }
+
+  private static Rendering finish(
+      StringBuilder head,
+      int headCount,
+      long omittedCount,
+      Iterable<String> tail,
+      boolean nestedOmissions) {
+    int count = headCount;
+    if (omittedCount > 0) {
+      if (count > 0) {
+        head.append(", ");
+      }
+      head.append("... (").append(omittedCount).append(" more) ...");
+      count++;
+    }
+    for (String element : tail) {
+      appendElement(head, element, count++);
+    }
+    return new Rendering(head.append(']').toString(), omittedCount > 0 || nestedOmissions);
+  }
+
+  private static Rendering renderElement(
+      @NullableDecl Object element, @NullableDecl Object container, int budget) {
+    return element == container
+        ? new Rendering("(this Collection)", false)
+        : render(element, budget);
+  }
+
+  private static boolean fits(int usedLength, Rendering element, int index, int budget) {
+    return usedLength + element.text().length() + (index == 0 ? 0 : 2) <= budget;
+  }
+
+  private static void appendElement(StringBuilder builder, String element, int index) {
+    if (index > 0) {
+      builder.append(", ");
+    }
+    builder.append(element);
+  }
+}
@@ -16,13 +16,20 @@
 package com.google.common.truth;
 
 import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Splitter;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.Set;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 import org.junit.runner.Runner;
 import org.junit.runners.model.Statement;
 
@@ -178,30 +185,89 @@ final class StackTraceCleaner {
       ImmutableSet.<Class<?>>of(Subject.class, StandardSubjectBuilder.class);
 
   private static boolean isTruthEntrance(StackTraceElement stackTraceElement) {
-    return isFromClass(stackTraceElement, TRUTH_ENTRANCE_CLASSES);
+    return classify(stackTraceElement).truthEntrance;
   }
 
   private static final ImmutableSet<Class<?>> JUNIT_INFRASTRUCTURE_CLASSES =
       ImmutableSet.<Class<?>>of(Runner.class, Statement.class);
 
   private static boolean isJUnitIntrastructure(StackTraceElement stackTraceElement) {
-    return isFromClass(stackTraceElement, JUNIT_INFRASTRUCTURE_CLASSES);
+    return classify(stackTraceElement).junitInfrastructure;
   }
 
-  private static boolean isFromClass(
-      StackTraceElement stackTraceElement, ImmutableSet<Class<?>> classes) {
-    Class<?> stackClass;
-    try {
-      stackClass = Class.forName(stackTraceElement.getClassName());
-    } catch (ClassNotFoundException e) {
-      return false;
+  /**
+   * The number of class names whose classification is cached. Each test run has a few thousand
+   * distinct classes on its stacks at most, so the bound only matters to long-lived processes.
+   */
+  private static final int MAX_CACHED_CLASSIFICATIONS = 4096;
+
+  /**
+   * The classifications of the classes of the frames seen so far, by class name. Classifying a
+   * class means loading it, so without the cache, every failure would pay for a class lookup per
+   * frame. Only the classification is cached, not the class, so that the cache doesn't keep the
+   * classes from being unloaded.
+   */
+  private static final LoadingCache<String, FrameClassification> FRAME_CLASSIFICATIONS =
+      CacheBuilder.newBuilder()
+          .maximumSize(MAX_CACHED_CLASSIFICATIONS)
+          .build(
+              new CacheLoader<String, FrameClassification>() {
+                @Override
+                public FrameClassification load(String className) {
+                  return FrameClassification.forClassName(className);
+                }
+              });
+
+  private static FrameClassification classify(StackTraceElement stackTraceElement) {
+    return FRAME_CLASSIFICATIONS.getUnchecked(stackTraceElement.getClassName());
+  }
+
+  /** What the cleaner needs to know about the class of a stack frame. */
+  private static final class FrameClassification {
+    final boolean truthEntrance;
+    final boolean junitInfrastructure;
+    final StackFrameType stackFrameType;
+
+    private FrameClassification(
+        boolean truthEntrance, boolean junitInfrastructure, StackFrameType stackFrameType) {
+      this.truthEntrance = truthEntrance;
+      this.junitInfrastructure = junitInfrastructure;
+      this.stackFrameType = stackFrameType;
+    }
+
+    static FrameClassification forClassName(String className) {
+      Class<?> stackClass = loadClass(className);
+      return new FrameClassification(
+          isSubclassOfAny(stackClass, TRUTH_ENTRANCE_CLASSES),
+          isSubclassOfAny(stackClass, JUNIT_INFRASTRUCTURE_CLASSES),
+          StackFrameType.forClassName(className));
+    }
+
+    /**
+     * Returns the class with the given name, without initializing it, or null if it can't be
+     * found.
+     */
+    @NullableDecl
+    private static Class<?> loadClass(String className) {
+      try {
+        return Class.forName(className, false, StackTraceCleaner.class.getClassLoader());
+      } catch (ClassNotFoundException | LinkageError e) {
+        return null;
+      }
     }
-    for (Class<?> knownEntranceClass : classes) {
-      if (knownEntranceClass.isAssignableFrom(stackClass)) {
-        return true;
+
+    private static boolean isSubclassOfAny(
+        @NullableDecl Class<?> stackClass, ImmutableSet<Class<?>> classes) {
+      if (stackClass == null) {
+        return false;
       }
+      for (Class<?> knownClass : classes) {
+        if (knownClass.isAssignableFrom(stackClass)) {
+          return true;
+        }
+      }
+      return false;
     }
-    return false;
   }
 
   /**
@@ -215,7 +281,7 @@ final class StackTraceCleaner {
 
     /** Creates a wrapper with the given frame with frame type inferred from frame's class name. */
     StackTraceElementWrapper(StackTraceElement stackTraceElement) {
-      this(stackTraceElement, StackFrameType.forClassName(stackTraceElement.getClassName()));
+      this(stackTraceElement, classify(stackTraceElement).stackFrameType);
     }
 
     /** Creates a wrapper with the given frame and the given frame type. */
@@ -272,6 +338,20 @@ final class StackTraceCleaner {
         "com.google.common.util.concurrent",
         "java.util.concurrent.ForkJoin");
 
+    /**
+     * The prefixes of all types, split at their dots. Frame types are looked up by walking down the
+     * trie along the package and class names of a frame's class.
+     */
+    private static final PrefixTrie PREFIXES = new PrefixTrie();
+
+    static {
+      for (StackFrameType stackFrameType : values()) {
+        for (String prefix : stackFrameType.prefixes) {
+          PREFIXES.add(prefix, stackFrameType);
+        }
+      }
+    }
+
     /** Helper method to determine the frame type from the fully qualified class name. */
     private static StackFrameType forClassName(String fullyQualifiedClassName) {
       // Never remove the frames from a test class. These will probably be the frame of a failing
@@ -280,13 +360,8 @@ final class StackTraceCleaner {
         return StackFrameType.NEVER_REMOVE;
       }
 
-      for (StackFrameType stackFrameType : StackFrameType.values()) {
-        if (stackFrameType.belongsToType(fullyQualifiedClassName)) {
-          return stackFrameType;
-        }
-      }
-
-      return StackFrameType.NEVER_REMOVE;
+      StackFrameType stackFrameType = PREFIXES.typeOf(fullyQualifiedClassName);
+      return stackFrameType == null ? StackFrameType.NEVER_REMOVE : stackFrameType;
     }
 
     private final String name;
@@ -307,23 +382,70 @@ final class StackTraceCleaner {
     String getName() {
       return name;
     }
+  }
 
-    /**
-     * Returns true if the given frame belongs to this frame type based on the package and/or class
-     * name of the frame.
-     */
-    boolean belongsToType(String fullyQualifiedClassName) {
-      for (String prefix : prefixes) {
-        // TODO(cpovirk): Should we also check prefix + "$"?
-        if (fullyQualifiedClassName.equals(prefix)
-            || fullyQualifiedClassName.startsWith(prefix + ".")) {
-          return true;
+  /**
+   * A trie of class name prefixes, keyed by the dot-separated parts of the names. A class name
+   * belongs to a prefix if it is equal to the prefix or starts with the prefix followed by a dot.
+   */
+  private static final class PrefixTrie {
+    private final Map<String, PrefixTrie> children = new HashMap<>();
+    @NullableDecl private StackFrameType stackFrameType;
+
+    void add(String prefix, StackFrameType type) {
+      PrefixTrie node = this;
+      for (String part : Splitter.on('.').split(prefix)) {
+        PrefixTrie child = node.children.get(part);
+        if (child == null) {
+          child = new PrefixTrie();
+          node.children.put(part, child);
         }
+        node = child;
+      }
+      if (node.stackFrameType == null) {
+        node.stackFrameType = type;
+      }
+    }
+
+    /** Returns the type of the shortest prefix the class name belongs to, or null if none. */
+    @NullableDecl
+    StackFrameType typeOf(String fullyQualifiedClassName) {
+      // TODO(cpovirk): Should we also check prefix + "$"?
+      PrefixTrie node = this;
+      int start = 0;
+      while (true) {
+        int end = fullyQualifiedClassName.indexOf('.', start);
+        String part =
+            fullyQualifiedClassName.substring(
+                start, end == -1 ? fullyQualifiedClassName.length() : end);
+        node = node.children.get(part);
+        if (node == null) {
+          return null;
+        }
+        if (node.stackFrameType != null || end == -1) {
+          return node.stackFrameType;
+        }
+        start = end + 1;
       }
-      return false;
     }
   }
 
+  /**
+   * Returns true if stack trace cleaning is deferred by a system property until each failure's
+   * trace is first used. Suites that create many failures without printing them, such as those
+   * that inspect failures with {@link ExpectFailure}, can set it to skip most of the cleaning.
+   *
+   * <p>A deferred trace is cleaned when the failure's {@code getStackTrace} or {@code
+   * printStackTrace} is called, and Truth cleans failures before wrapping them in other throwables
+   * itself. But when other code wraps a failure as the cause or suppressed exception of its own
+   * throwable, and prints that throwable without calling those methods on the failure first, the
+   * failure's trace is printed uncleaned.
+   */
+  static boolean isStackTraceCleaningDeferred() {
+    return Boolean.parseBoolean(
+        System.getProperty("com.google.common.truth.lazy_stack_trace_cleaning"));
+  }
+
   /**
    * Returns true if stack trace cleaning is explicitly disabled in a system property. This switch
    * is intended to be used when attempting to debug the frameworks which are collapsed or filtered
@@ -215,6 +215,20 @@ public class StandardSubjectBuilder {
     return new StandardSubjectBuilder(metadata().withMessage(format, args));
   }
 
+  /**
+   * Returns a new instance whose failure messages will render each list, set, or array in at most
+   * about the given number of characters. Longer renderings omit elements from the middle and say
+   * how many were omitted. The elements that an assertion specifically
+   * reports as missing or unexpected are always shown in full.
+   *
+   * <p>Without this method, the budget is the one set by {@link Truth#setDefaultRenderingBudget}.
+   *
+   * @throws IllegalArgumentException if {@code maxCharacters} is not positive
+   */
+  public final StandardSubjectBuilder withRenderingBudget(int maxCharacters) {
+    return new StandardSubjectBuilder(metadata().withRenderingBudget(maxCharacters));
+  }
+
   /**
    * Given a factory for some {@code Subject} class, returns a builder whose {@code that(actual)}
    * method creates instances of that class. Created subjects use the previously set failure
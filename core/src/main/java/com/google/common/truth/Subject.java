@@ -42,6 +42,7 @@ import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
 import com.google.common.primitives.Shorts;
 import com.google.common.truth.FailureMetadata.OldAndNewValuesAreSimilar;
+import com.google.common.truth.RenderingBudget.Rendering;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.errorprone.annotations.CompatibleWith;
 import com.google.errorprone.annotations.ForOverride;
@@ -95,7 +96,15 @@ public class Subject<S extends Subject<S, T>, T> {
         public void fail(AssertionError failure) {}
       };
 
-  private final FailureMetadata metadata;
+  /** The metadata passed to the constructor, which doesn't include this subject yet. */
+  private final FailureMetadata metadataBeforeSubject;
+
+  /**
+   * {@link #metadataBeforeSubject} updated to include this subject, or null until it's first
+   * needed. Most assertions pass without needing it, so they don't pay for building it.
+   */
+  @NullableDecl private FailureMetadata metadata;
+
   private final T actual;
   private String customName = null;
   @NullableDecl private final String typeDescriptionOverride;
@@ -123,11 +132,23 @@ public class Subject<S extends Subject<S, T>, T> {
       FailureMetadata metadata,
       @NullableDecl T actual,
       @NullableDecl String typeDescriptionOverride) {
-    this.metadata = metadata.updateForSubject(this);
+    this.metadataBeforeSubject = checkNotNull(metadata);
     this.actual = actual;
     this.typeDescriptionOverride = typeDescriptionOverride;
   }
 
+  /**
+   * Returns the metadata for this subject's assertions, creating it if this is the first call. (It
+   * isn't created in the constructor, since the subject isn't initialized at that point anyway.)
+   */
+  private FailureMetadata metadata() {
+    // A race could create the metadata twice, but its instances are immutable and equivalent.
+    if (metadata == null) {
+      metadata = metadataBeforeSubject.updateForSubject(this);
+    }
+    return metadata;
+  }
+
   /** An internal method used to obtain the value set by {@link #named(String, Object...)}. */
   protected String internalCustomName() {
     return customName;
@@ -228,19 +249,16 @@ public class Subject<S extends Subject<S, T>, T> {
     } else if (actual() == null || expected == null) {
       return ComparisonResult.differentNoDescription();
     } else if (actual() instanceof byte[] && expected instanceof byte[]) {
-      /*
-       * For a special error message and to use faster Arrays.equals to avoid at least one timeout.
-       *
-       * TODO(cpovirk): For performance, use Arrays.equals for other array types (here and/or in
-       * checkArrayEqualsRecursive)? Exception: double[] and float[], whose GWT implementations I
-       * think may have both false positives and false negatives (so we can't even use Arrays.equals
-       * as a fast path for them, nor deepEquals for an Object[] that might contain them). We would
-       * still fall back to the slower checkArrayEqualsRecursive to produce a nicer failure message
-       * -- but naturally only for tests that are about to fail, when performance matters less.
-       */
+      // For a special error message. (Other arrays get the same fast check from arraysEqual.)
       return checkByteArrayEquals((byte[]) expected, (byte[]) actual());
     } else if (actual().getClass().isArray() && expected.getClass().isArray()) {
-      return checkArrayEqualsRecursive(expected, actual, "");
+      // Find where the arrays differ only if they do.
+      if (arraysEqual(expected, actual())) {
+        return ComparisonResult.equal();
+      }
+      return PrimitiveArrayDiff.appliesTo(expected, actual(), metadata().renderingBudget())
+          ? ComparisonResult.fromPrimitiveArrayDiff(PrimitiveArrayDiff.compare(expected, actual()))
+          : checkArrayEqualsRecursive(expected, actual, "");
     } else if (isIntegralBoxedPrimitive(actual()) && isIntegralBoxedPrimitive(expected)) {
       return ComparisonResult.fromEqualsResult(integralValue(actual()) == integralValue(expected));
     } else if (actual() instanceof Double && expected instanceof Double) {
@@ -457,20 +475,47 @@ public class Subject<S extends Subject<S, T>, T> {
   }
 
   private final String formatActualOrExpected(@NullableDecl Object o) {
+    return renderActualOrExpected(o).text();
+  }
+
+  private Rendering renderActualOrExpected(@NullableDecl Object o) {
     if (o instanceof byte[]) {
-      return base16((byte[]) o);
+      return new Rendering(base16((byte[]) o), false);
     } else if (o != null && o.getClass().isArray()) {
+      int budget = metadata().renderingBudget();
+      if (budget != RenderingBudget.UNLIMITED) {
+        return RenderingBudget.renderElements((Iterable<?>) STRINGIFY.apply(o), budget);
+      }
       String wrapped = Iterables.toString(stringableIterable(new Object[] {o}));
-      return wrapped.substring(1, wrapped.length() - 1);
+      return new Rendering(wrapped.substring(1, wrapped.length() - 1), false);
     } else if (o instanceof Double) {
-      return doubleToString((Double) o);
+      return new Rendering(doubleToString((Double) o), false);
     } else if (o instanceof Float) {
-      return floatToString((Float) o);
+      return new Rendering(floatToString((Float) o), false);
     } else {
-      return String.valueOf(o);
+      return RenderingBudget.render(o, metadata().renderingBudget());
     }
   }
 
+  /**
+   * Returns the string representation of the given value, rendering lists and sets within the
+   * rendering budget (see {@link StandardSubjectBuilder#withRenderingBudget}).
+   */
+  final String renderWithinBudget(@NullableDecl Object o) {
+    return RenderingBudget.render(o, metadata().renderingBudget()).text();
+  }
+
+  /**
+   * Returns the string representation of the given elements, in the format of {@link
+   * Iterables#toString}, within the rendering budget.
+   */
+  final String renderElementsWithinBudget(Iterable<?> elements) {
+    int budget = metadata().renderingBudget();
+    return budget == RenderingBudget.UNLIMITED
+        ? Iterables.toString(elements)
+        : RenderingBudget.renderElements(elements, budget).text();
+  }
+
   // We could add a dep on com.google.common.io, but that seems overkill for base16 encoding
   private static String base16(byte[] bytes) {
     StringBuilder sb = new StringBuilder(2 * bytes.length);
@@ -491,27 +536,28 @@ public class Subject<S extends Subject<S, T>, T> {
         @Override
         public Object apply(@NullableDecl Object input) {
           if (input != null && input.getClass().isArray()) {
-            Iterable<?> iterable;
+            List<?> list;
             if (input.getClass() == boolean[].class) {
-              iterable = Booleans.asList((boolean[]) input);
+              list = Booleans.asList((boolean[]) input);
             } else if (input.getClass() == int[].class) {
-              iterable = Ints.asList((int[]) input);
+              list = Ints.asList((int[]) input);
             } else if (input.getClass() == long[].class) {
-              iterable = Longs.asList((long[]) input);
+              list = Longs.asList((long[]) input);
             } else if (input.getClass() == short[].class) {
-              iterable = Shorts.asList((short[]) input);
+              list = Shorts.asList((short[]) input);
             } else if (input.getClass() == byte[].class) {
-              iterable = Bytes.asList((byte[]) input);
+              list = Bytes.asList((byte[]) input);
             } else if (input.getClass() == double[].class) {
-              iterable = doubleArrayAsString((double[]) input);
+              list = doubleArrayAsString((double[]) input);
             } else if (input.getClass() == float[].class) {
-              iterable = floatArrayAsString((float[]) input);
+              list = floatArrayAsString((float[]) input);
             } else if (input.getClass() == char[].class) {
-              iterable = Chars.asList((char[]) input);
+              list = Chars.asList((char[]) input);
             } else {
-              iterable = Arrays.asList((Object[]) input);
+              list = Arrays.asList((Object[]) input);
             }
-            return Iterables.transform(iterable, STRINGIFY);
+            // A list, rather than an Iterable, lets RenderingBudget render it from both ends.
+            return Lists.transform(list, STRINGIFY);
           }
           return input;
         }
@@ -535,6 +581,15 @@ public class Subject<S extends Subject<S, T>, T> {
       return new ComparisonResult(ImmutableList.copyOf(facts));
     }
 
+    /**
+     * Returns a non-equal result described by the given diff, whose renderings of the arrays
+     * replace the full renderings in the failure message.
+     */
+    static ComparisonResult fromPrimitiveArrayDiff(PrimitiveArrayDiff diff) {
+      return new ComparisonResult(
+          diff.facts(), diff.expectedRendering(), diff.actualRendering());
+    }
+
     /** Returns an equal result. */
     static ComparisonResult equal() {
       return EQUAL;
@@ -551,8 +606,22 @@ public class Subject<S extends Subject<S, T>, T> {
 
     @NullableDecl private final ImmutableList<Fact> facts;
 
+    /** Renderings of the expected and actual values to use in place of their full renderings. */
+    @NullableDecl private final Rendering expectedRendering;
+
+    @NullableDecl private final Rendering actualRendering;
+
     private ComparisonResult(ImmutableList<Fact> facts) {
+      this(facts, null, null);
+    }
+
+    private ComparisonResult(
+        ImmutableList<Fact> facts,
+        @NullableDecl Rendering expectedRendering,
+        @NullableDecl Rendering actualRendering) {
       this.facts = facts;
+      this.expectedRendering = expectedRendering;
+      this.actualRendering = actualRendering;
     }
 
     boolean valuesAreEqual() {
@@ -563,6 +632,16 @@ public class Subject<S extends Subject<S, T>, T> {
       return firstNonNull(facts, ImmutableList.<Fact>of());
     }
 
+    @NullableDecl
+    Rendering expectedRendering() {
+      return expectedRendering;
+    }
+
+    @NullableDecl
+    Rendering actualRendering() {
+      return actualRendering;
+    }
+
     /** Returns an instance with the same "equal"/"not-equal" bit but with no description. */
     ComparisonResult withoutDescription() {
       return fromEqualsResult(valuesAreEqual());
@@ -572,25 +651,80 @@ public class Subject<S extends Subject<S, T>, T> {
   /**
    * Returns null if the arrays are equal. If not equal, returns a string comparing the two arrays,
    * displaying them in the style "[1, 2, 3]" to supplement the main failure message, which uses the
-   * style "010203."
+   * style "010203." Arrays too large to render in full are described by a {@link
+   * PrimitiveArrayDiff} instead.
    */
-  private static ComparisonResult checkByteArrayEquals(byte[] expected, byte[] actual) {
+  private ComparisonResult checkByteArrayEquals(byte[] expected, byte[] actual) {
     if (Arrays.equals(expected, actual)) {
       return ComparisonResult.equal();
     }
+    if (PrimitiveArrayDiff.appliesTo(expected, actual, metadata().renderingBudget())) {
+      return ComparisonResult.fromPrimitiveArrayDiff(PrimitiveArrayDiff.compare(expected, actual));
+    }
     return ComparisonResult.differentWithDescription(
         fact("expected", Arrays.toString(expected)), fact("but was", Arrays.toString(actual)));
   }
 
+  /**
+   * Returns whether the arrays are equal, recursively, under the same rules as {@link
+   * #checkArrayEqualsRecursive}. This is much faster when they are: It compares primitive arrays
+   * with {@link Arrays#equals} (or, for floating-point types, the GWT-safe equivalents in {@link
+   * Platform}), so it neither boxes the elements nor builds the strings of their indexes.
+   */
+  /*
+   * We'd use deepEquals, but it doesn't have our special double/float handling for GWT, and it
+   * compares arrays of different types (like String[] and Object[]) element by element, while we
+   * consider them all to be Object[].
+   */
+  private static boolean arraysEqual(Object expectedArray, Object actualArray) {
+    if (expectedArray instanceof Object[] && actualArray instanceof Object[]) {
+      Object[] expected = (Object[]) expectedArray;
+      Object[] actual = (Object[]) actualArray;
+      if (expected.length != actual.length) {
+        return false;
+      }
+      for (int i = 0; i < actual.length; i++) {
+        if (actual[i] != null
+            && actual[i].getClass().isArray()
+            && expected[i] != null
+            && expected[i].getClass().isArray()) {
+          if (!arraysEqual(expected[i], actual[i])) {
+            return false;
+          }
+        } else if (!gwtSafeObjectEquals(actual[i], expected[i])) {
+          return false;
+        }
+      }
+      return true;
+    } else if (expectedArray.getClass() != actualArray.getClass()) {
+      // At least one is a primitive array, and they aren't of the same type.
+      return false;
+    } else if (actualArray instanceof int[]) {
+      return Arrays.equals((int[]) expectedArray, (int[]) actualArray);
+    } else if (actualArray instanceof long[]) {
+      return Arrays.equals((long[]) expectedArray, (long[]) actualArray);
+    } else if (actualArray instanceof byte[]) {
+      return Arrays.equals((byte[]) expectedArray, (byte[]) actualArray);
+    } else if (actualArray instanceof char[]) {
+      return Arrays.equals((char[]) expectedArray, (char[]) actualArray);
+    } else if (actualArray instanceof short[]) {
+      return Arrays.equals((short[]) expectedArray, (short[]) actualArray);
+    } else if (actualArray instanceof boolean[]) {
+      return Arrays.equals((boolean[]) expectedArray, (boolean[]) actualArray);
+    } else if (actualArray instanceof double[]) {
+      return Platform.doubleArraysEqual((double[]) expectedArray, (double[]) actualArray);
+    } else {
+      return Platform.floatArraysEqual((float[]) expectedArray, (float[]) actualArray);
+    }
+  }
+
   /**
    * Returns null if the arrays are equal, recursively. If not equal, returns the string of the
    * index at which they're different.
    */
   /*
    * TODO(cpovirk): Decide whether it's worthwhile to go to this trouble to display the index at
-   * which the arrays differ. If we were to stop doing that, we could mostly delegate to
-   * Arrays.equals() and our float/double arrayEquals methods. (We'd use deepEquals, but it doesn't
-   * have our special double/float handling for GWT.)
+   * which the arrays differ. If we were to stop doing that, we could delegate to arraysEqual().
    */
   private ComparisonResult checkArrayEqualsRecursive(
       Object expectedArray, Object actualArray, String lastIndex) {
@@ -615,7 +749,6 @@ public class Subject<S extends Subject<S, T>, T> {
           indexFact, fact("expected", expectedLength), fact("but was", actualLength));
     }
     for (int i = 0; i < actualLength || i < expectedLength; i++) {
-      String index = lastIndex + "[" + i + "]";
       if (i < expectedLength && i < actualLength) {
         Object expected = Array.get(expectedArray, i);
         Object actual = Array.get(actualArray, i);
@@ -623,7 +756,11 @@ public class Subject<S extends Subject<S, T>, T> {
             && actual.getClass().isArray()
             && expected != null
             && expected.getClass().isArray()) {
-          ComparisonResult result = checkArrayEqualsRecursive(expected, actual, index);
+          if (arraysEqual(expected, actual)) {
+            continue;
+          }
+          ComparisonResult result =
+              checkArrayEqualsRecursive(expected, actual, lastIndex + "[" + i + "]");
           if (!result.valuesAreEqual()) {
             return result;
           }
@@ -632,7 +769,8 @@ public class Subject<S extends Subject<S, T>, T> {
           continue;
         }
       }
-      return ComparisonResult.differentWithDescription(fact("differs at index", index));
+      return ComparisonResult.differentWithDescription(
+          fact("differs at index", lastIndex + "[" + i + "]"));
     }
     return ComparisonResult.equal();
   }
@@ -691,7 +829,7 @@ public class Subject<S extends Subject<S, T>, T> {
    * information by using {@linkplain #check(String, Object...) the other overload}.
    */
   protected final StandardSubjectBuilder check() {
-    return new StandardSubjectBuilder(metadata.updateForCheckCall());
+    return new StandardSubjectBuilder(metadata().updateForCheckCall());
   }
 
   /**
@@ -744,7 +882,7 @@ public class Subject<S extends Subject<S, T>, T> {
           }
         };
     return new StandardSubjectBuilder(
-        metadata.updateForCheckCall(valuesAreSimilar, descriptionUpdate));
+        metadata().updateForCheckCall(valuesAreSimilar, descriptionUpdate));
   }
 
   /**
@@ -795,7 +933,7 @@ public class Subject<S extends Subject<S, T>, T> {
     for (Object part : messageParts) {
       message.append(" <").append(part).append(">");
     }
-    metadata.fail(message.toString());
+    metadata().fail(message.toString());
   }
 
   /*
@@ -827,8 +965,25 @@ public class Subject<S extends Subject<S, T>, T> {
 
   private final void failEqualityCheck(
       EqualityCheck equalityCheck, Object expected, ComparisonResult difference) {
-    String actualString = actualCustomStringRepresentation();
-    String expectedString = formatActualOrExpected(expected);
+    String actualString;
+    String expectedString;
+    boolean omitsElements;
+    if (difference.expectedRendering() != null) {
+      // The values are too large to render in full, so the comparison rendered the differences.
+      actualString = difference.actualRendering().text();
+      expectedString = difference.expectedRendering().text();
+      omitsElements =
+          difference.actualRendering().omitsElements()
+              || difference.expectedRendering().omitsElements();
+    } else {
+      Rendering expectedRendering = renderActualOrExpected(expected);
+      actualString = actualCustomStringRepresentation();
+      expectedString = expectedRendering.text();
+      omitsElements =
+          expectedRendering.omitsElements()
+              || (actualString.equals(expectedString)
+                  && renderActualOrExpected(actual()).omitsElements());
+    }
     String actualClass = actual() == null ? "(null reference)" : actual().getClass().getName();
     String expectedClass = expected == null ? "(null reference)" : expected.getClass().getName();
 
@@ -842,7 +997,8 @@ public class Subject<S extends Subject<S, T>, T> {
      * What we really want here is probably to delete actualCustomStringRepresentation() and migrate
      * users to formatActualOrExpected(actual).
      */
-    boolean sameToStrings = actualString.equals(expectedString);
+    // Renderings that omit elements might be equal even though the full renderings aren't.
+    boolean sameToStrings = actualString.equals(expectedString) && !omitsElements;
     boolean sameClassNames = actualClass.equals(expectedClass);
     // TODO(cpovirk): Handle "same class name, different class loader."
     boolean equal = difference.valuesAreEqual(); // always false for isEqualTo; varies for isSameAs
@@ -867,8 +1023,12 @@ public class Subject<S extends Subject<S, T>, T> {
             fact("an instance of", actualClass));
       }
     } else {
-      if (equalityCheck == EqualityCheck.EQUAL && actual() != null && expected != null) {
-        metadata.failEqualityCheck(
+      // Renderings with omissions can be equal, and a diff of them would show no difference.
+      if (equalityCheck == EqualityCheck.EQUAL
+          && actual() != null
+          && expected != null
+          && !actualString.equals(expectedString)) {
+        metadata().failEqualityCheck(
             nameAsFacts(), difference.factsOrEmpty(), expectedString, actualString);
       } else {
         failEqualityCheckNoComparisonFailure(
@@ -902,7 +1062,7 @@ public class Subject<S extends Subject<S, T>, T> {
             expected,
             failVerb,
             (actual == null) ? "null reference" : actual);
-    metadata.fail(message);
+    metadata().fail(message);
   }
 
   /**
@@ -918,14 +1078,14 @@ public class Subject<S extends Subject<S, T>, T> {
         format(
             "Not true that <%s> %s <%s>",
             (actual == null) ? "null reference" : actual, verb, expected);
-    metadata.fail(message);
+    metadata().fail(message);
   }
 
   /** @deprecated Use {@link #failWithoutActual(String)} */
   @Deprecated
   protected final void failWithoutSubject(String check) {
     String strSubject = this.customName == null ? "the subject" : "\"" + customName + "\"";
-    metadata.fail(format("Not true that %s %s", strSubject, check));
+    metadata().fail(format("Not true that %s %s", strSubject, check));
   }
 
   // TODO(cpovirk): Make this public once names are settled.
@@ -954,7 +1114,7 @@ public class Subject<S extends Subject<S, T>, T> {
    */
   // TODO(cgruber) final
   protected void failWithRawMessage(String message, Object... parameters) {
-    metadata.fail(format(message, parameters));
+    metadata().fail(format(message, parameters));
   }
 
   /**
@@ -971,7 +1131,7 @@ public class Subject<S extends Subject<S, T>, T> {
    */
   @Deprecated
   protected final void failWithRawMessageAndCause(String message, Throwable cause) {
-    metadata.fail(message, cause);
+    metadata().fail(message, cause);
   }
 
   /**
@@ -987,7 +1147,7 @@ public class Subject<S extends Subject<S, T>, T> {
    */
   @Deprecated
   protected final void failComparing(String message, CharSequence expected, CharSequence actual) {
-    metadata.failComparing(message, expected, actual);
+    metadata().failComparing(message, expected, actual);
   }
 
   /**
@@ -1002,7 +1162,7 @@ public class Subject<S extends Subject<S, T>, T> {
   @Deprecated
   protected final void failComparing(
       String message, CharSequence expected, CharSequence actual, Throwable cause) {
-    metadata.failComparing(message, expected, actual, cause);
+    metadata().failComparing(message, expected, actual, cause);
   }
 
   /**
@@ -1090,7 +1250,7 @@ public class Subject<S extends Subject<S, T>, T> {
   }
 
   private void doFail(ImmutableList<Fact> facts) {
-    metadata.fail(prependNameIfAny(facts));
+    metadata().fail(prependNameIfAny(facts));
   }
 
   private ImmutableList<Fact> prependNameIfAny(ImmutableList<Fact> facts) {
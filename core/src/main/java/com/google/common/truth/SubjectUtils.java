@@ -19,14 +19,13 @@ import static com.google.common.collect.Iterables.isEmpty;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.SetMultimap;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -56,30 +55,15 @@ final class SubjectUtils {
     return items;
   }
 
-  static <T> int countOf(T t, Iterable<T> items) {
-    int count = 0;
-    for (T item : items) {
-      if (t == null ? (item == null) : t.equals(item)) {
-        count++;
-      }
-    }
-    return count;
-  }
-
   static <T> List<Object> countDuplicates(Iterable<T> items) {
-    // We use a List to de-dupe instead of a Set in case the elements don't have a proper
-    // .hashCode() method (e.g., MessageSet from old versions of protobuf).
-    List<T> itemSet = new ArrayList<T>();
-    for (T item : items) {
-      if (!itemSet.contains(item)) {
-        itemSet.add(item);
-      }
-    }
-    Object[] params = new Object[itemSet.size()];
-    int n = 0;
-    for (T item : itemSet) {
-      int count = countOf(item, items);
-      params[n++] = (count > 1) ? item + " [" + count + " copies]" : item;
+    // ElementCounts uses a hash map to de-dupe, but it falls back to linear scans for elements that
+    // don't have a proper .hashCode() method (e.g., MessageSet from old versions of protobuf).
+    ElementCounts<T> counts = ElementCounts.of(items);
+    Object[] params = new Object[counts.distinctCount()];
+    for (int i = 0; i < params.length; i++) {
+      T item = counts.distinctElement(i);
+      int count = counts.count(i);
+      params[i] = (count > 1) ? item + " [" + count + " copies]" : item;
     }
     return Arrays.asList(params);
   }
@@ -126,16 +110,57 @@ final class SubjectUtils {
    * <p>Example: {@code retainMatchingToString([1L, 2L, 2L], [2, 3]) == [2L, 2L]}
    */
   static List<Object> retainMatchingToString(Iterable<?> items, Iterable<?> itemsToCheck) {
-    SetMultimap<String, Object> stringValueToItemsToCheck = HashMultimap.create();
+    return retainMatchingToString(items, itemsToCheck, /* stopAtFirst= */ false);
+  }
+
+  /**
+   * Returns true if there is a pair of an item from {@code items1} and one in {@code items2} that
+   * has the same {@code toString()} value without being equal.
+   *
+   * <p>Example: {@code hasMatchingToStringPair([1L, 2L], [1]) == true}
+   */
+  static boolean hasMatchingToStringPair(Iterable<?> items1, Iterable<?> items2) {
+    if (isEmpty(items1) || isEmpty(items2)) {
+      return false; // Bail early to avoid calling toString() on the elements unnecessarily.
+    }
+    return !retainMatchingToString(items1, items2, /* stopAtFirst= */ true).isEmpty();
+  }
+
+  private static List<Object> retainMatchingToString(
+      Iterable<?> items, Iterable<?> itemsToCheck, boolean stopAtFirst) {
+    /*
+     * For each string value, we keep at most two items to check, which aren't equal to each other.
+     * An item can't be equal to both of them (assuming that equals() is transitive), so if there
+     * are two then the item has a match, and if there's one then it's the only candidate. That
+     * keeps the time linear even if many items share a string value. Keying by string also means
+     * that we never call hashCode() on the items, which might be broken.
+     */
+    Map<String, List<Object>> stringValueToItemsToCheck = new HashMap<>();
     for (Object itemToCheck : itemsToCheck) {
-      stringValueToItemsToCheck.put(String.valueOf(itemToCheck), itemToCheck);
+      String stringValue = String.valueOf(itemToCheck);
+      List<Object> representatives = stringValueToItemsToCheck.get(stringValue);
+      if (representatives == null) {
+        representatives = new ArrayList<>(2);
+        stringValueToItemsToCheck.put(stringValue, representatives);
+        representatives.add(itemToCheck);
+      } else if (representatives.size() == 1
+          && !Objects.equal(representatives.get(0), itemToCheck)) {
+        representatives.add(itemToCheck);
+      }
     }
 
     List<Object> result = Lists.newArrayList();
     for (Object item : items) {
-      for (Object itemToCheck : stringValueToItemsToCheck.get(String.valueOf(item))) {
+      List<Object> representatives = stringValueToItemsToCheck.get(String.valueOf(item));
+      if (representatives == null) {
+        continue;
+      }
+      for (Object itemToCheck : representatives) {
         if (!Objects.equal(itemToCheck, item)) {
           result.add(item);
+          if (stopAtFirst) {
+            return result;
+          }
           break;
         }
       }
@@ -143,19 +168,6 @@ final class SubjectUtils {
     return result;
   }
 
-  /**
-   * Returns true if there is a pair of an item from {@code items1} and one in {@code items2} that
-   * has the same {@code toString()} value without being equal.
-   *
-   * <p>Example: {@code hasMatchingToStringPair([1L, 2L], [1]) == true}
-   */
-  static boolean hasMatchingToStringPair(Iterable<?> items1, Iterable<?> items2) {
-    if (isEmpty(items1) || isEmpty(items2)) {
-      return false; // Bail early to avoid calling hashCode() on the elements unnecessarily.
-    }
-    return !retainMatchingToString(items1, items2).isEmpty();
-  }
-
   static String objectToTypeName(Object item) {
     if (item == null) {
       // The name "null type" comes from the interface javax.lang.model.type.NullType.
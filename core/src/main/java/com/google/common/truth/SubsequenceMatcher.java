@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.common.truth;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
+
+/**
+ * Finds each of a sequence of expected elements among a list of actual elements, in time linear in
+ * the number of elements, for {@link IterableSubject#containsAllIn}.
+ *
+ * <p>The actual elements are consumed from the front: each expected element is matched with the
+ * first equal element at or after a cursor, and the unmatched elements that the cursor passes over
+ * become "skipped." If no such element exists, the expected element is matched with the earliest
+ * equal skipped element instead, which means that the elements are not in order. If there is no
+ * equal skipped element either, the expected element is missing.
+ *
+ * <p>To make that fast, every distinct actual value gets an ID, and the positions of each value are
+ * stored contiguously in ascending order. Since the cursor only moves forward, the first position
+ * at or after the cursor and the earliest skipped position of each value both only move forward,
+ * too.
+ */
+final class SubsequenceMatcher {
+  /** The positions of the actual elements, grouped by ID and ascending within each group. */
+  private final int[] positions;
+
+  /** The index into {@link #positions} of the first position of each ID. */
+  private final int[] firstPositionIndex;
+
+  /** The index into {@link #positions} of the first position of each ID at or after the cursor. */
+  private final int[] tailIndex;
+
+  /** The index into {@link #positions} of the earliest position of each ID that may be skipped. */
+  private final int[] skippedIndex;
+
+  /** The ID of each expected element, or -1 if it's equal to none of the actual elements. */
+  private final int[] expectedIds;
+
+  private final boolean[] consumed;
+  private int cursor;
+
+  /**
+   * Returns a matcher for the given elements, or null if any of them can't be hashed reliably, in
+   * which case callers should fall back to linear scans.
+   */
+  @NullableDecl
+  static SubsequenceMatcher create(List<?> actual, Collection<?> expected) {
+    KnownBrokenHashCodes knownBrokenHashCodes = new KnownBrokenHashCodes();
+    Map<Object, Integer> ids = new HashMap<>();
+    int[] actualIds = new int[actual.size()];
+    try {
+      for (int i = 0; i < actual.size(); i++) {
+        Object element = actual.get(i);
+        if (knownBrokenHashCodes.contains(element)) {
+          return null;
+        }
+        Integer id = ids.get(element);
+        if (id == null) {
+          id = ids.size();
+          ids.put(element, id);
+        }
+        actualIds[i] = id;
+      }
+      int[] expectedIds = new int[expected.size()];
+      int i = 0;
+      for (Object element : expected) {
+        if (knownBrokenHashCodes.contains(element)) {
+          return null;
+        }
+        Integer id = ids.get(element);
+        expectedIds[i++] = (id == null) ? -1 : id;
+      }
+      return new SubsequenceMatcher(actualIds, ids.size(), expectedIds);
+    } catch (RuntimeException e) {
+      // Presumably hashCode() threw.
+      return null;
+    }
+  }
+
+  private SubsequenceMatcher(int[] actualIds, int idCount, int[] expectedIds) {
+    this.expectedIds = expectedIds;
+    this.consumed = new boolean[actualIds.length];
+    this.firstPositionIndex = new int[idCount + 1];
+    for (int id : actualIds) {
+      firstPositionIndex[id + 1]++;
+    }
+    for (int id = 0; id < idCount; id++) {
+      firstPositionIndex[id + 1] += firstPositionIndex[id];
+    }
+    this.positions = new int[actualIds.length];
+    int[] next = firstPositionIndex.clone();
+    for (int position = 0; position < actualIds.length; position++) {
+      positions[next[actualIds[position]]++] = position;
+    }
+    this.tailIndex = firstPositionIndex.clone();
+    this.skippedIndex = firstPositionIndex.clone();
+  }
+
+  /**
+   * Matches all the expected elements, adding those that are missing to {@code missing} in order.
+   * Returns whether the matched elements appeared in order.
+   */
+  boolean matchAll(Collection<?> expected, Collection<Object> missing) {
+    boolean ordered = true;
+    int i = 0;
+    for (Object element : expected) {
+      int id = expectedIds[i++];
+      if (id == -1) {
+        missing.add(element);
+      } else if (!consumeFromTail(id)) {
+        if (consumeSkipped(id)) {
+          ordered = false;
+        } else {
+          missing.add(element);
+        }
+      }
+    }
+    return ordered;
+  }
+
+  private boolean consumeFromTail(int id) {
+    int end = firstPositionIndex[id + 1];
+    // Positions before the cursor have been skipped (or consumed); they're handled below.
+    while (tailIndex[id] < end && positions[tailIndex[id]] < cursor) {
+      tailIndex[id]++;
+    }
+    if (tailIndex[id] == end) {
+      return false;
+    }
+    int position = positions[tailIndex[id]++];
+    consumed[position] = true;
+    cursor = position + 1;
+    return true;
+  }
+
+  private boolean consumeSkipped(int id) {
+    int end = tailIndex[id];
+    while (skippedIndex[id] < end && consumed[positions[skippedIndex[id]]]) {
+      skippedIndex[id]++;
+    }
+    if (skippedIndex[id] == end) {
+      return false;
+    }
+    consumed[positions[skippedIndex[id]++]] = true;
+    return true;
+  }
+}
@@ -22,7 +22,10 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Table;
+import com.google.common.truth.LazyStackTraceCleaning.LazilyCleanedError;
 import com.google.common.util.concurrent.AtomicLongMap;
+import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.math.BigDecimal;
 import java.util.Map;
 import java.util.SortedMap;
@@ -135,6 +138,20 @@ public final class Truth {
     return assert_().about(factory);
   }
 
+  /**
+   * Sets the approximate number of characters in which failure messages render each list, set, or
+   * array, for all assertions that don't set their own budget with {@link
+   * StandardSubjectBuilder#withRenderingBudget}. Longer renderings omit elements from the middle
+   * and say how many were omitted. The default is about a million characters, enough to keep a
+   * failure about a huge collection from exhausting memory. {@link Integer#MAX_VALUE} renders every
+   * value in full.
+   *
+   * @throws IllegalArgumentException if {@code maxCharacters} is not positive
+   */
+  public static void setDefaultRenderingBudget(int maxCharacters) {
+    RenderingBudget.setDefaultBudget(maxCharacters);
+  }
+
   public static <T extends Comparable<?>> ComparableSubject<?, T> assertThat(
       @NullableDecl T actual) {
     return assert_().that(actual);
@@ -265,10 +282,12 @@ public final class Truth {
    * An {@code AssertionError} that (a) always supports a cause, even under old versions of Android
    * and (b) omits "java.lang.AssertionError:" from the beginning of its toString() representation.
    */
-  static final class SimpleAssertionError extends AssertionError {
+  static final class SimpleAssertionError extends AssertionError implements LazilyCleanedError {
     /** Separate cause field, in case initCause() fails. */
     @NullableDecl private final Throwable cause;
 
+    private final LazyStackTraceCleaning lazyStackTraceCleaning = new LazyStackTraceCleaning();
+
     // TODO(cpovirk): Figure out if we ever pass a null message to this.
     private SimpleAssertionError(
         String message, @NullableDecl String suffix, @NullableDecl Throwable cause) {
@@ -306,6 +325,30 @@ public final class Truth {
       return cause;
     }
 
+    @Override
+    public void cleanStackTraceOnFirstUse() {
+      lazyStackTraceCleaning.defer();
+    }
+
+    @Override
+    public StackTraceElement[] getStackTrace() {
+      lazyStackTraceCleaning.cleanIfPending(this);
+      return super.getStackTrace();
+    }
+
+    @Override
+    public void printStackTrace(PrintStream s) {
+      LazyStackTraceCleaning.cleanPendingTraces(this);
+      super.printStackTrace(s);
+    }
+
+    @Override
+    @GwtIncompatible("java.io.PrintWriter")
+    public void printStackTrace(PrintWriter s) {
+      LazyStackTraceCleaning.cleanPendingTraces(this);
+      super.printStackTrace(s);
+    }
+
     @Override
     public String toString() {
       return getLocalizedMessage();
@@ -23,6 +23,7 @@ import static java.lang.Float.parseFloat;
 import static jsinterop.annotations.JsPackage.GLOBAL;
 
 import com.google.common.collect.ImmutableList;
+import java.util.List;
 import jsinterop.annotations.JsProperty;
 import jsinterop.annotations.JsType;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
@@ -106,6 +107,77 @@ final class Platform {
     // Do nothing. See notes in StackTraceCleanerTest.
   }
 
+  /**
+   * Returns whether the arrays are equal, comparing elements as {@link Double#equals} does: by
+   * their bits, so that {@code NaN} is equal to itself and {@code 0.0} isn't equal to {@code -0.0}.
+   * Under GWT, we compare the bits ourselves rather than trusting the emulation of {@code
+   * Arrays.equals}.
+   */
+  static boolean doubleArraysEqual(double[] expected, double[] actual) {
+    if (expected.length != actual.length) {
+      return false;
+    }
+    for (int i = 0; i < actual.length; i++) {
+      if (Double.doubleToLongBits(expected[i]) != Double.doubleToLongBits(actual[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns whether the arrays are equal, comparing elements as {@link Float#equals} does: by their
+   * bits, so that {@code NaN} is equal to itself and {@code 0.0f} isn't equal to {@code -0.0f}.
+   * Under GWT, we compare the bits ourselves rather than trusting the emulation of {@code
+   * Arrays.equals}.
+   */
+  static boolean floatArraysEqual(float[] expected, float[] actual) {
+    if (expected.length != actual.length) {
+      return false;
+    }
+    for (int i = 0; i < actual.length; i++) {
+      if (Float.floatToIntBits(expected[i]) != Float.floatToIntBits(actual[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Calls {@link PrimitiveArrayDiff#addMismatch} with each index below {@code length} at which the
+   * arrays differ, in ascending order. Under GWT, there's no {@code ByteBuffer} to compare chunks
+   * with, so we compare each byte.
+   */
+  static void findByteMismatches(
+      byte[] expected, byte[] actual, int length, PrimitiveArrayDiff diff) {
+    for (int i = 0; i < length; i++) {
+      if (expected[i] != actual[i]) {
+        diff.addMismatch(i);
+      }
+    }
+  }
+
+  static boolean isStackTraceCleaningDeferred() {
+    // There's nothing to defer, since there's no cleaning.
+    return false;
+  }
+
+  /**
+   * Returns true if instances of the given class are known to have a {@code hashCode()} that is
+   * inconsistent with their {@code equals()}. Under GWT, we can't inspect the class, so we assume
+   * that its {@code hashCode()} is fine.
+   */
+  static boolean hashCodeIsKnownBroken(Class<?> clazz) {
+    return false;
+  }
+
+  /** Runs the given tasks. Under GWT, there are no other threads, so this runs them in order. */
+  static void runInParallel(List<? extends Runnable> tasks, int parallelism) {
+    for (Runnable task : tasks) {
+      task.run();
+    }
+  }
+
   @NullableDecl
   static ImmutableList<Fact> makeDiff(String expected, String actual) {
     /*
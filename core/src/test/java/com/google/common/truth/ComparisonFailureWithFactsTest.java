@@ -209,6 +209,39 @@ public class ComparisonFailureWithFactsTest {
                 " z"));
   }
 
+  @GwtIncompatible
+  @Test
+  public void formatDiffMultipleHunks() {
+    StringBuilder expected = new StringBuilder();
+    StringBuilder actual = new StringBuilder();
+    for (int i = 0; i < 40; i++) {
+      expected.append("line").append(i).append('\n');
+      actual.append(i == 2 ? "x" : i == 30 ? "y" : "line" + i).append('\n');
+    }
+    runFormatTest(
+        expected.toString(),
+        actual.toString(),
+        Joiner.on('\n')
+            .join(
+                "@@ -1,6 +1,6 @@",
+                " line0",
+                " line1",
+                "-line2",
+                "+x",
+                " line3",
+                " line4",
+                " line5",
+                "@@ -28,7 +28,7 @@",
+                " line27",
+                " line28",
+                " line29",
+                "-line30",
+                "+y",
+                " line31",
+                " line32",
+                " line33"));
+  }
+
   @GwtIncompatible
   @Test
   public void formatDiffPrefixAndSuffixWouldOverlapSimple() {
@@ -20,6 +20,8 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.fail;
 
 import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -133,6 +135,37 @@ public final class CorrespondenceTest extends BaseSubjectTestCase {
     }
   }
 
+  @Test
+  public void testTolerance_buckets() {
+    Correspondence<Number, Number> correspondence = tolerance(0.1);
+    double[] values = {-1000.0, -0.15, -0.1, -0.05, -0.0, 0.0, 0.05, 0.1, 0.15, 0.2, 1.0e10};
+    for (double actual : values) {
+      for (double expected : values) {
+        if (correspondence.compare(actual, expected)) {
+          assertThat(correspondence.expectedBuckets(expected))
+              .contains(correspondence.actualBucket(actual));
+        }
+      }
+    }
+    assertThat(tolerance(0.0).expectedBuckets(-0.0)).contains(tolerance(0.0).actualBucket(0.0));
+    assertThat(correspondence.actualBucket(Double.NaN)).isNull();
+    assertThat(correspondence.expectedBuckets(Double.POSITIVE_INFINITY)).isNull();
+    assertThat(correspondence.actualBucket(null)).isNull();
+    assertThat(tolerance(-0.05).actualBucket(1.0)).isNull();
+  }
+
+  @Test
+  public void testTolerance_viaIterableSubjectContainsExactly_large() {
+    List<Double> actual = new ArrayList<>();
+    List<Double> expected = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      actual.add((i * 7919 % 100000) + 0.01);
+      expected.add((double) i);
+    }
+    assertThat(actual).comparingElementsUsing(tolerance(0.05)).containsExactlyElementsIn(expected);
+    assertThat(actual).comparingElementsUsing(tolerance(0.05)).containsNoneOf(-1.0, 100000.0);
+  }
+
   @Test
   public void testTolerance_viaIterableSubjectContains_success() {
     assertThat(ImmutableList.of(1.02, 2.04, 3.08))
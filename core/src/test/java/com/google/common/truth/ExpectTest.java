@@ -23,11 +23,15 @@ import static java.util.concurrent.Executors.newFixedThreadPool;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static org.junit.Assert.fail;
 
+import com.google.common.base.Splitter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -214,6 +218,224 @@ public class ExpectTest {
     thrown.expectMessage("1000 expectations failed:");
   }
 
+  @Test
+  public void failuresFromOtherThreadsAreReportedInOrder() throws Exception {
+    expect.fail("x");
+    ExecutorService executor = newSingleThreadExecutor();
+    executor
+        .submit(
+            new Runnable() {
+              @Override
+              public void run() {
+                expect.fail("y");
+              }
+            })
+        .get();
+    executor.shutdown();
+    expect.fail("z");
+    thrown.expectMessage("3 expectations failed:\n  1. x\n  2. y\n  3. z\n");
+  }
+
+  @Test
+  public void concurrentFailuresAreAllCountedAndListed() throws Throwable {
+    String report = failConcurrently(Expect.create(), 8, 500);
+    assertThat(report).startsWith("4000 expectations failed:\n");
+    assertThat(Splitter.onPattern("\n +\\d+\\. ").split(report)).hasSize(4001);
+  }
+
+  @Test
+  public void concurrentFailuresAreCountedConsistentlyWhenLimited() throws Throwable {
+    String report = failConcurrently(Expect.createLimitingFailuresTo(100), 8, 500);
+    assertThat(report).startsWith("4000 expectations failed:\n");
+    // Which failures are kept depends on timing, but the report must account for all of them.
+    long accounted = Splitter.onPattern("\n +\\d+\\. ").splitToList(report).size() - 1;
+    Matcher repeated = Pattern.compile("\\(repeated (\\d+) more times?\\)").matcher(report);
+    while (repeated.find()) {
+      accounted += Long.parseLong(repeated.group(1));
+    }
+    Matcher omitted =
+        Pattern.compile("\\.\\.\\. and (\\d+) more failures? not shown").matcher(report);
+    if (omitted.find()) {
+      accounted += Long.parseLong(omitted.group(1));
+    }
+    assertThat(accounted).isEqualTo(4000);
+  }
+
+  @Test
+  public void concurrentFailuresAreCountedConsistentlyWithSink() throws Throwable {
+    final AtomicInteger reported = new AtomicInteger();
+    String report =
+        failConcurrently(
+            Expect.createReportingFailuresTo(
+                new FailureStrategy() {
+                  @Override
+                  public void fail(AssertionError failure) {
+                    reported.incrementAndGet();
+                  }
+                }),
+            8,
+            500);
+    assertThat(reported.get()).isEqualTo(4000);
+    assertThat(report).startsWith("4000 expectations failed:\n  1. failure ");
+  }
+
+  /**
+   * Runs a test in which the given number of threads, released together, each fail the given
+   * number of times, and returns the message of the resulting failure.
+   */
+  private static String failConcurrently(
+      final Expect expect, final int threadCount, final int failuresPerThread) throws Throwable {
+    Statement test =
+        new Statement() {
+          @Override
+          public void evaluate() throws Exception {
+            final CountDownLatch start = new CountDownLatch(1);
+            ExecutorService executor = newFixedThreadPool(threadCount);
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+              results.add(
+                  executor.submit(
+                      new Runnable() {
+                        @Override
+                        public void run() {
+                          awaitUninterruptibly(start);
+                          for (int j = 0; j < failuresPerThread; j++) {
+                            expect.fail("failure " + j);
+                          }
+                        }
+                      }));
+            }
+            start.countDown();
+            executor.shutdown();
+            for (Future<?> result : results) {
+              result.get();
+            }
+          }
+        };
+    try {
+      expect.apply(test, Description.EMPTY).evaluate();
+    } catch (AssertionError expected) {
+      return expected.getMessage();
+    }
+    throw new AssertionError("Expected the test to fail");
+  }
+
+  @Test
+  public void limitingFailuresTo() throws Throwable {
+    final Expect limited = Expect.createLimitingFailuresTo(2);
+    Statement test =
+        new Statement() {
+          @Override
+          public void evaluate() {
+            for (int i = 0; i < 5; i++) {
+              limited.fail("x");
+            }
+            limited.fail("y");
+            limited.fail("z");
+            limited.fail("z");
+          }
+        };
+    try {
+      limited.apply(test, Description.EMPTY).evaluate();
+    } catch (AssertionError expected) {
+      assertThat(expected)
+          .hasMessageThat()
+          .isEqualTo(
+              "8 expectations failed:\n"
+                  + "  1. x\n"
+                  + "     (repeated 4 more times)\n"
+                  + "  2. y\n"
+                  + "  ... and 2 more failures not shown, since at most 2 distinct failures are "
+                  + "kept\n");
+      return;
+    }
+    fail();
+  }
+
+  @Test
+  public void limitingFailuresTo_nonPositive() {
+    try {
+      Expect.createLimitingFailuresTo(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void reportingFailuresTo() throws Throwable {
+    final List<String> reported = new ArrayList<>();
+    final Expect reporting =
+        Expect.createReportingFailuresTo(
+            new FailureStrategy() {
+              @Override
+              public void fail(AssertionError failure) {
+                reported.add(failure.getMessage());
+              }
+            });
+    Statement test =
+        new Statement() {
+          @Override
+          public void evaluate() {
+            reporting.fail("x");
+            assertThat(reported).containsExactly("x");
+            reporting.fail("y");
+            reporting.fail("z");
+          }
+        };
+    try {
+      reporting.apply(test, Description.EMPTY).evaluate();
+    } catch (AssertionError expected) {
+      assertThat(reported).containsExactly("x", "y", "z").inOrder();
+      assertThat(expected)
+          .hasMessageThat()
+          .isEqualTo(
+              "3 expectations failed:\n"
+                  + "  1. x\n"
+                  + "  (Only the first failure is shown. All failures were passed to the sink.)\n");
+      return;
+    }
+    fail();
+  }
+
+  @Test
+  public void reportingFailuresTo_exceptionAfterFailures() throws Throwable {
+    final List<String> reported = new ArrayList<>();
+    final Expect reporting =
+        Expect.createReportingFailuresTo(
+            new FailureStrategy() {
+              @Override
+              public void fail(AssertionError failure) {
+                reported.add(failure.getMessage());
+              }
+            });
+    Statement test =
+        new Statement() {
+          @Override
+          public void evaluate() {
+            reporting.fail("x");
+            throw new IllegalStateException("boom");
+          }
+        };
+    try {
+      reporting.apply(test, Description.EMPTY).evaluate();
+    } catch (AssertionError expected) {
+      assertThat(reported)
+          .containsExactly(
+              "x",
+              "Also, after those failures, an exception was thrown: "
+                  + "java.lang.IllegalStateException: boom")
+          .inOrder();
+      assertThat(expected)
+          .hasMessageThat()
+          .isEqualTo(
+              "2 expectations failed:\n"
+                  + "  1. x\n"
+                  + "  (Only the first failure is shown. All failures were passed to the sink.)\n");
+      return;
+    }
+    fail();
+  }
+
   @Test
   public void failWhenCallingThatAfterTest() {
     ExecutorService executor = newSingleThreadExecutor();
@@ -131,6 +131,12 @@ public final class GraphMatchingTest {
     }
   }
 
+  @Test
+  public void maximumCardinalityBipartiteMatching_longAugmentingPath() {
+    // This is long enough that a recursive DFS would overflow the stack.
+    TestInstance.chain(100000).testAgainstKnownSize(100000);
+  }
+
   @Test
   public void maximumCardinalityBipartiteMatching_failsWithNullLhs() {
     ListMultimap<String, String> edges = LinkedListMultimap.create();
@@ -195,6 +201,24 @@ public final class GraphMatchingTest {
       return new TestInstance(edges.build());
     }
 
+    /**
+     * Generates a test instance with a bipartite graph where there are {@code size} elements in
+     * each set of vertices, and each LHS vertex is connected to the RHS vertex with the next index
+     * (if any) and then to the one with the same index. The first phase of the algorithm matches
+     * each LHS vertex with the next RHS vertex, so that the only augmenting path then runs through
+     * every vertex.
+     */
+    static TestInstance chain(int size) {
+      ImmutableListMultimap.Builder<String, String> edges = ImmutableListMultimap.builder();
+      for (int i = 0; i < size; i++) {
+        if (i + 1 < size) {
+          edges.put("L" + i, "R" + (i + 1));
+        }
+        edges.put("L" + i, "R" + i);
+      }
+      return new TestInstance(edges.build());
+    }
+
     private final ImmutableListMultimap<String, String> edges;
     private final ImmutableList<String> lhsVertices;
 
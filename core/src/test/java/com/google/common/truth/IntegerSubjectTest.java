@@ -58,6 +58,19 @@ public class IntegerSubjectTest extends BaseSubjectTestCase {
     expectFailureWhenTestingThat(4).isNotEqualTo(4);
   }
 
+  @Test
+  public void equalityFail_primitiveExpected() {
+    expectFailureWhenTestingThat(1000).isEqualTo(1001);
+    assertFailureKeys("expected", "but was");
+    assertFailureValue("expected", "1001");
+    assertFailureValue("but was", "1000");
+  }
+
+  @Test
+  public void equalityWithChars() {
+    assertThat(97).isEqualTo('a');
+  }
+
   @Test
   public void equalityOfNulls() {
     assertThat((Integer) null).isEqualTo(null);
@@ -16,6 +16,7 @@
 package com.google.common.truth;
 
 import static com.google.common.base.Functions.identity;
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Collections2.permutations;
 import static com.google.common.truth.Correspondence.tolerance;
 import static com.google.common.truth.TestCorrespondences.PARSED_RECORDS_EQUAL_WITH_SCORE_TOLERANCE_10;
@@ -30,9 +31,12 @@ import static java.util.Arrays.asList;
 import static org.junit.Assert.fail;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
 import com.google.common.truth.TestCorrespondences.Record;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -173,6 +177,20 @@ public class IterableSubjectCorrespondenceTest extends BaseSubjectTestCase {
     }
   }
 
+  @Test
+  public void comparingElementsUsing_containsExactlyElementsIn_successOutOfOrder_large() {
+    List<Integer> expected = new ArrayList<>();
+    List<Integer> actual = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      expected.add(i);
+      actual.add((i + 1) % 10000);
+    }
+    CountingCorrespondence correspondence = new CountingCorrespondence();
+    assertThat(actual).comparingElementsUsing(correspondence).containsExactlyElementsIn(expected);
+    // A passing test shouldn't need to compare every actual element with every expected element.
+    assertThat(correspondence.compareCount).isLessThan(5 * 10000);
+  }
+
   @Test
   public void comparingElementsUsing_containsExactlyElementsIn_failsMissingOneCandidate() {
     ImmutableList<Integer> expected = ImmutableList.of(64, 128, 256, 128);
@@ -582,6 +600,144 @@ public class IterableSubjectCorrespondenceTest extends BaseSubjectTestCase {
         .isAnyOf(expectedPreamble + "<[0x40]>", expectedPreamble + "<[+64]>");
   }
 
+  @Test
+  public void comparingElementsUsing_comparingInParallel_successNonGreedy() {
+    ImmutableList<Double> expected = ImmutableList.of(1.0, 1.1, 1.2);
+    ImmutableList<Double> actual = ImmutableList.of(1.05, 1.15, 0.95);
+    for (List<Double> permutedActual : permutations(actual)) {
+      assertThat(permutedActual)
+          .comparingElementsUsing(tolerance(0.1))
+          .comparingInParallel(4)
+          .containsExactlyElementsIn(expected);
+    }
+  }
+
+  @Test
+  public void comparingElementsUsing_comparingInParallel_failure() {
+    ImmutableList<Integer> expected = ImmutableList.of(64, 128, 256, 128);
+    ImmutableList<String> actual = ImmutableList.of("+128", "+64", "+256", "0x40");
+    expectFailure
+        .whenTesting()
+        .that(actual)
+        .comparingElementsUsing(STRING_PARSES_TO_INTEGER_CORRESPONDENCE)
+        .comparingInParallel(4)
+        .containsExactlyElementsIn(expected);
+    String expectedPreamble =
+        "Not true that <[+128, +64, +256, 0x40]> contains exactly one element that parses "
+            + "to each element of <[64, 128, 256, 128]>. It contains at least one element "
+            + "that matches each expected element, and every element it contains matches at "
+            + "least one expected element, but there was no 1:1 mapping between all the "
+            + "actual and expected elements. Using the most complete 1:1 mapping (or one "
+            + "such mapping, if there is a tie), it is missing an element that parses to "
+            + "<128> and has unexpected elements ";
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isAnyOf(expectedPreamble + "<[0x40]>", expectedPreamble + "<[+64]>");
+  }
+
+  @Test
+  public void comparingElementsUsing_comparingInParallel_large() {
+    List<Integer> expected = new ArrayList<>();
+    List<Integer> actual = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      expected.add(i);
+      actual.add(i * 7 % 1000);
+    }
+    assertThat(actual)
+        .comparingElementsUsing(WITHIN_10_OF)
+        .comparingInParallel(4)
+        .containsExactlyElementsIn(expected);
+    assertThat(actual)
+        .comparingElementsUsing(WITHIN_10_OF)
+        .comparingInParallel(4)
+        .containsAllIn(expected);
+    assertThat(actual)
+        .comparingElementsUsing(WITHIN_10_OF)
+        .comparingInParallel(4)
+        .containsNoneOf(-100, 2000);
+  }
+
+  @Test
+  public void comparingElementsUsing_comparingInParallel_reusesThreads() {
+    final Set<Thread> threads = Sets.newConcurrentHashSet();
+    Correspondence<Integer, Integer> recordingThreads =
+        new Correspondence<Integer, Integer>() {
+          @Override
+          public boolean compare(Integer actual, Integer expected) {
+            threads.add(Thread.currentThread());
+            return actual.equals(expected);
+          }
+
+          @Override
+          public String toString() {
+            return "is equal to";
+          }
+        };
+    List<Integer> expected = new ArrayList<>();
+    List<Integer> actual = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      expected.add(i);
+      actual.add(99 - i);
+    }
+    for (int i = 0; i < 50; i++) {
+      assertThat(actual)
+          .comparingElementsUsing(recordingThreads)
+          .comparingInParallel(4)
+          .containsExactlyElementsIn(expected);
+    }
+    // Each check runs tasks on several threads, but later checks reuse the earlier ones' threads.
+    assertThat(threads.size()).isLessThan(50);
+  }
+
+  @Test
+  public void comparingElementsUsing_comparingInParallel_rethrows() {
+    ImmutableList<String> actual = ImmutableList.of("+128", "+64", "This is not a number", "0x40");
+    try {
+      assertThat(actual)
+          .comparingElementsUsing(NUMBER_FORMAT_EXCEPTION_ON_NON_NUMBER)
+          .comparingInParallel(4)
+          .containsExactly(64, 128, 64, 65);
+      fail("Expected NumberFormatException");
+    } catch (NumberFormatException expected) {
+    }
+  }
+
+  @Test
+  public void comparingElementsUsing_comparingInParallel_ignoresExceptionsSerialWouldNotReach() {
+    Correspondence<Integer, Integer> throwingForNineAndOne =
+        new Correspondence<Integer, Integer>() {
+          @Override
+          public boolean compare(Integer actual, Integer expected) {
+            checkState(actual != 9 || expected != 1, "compared 9 with 1");
+            return actual.equals(expected);
+          }
+
+          @Override
+          public String toString() {
+            return "is equal to";
+          }
+        };
+    // 9 is paired with the 9 at index 1 before the serial greedy stage would reach the 1.
+    assertThat(ImmutableList.of(9, 1, 5))
+        .comparingElementsUsing(throwingForNineAndOne)
+        .comparingInParallel(4)
+        .containsExactly(5, 9, 1);
+    // The 1 at index 1 is paired in order, so the serial greedy stage never compares 9 with it.
+    assertThat(ImmutableList.of(9, 1, 7))
+        .comparingElementsUsing(throwingForNineAndOne)
+        .comparingInParallel(4)
+        .containsExactly(7, 1, 9);
+  }
+
+  @Test
+  public void comparingElementsUsing_comparingInParallel_invalid() {
+    try {
+      assertThat(ImmutableList.of()).comparingElementsUsing(WITHIN_10_OF).comparingInParallel(0);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
   @Test
   public void comparingElementsUsing_containsExactlyElementsIn_diffOneMissingAndExtraInOneToOne() {
     ImmutableList<Integer> expected = ImmutableList.of(30, 30, 60);
@@ -744,6 +900,21 @@ public class IterableSubjectCorrespondenceTest extends BaseSubjectTestCase {
     }
   }
 
+  @Test
+  public void comparingElementsUsing_containsAllIn_successOutOfOrder_large() {
+    List<Integer> expected = new ArrayList<>();
+    List<Integer> actual = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      expected.add(i);
+      actual.add((i + 1) % 10000);
+    }
+    actual.add(-1);
+    CountingCorrespondence correspondence = new CountingCorrespondence();
+    assertThat(actual).comparingElementsUsing(correspondence).containsAllIn(expected);
+    // A passing test shouldn't need to compare every actual element with every expected element.
+    assertThat(correspondence.compareCount).isLessThan(5 * 10000);
+  }
+
   @Test
   public void comparingElementsUsing_containsAllIn_failsMissingOneCandidate() {
     ImmutableList<Integer> expected = ImmutableList.of(64, 128, 256, 128);
@@ -1181,6 +1352,23 @@ public class IterableSubjectCorrespondenceTest extends BaseSubjectTestCase {
                 + "+128 which corresponds to 128]>");
   }
 
+  @Test
+  public void comparingElementsUsing_containsNoneOf_bucketedFailures() {
+    ImmutableList<Double> actual = ImmutableList.of(1.03, 2.0, Double.NaN, 0.98, 3.0);
+    expectFailure
+        .whenTesting()
+        .that(actual)
+        .comparingElementsUsing(tolerance(0.05))
+        .containsNoneOf(1.0, 3.04, 5.0);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <[1.03, 2.0, NaN, 0.98, 3.0]> contains no element that "
+                + "is a finite number within 0.05 of any of <[1.0, 3.04, 5.0]>. "
+                + "It contains <[[1.03, 0.98] which all correspond to 1.0, "
+                + "3.0 which corresponds to 3.04]>");
+  }
+
   @Test
   public void comparingElementsUsing_containsNoneOf_null() {
     List<String> actual = asList("+128", "+64", null, "0x40");
@@ -1262,4 +1450,34 @@ public class IterableSubjectCorrespondenceTest extends BaseSubjectTestCase {
                 + "contains no element that parses to any element in <[127, 128, 129]>. "
                 + "It contains <[+128 which corresponds to 128]>");
   }
+
+  /** A correspondence which parses strings to integers, throwing if they aren't numbers. */
+  private static final Correspondence<String, Integer> NUMBER_FORMAT_EXCEPTION_ON_NON_NUMBER =
+      new Correspondence<String, Integer>() {
+        @Override
+        public boolean compare(String actual, Integer expected) {
+          return Integer.decode(actual).equals(expected);
+        }
+
+        @Override
+        public String toString() {
+          return "decodes to";
+        }
+      };
+
+  /** An equality correspondence which counts how many times it's been called. */
+  private static final class CountingCorrespondence extends Correspondence<Integer, Integer> {
+    int compareCount;
+
+    @Override
+    public boolean compare(Integer actual, Integer expected) {
+      compareCount++;
+      return actual.equals(expected);
+    }
+
+    @Override
+    public String toString() {
+      return "is equal to";
+    }
+  }
 }
@@ -15,6 +15,7 @@
  */
 package com.google.common.truth;
 
+import static com.google.common.truth.Truth.assertAbout;
 import static com.google.common.truth.Truth.assertThat;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.fail;
@@ -22,9 +23,11 @@ import static org.junit.Assert.fail;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -84,6 +87,18 @@ public class IterableSubjectTest extends BaseSubjectTestCase {
                 + "it does contain <[2 [2 copies]] (java.lang.Long)>.");
   }
 
+  @Test
+  public void iterableContainsFailsWithSameToStringLarge() {
+    List<Long> actual = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      actual.add((long) (i % 2));
+    }
+    expectFailureWhenTestingThat(actual).contains(1);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .endsWith("However, it does contain <[1 [50000 copies]] (java.lang.Long)>.");
+  }
+
   @Test
   public void iterableContainsFailsWithSameToStringAndNull() {
     expectFailureWhenTestingThat(asList(1, "null")).contains(null);
@@ -413,6 +428,49 @@ public class IterableSubjectTest extends BaseSubjectTestCase {
         .isEqualTo("Not true that <[1, null, 3]> contains all elements in order <[null, 1, 3]>");
   }
 
+  @Test
+  public void iterableContainsAllOfInOrderWithRepeatedElementsFailure() {
+    expectFailureWhenTestingThat(asList("a", "b", "a")).containsAllOf("b", "a", "a").inOrder();
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo("Not true that <[a, b, a]> contains all elements in order <[b, a, a]>");
+  }
+
+  @Test
+  public void iterableContainsAllOfWithElementsThatInheritHashCode() {
+    EqualsWithoutHashCode a = new EqualsWithoutHashCode("a");
+    EqualsWithoutHashCode b = new EqualsWithoutHashCode("b");
+
+    assertThat(asList(a, b, a))
+        .containsAllOf(new EqualsWithoutHashCode("a"), new EqualsWithoutHashCode("b"))
+        .inOrder();
+
+    expectFailureWhenTestingThat(asList(a, b, a))
+        .containsAllOf(new EqualsWithoutHashCode("b"), a, a)
+        .inOrder();
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo("Not true that <[a, b, a]> contains all elements in order <[b, a, a]>");
+  }
+
+  @Test
+  public void iterableContainsAllInLarge() {
+    List<Integer> actual = new ArrayList<>();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 50000; i++) {
+      actual.add(i % 1000);
+      if (i % 5 == 0) {
+        expected.add(i % 1000);
+      }
+    }
+    assertThat(actual).containsAllIn(expected).inOrder();
+
+    expected.add(0, 999);
+    expected.add(1000);
+    expectFailureWhenTestingThat(actual).containsAllIn(expected);
+    assertThat(expectFailure.getFailure()).hasMessageThat().endsWith("is missing <[1000]>");
+  }
+
   @Test
   public void iterableContainsAllOfInOrderWithOneShotIterable() {
     final Iterable<Object> iterable = Arrays.<Object>asList(2, 1, null, 4, "a", 3, "b");
@@ -455,6 +513,46 @@ public class IterableSubjectTest extends BaseSubjectTestCase {
         .isEqualTo("Not true that <BadIterable> contains all elements in order <[1, 3, null]>");
   }
 
+  @Test
+  public void oneShotIterablesContainsAllOf() {
+    assertAbout(IterableSubject.oneShotIterables())
+        .that(onlyOnce(asList(2, 1, 4, 3).iterator()))
+        .containsAllOf(1, 3)
+        .inOrder();
+    // The check stops consuming elements once it has seen all of the expected elements in order.
+    assertAbout(IterableSubject.oneShotIterables())
+        .that(onlyOnce(naturalNumbers()))
+        .containsAllOf(1, 10, 1000)
+        .inOrder();
+  }
+
+  @Test
+  public void oneShotIterablesContainsAllOfFailure() {
+    expectFailure
+        .whenTesting()
+        .about(IterableSubject.oneShotIterables())
+        .that(onlyOnce(asList(1, 2, 3, 2).iterator()))
+        .containsAllOf(2, 2, 2, 4);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <[1, 2, 3, 2]> contains at least <[2, 2, 2, 4]>. "
+                + "It is missing <[2, 4]>");
+  }
+
+  @Test
+  public void oneShotIterablesContainsAllOfInOrderFailure() {
+    expectFailure
+        .whenTesting()
+        .about(IterableSubject.oneShotIterables())
+        .that(onlyOnce(asList(1, 2, 3).iterator()))
+        .containsAllOf(3, 1)
+        .inOrder();
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo("Not true that <[1, 2, 3]> contains all elements in order <[3, 1]>");
+  }
+
   @Test
   public void iterableContainsAllInIterable() {
     assertThat(asList(1, 2, 3)).containsAllIn(asList(1, 2));
@@ -686,6 +784,157 @@ public class IterableSubjectTest extends BaseSubjectTestCase {
     }
   }
 
+  @Test
+  public void iterableContainsExactlyWithElementsThatInheritHashCode() {
+    EqualsWithoutHashCode one = new EqualsWithoutHashCode("one");
+    EqualsWithoutHashCode two = new EqualsWithoutHashCode("two");
+
+    assertThat(asList(one, two))
+        .containsExactly(new EqualsWithoutHashCode("two"), new EqualsWithoutHashCode("one"));
+
+    expectFailureWhenTestingThat(asList(one, two, two))
+        .containsExactly(new EqualsWithoutHashCode("two"), one, new EqualsWithoutHashCode("three"));
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <[one, two, two]> contains exactly <[two, one, three]>. "
+                + "It is missing <[three]> and has unexpected items <[two]>");
+  }
+
+  @Test
+  public void iterableContainsExactlyWithDuplicateElementsThatInheritHashCode() {
+    EqualsWithoutHashCode one = new EqualsWithoutHashCode("one");
+    EqualsWithoutHashCode two = new EqualsWithoutHashCode("two");
+
+    expectFailureWhenTestingThat(asList(two, one, new EqualsWithoutHashCode("two")))
+        .containsExactly(one);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <[two, one, two]> contains exactly <[one]>. "
+                + "It has unexpected items <[two [2 copies]]>");
+  }
+
+  private static class EqualsWithoutHashCode {
+    private final String name;
+
+    EqualsWithoutHashCode(String name) {
+      this.name = name;
+    }
+
+    @Override
+    @SuppressWarnings("EqualsHashCode") // deliberately broken
+    public boolean equals(Object other) {
+      return other instanceof EqualsWithoutHashCode
+          && ((EqualsWithoutHashCode) other).name.equals(name);
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  @Test
+  public void iterableContainsExactlyLargeOutOfOrder() {
+    List<Integer> actual = new ArrayList<>();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      actual.add(i);
+      expected.add(99999 - i);
+    }
+    assertThat(actual).containsExactlyElementsIn(expected);
+
+    expected.set(0, -1);
+    expected.add(-2);
+    expectFailureWhenTestingThat(actual).containsExactlyElementsIn(expected);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .endsWith("It is missing <[-1, -2]> and has unexpected items <[99999]>");
+  }
+
+  @Test
+  public void iterableContainsExactlyLargeFailureWithDuplicates() {
+    List<Integer> actual = new ArrayList<>();
+    for (int i = 0; i < 200000; i++) {
+      actual.add(i % 100000);
+    }
+    expectFailureWhenTestingThat(actual).containsExactly(-1);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .endsWith("99998 [2 copies], 99999 [2 copies]]>");
+  }
+
+  @Test
+  public void iterableContainsExactlyFailureWithRenderingBudget() {
+    List<Integer> actual = new ArrayList<>();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      actual.add(i);
+      expected.add(i == 50000 ? -1 : i);
+    }
+    expectFailure
+        .whenTesting()
+        .withRenderingBudget(40)
+        .that(actual)
+        .containsExactlyElementsIn(expected);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <[0, 1, 2, 3, 4, 5, 6, ... (99991 more) ..., 99998, 99999]> contains "
+                + "exactly <[0, 1, 2, 3, 4, 5, 6, ... (99991 more) ..., 99998, 99999]>. "
+                + "It is missing <[-1]> and has unexpected items <[50000]>");
+  }
+
+  @Test
+  public void iterableContainsFailureWithRenderingBudgetAndNoToString() {
+    final List<String> elements = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      elements.add("e" + i);
+    }
+    Iterable<String> actual =
+        new Iterable<String>() {
+          @Override
+          public Iterator<String> iterator() {
+            return elements.iterator();
+          }
+        };
+    expectFailure.whenTesting().withRenderingBudget(24).that(actual).contains("x");
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo("<[e0, e1, e2, ... (995 more) ..., e998, e999]> should have contained <x>");
+  }
+
+  @Test
+  public void iterableContainsFailureWithRenderingBudgetFittingExactly() {
+    expectFailure.whenTesting().withRenderingBudget(8).that(asList(1, 2, 3)).contains(4);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo("<[1, 2, 3]> should have contained <4>");
+  }
+
+  @Test
+  public void iterableContainsFailureWithDefaultRenderingBudget() {
+    Truth.setDefaultRenderingBudget(10);
+    try {
+      expectFailureWhenTestingThat(asList(1, 2, 3, 4, 5, 6)).contains(7);
+    } finally {
+      Truth.setDefaultRenderingBudget(1 << 20);
+    }
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo("<[1, 2, ... (3 more) ..., 6]> should have contained <7>");
+  }
+
+  @Test
+  public void withRenderingBudgetRejectsNonPositiveBudget() {
+    try {
+      Truth.assert_().withRenderingBudget(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
   @Test
   public void iterableContainsExactlyElementsInInOrderPassesWithEmptyExpectedAndActual() {
     assertThat(ImmutableList.of()).containsExactlyElementsIn(ImmutableList.of()).inOrder();
@@ -930,6 +1179,92 @@ public class IterableSubjectTest extends BaseSubjectTestCase {
     assertThat(iterable).containsExactly(1, null, 3).inOrder();
   }
 
+  @Test
+  public void oneShotIterablesContainsExactly() {
+    assertAbout(IterableSubject.oneShotIterables())
+        .that(onlyOnce(asList(1, null, 3).iterator()))
+        .containsExactly(3, 1, null);
+  }
+
+  @Test
+  public void oneShotIterablesContainsExactlyFailure() {
+    expectFailure
+        .whenTesting()
+        .about(IterableSubject.oneShotIterables())
+        .that(onlyOnce(asList(1, 2, 3).iterator()))
+        .containsExactly(1, 2, 4);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <[1, 2, 3]> contains exactly <[1, 2, 4]>. "
+                + "It is missing <[4]> and has unexpected items <[3]>");
+  }
+
+  @Test
+  public void oneShotIterablesContainsExactlyInOrderFailure() {
+    expectFailure
+        .whenTesting()
+        .about(IterableSubject.oneShotIterables())
+        .that(onlyOnce(asList(1, 2, 3).iterator()))
+        .containsExactly(1, 3, 2)
+        .inOrder();
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <[1, 2, 3]> contains exactly these elements in order <[1, 3, 2]>");
+  }
+
+  @Test
+  public void oneShotIterablesContainsExactlyLargeFailure() {
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 1000000; i++) {
+      expected.add(i == 500000 ? -1 : i);
+    }
+    expectFailure
+        .whenTesting()
+        .withRenderingBudget(40)
+        .about(IterableSubject.oneShotIterables())
+        .that(onlyOnce(Iterators.limit(naturalNumbers(), 1000000)))
+        .containsExactlyElementsIn(expected);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .isEqualTo(
+            "Not true that <[0, 1, 2, 3, 4, 5, 6, ... (999991 more) ..., 999998, 999999]> "
+                + "contains exactly "
+                + "<[0, 1, 2, 3, 4, 5, 6, ... (999991 more) ..., 999998, 999999]>. "
+                + "It is missing <[-1]> and has unexpected items <[500000]>");
+  }
+
+  @Test
+  public void oneShotIterablesContainsExactlyKeepsBoundedUnexpectedItems() {
+    expectFailure
+        .whenTesting()
+        .withRenderingBudget(40)
+        .about(IterableSubject.oneShotIterables())
+        .that(onlyOnce(Iterators.limit(naturalNumbers(), 1000)))
+        .containsExactly(-1);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .endsWith(
+            "It is missing <[-1]> and has unexpected items "
+                + "<[0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13]> (and 986 more)");
+  }
+
+  @Test
+  public void oneShotIterablesContainsExactlyKeepsBoundedTrailingUnexpectedItems() {
+    expectFailure
+        .whenTesting()
+        .withRenderingBudget(40)
+        .about(IterableSubject.oneShotIterables())
+        .that(onlyOnce(Iterators.limit(naturalNumbers(), 1000)))
+        .containsExactly(0);
+    assertThat(expectFailure.getFailure())
+        .hasMessageThat()
+        .endsWith(
+            "It has unexpected items "
+                + "<[1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14]> (and 985 more)");
+  }
+
   @Test
   public void iterableContainsExactlyInOrderWithOneShotIterableWrongOrder() {
     final Iterator<Object> iterator = asList((Object) 1, null, 3).iterator();
@@ -1186,6 +1521,43 @@ public class IterableSubjectTest extends BaseSubjectTestCase {
                 + "containsNoneOf(...)/containsNoneIn(...) instead. Non-iterables: [a, b]");
   }
 
+  /** Returns an iterable whose {@code iterator()} may be called only once. */
+  private static <T> Iterable<T> onlyOnce(final Iterator<T> iterator) {
+    return new Iterable<T>() {
+      boolean iterated;
+
+      @Override
+      public Iterator<T> iterator() {
+        if (iterated) {
+          throw new IllegalStateException();
+        }
+        iterated = true;
+        return iterator;
+      }
+    };
+  }
+
+  private static Iterator<Integer> naturalNumbers() {
+    return new Iterator<Integer>() {
+      int next;
+
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public Integer next() {
+        return next++;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
   private IterableSubject expectFailureWhenTestingThat(Iterable<?> actual) {
     return expectFailure.whenTesting().that(actual);
   }
@@ -57,6 +57,19 @@ public class LongSubjectTest extends BaseSubjectTestCase {
     expectFailureWhenTestingThat(4L).isNotEqualTo(4L);
   }
 
+  @Test
+  public void equalityFail_primitiveExpected() {
+    expectFailureWhenTestingThat(1000L).isEqualTo(1001L);
+    assertFailureKeys("expected", "but was");
+    assertFailureValue("expected", "1001");
+    assertFailureValue("but was", "1000");
+  }
+
+  @Test
+  public void equalityWithChars() {
+    assertThat(97L).isEqualTo('a');
+  }
+
   @Test
   public void equalityOfNulls() {
     assertThat((Long) null).isEqualTo(null);
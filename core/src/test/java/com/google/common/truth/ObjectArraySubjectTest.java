@@ -115,6 +115,28 @@ public class ObjectArraySubjectTest extends BaseSubjectTestCase {
     assertFailureValue("differs at index", "[0]");
   }
 
+  @Test
+  public void isEqualTo_Fail_WithRenderingBudget() {
+    Integer[] actual = new Integer[1000];
+    Integer[] expected = new Integer[1000];
+    for (int i = 0; i < 1000; i++) {
+      actual[i] = i;
+      expected[i] = (i == 500) ? -1 : i;
+    }
+    expectFailure.whenTesting().withRenderingBudget(20).that(actual).isEqualTo(expected);
+    assertFailureValue("differs at index", "[500]");
+    assertFailureValue("expected", "[0, 1, 2, 3, ... (994 more) ..., 998, 999]");
+    assertFailureValue("but was", "[0, 1, 2, 3, ... (994 more) ..., 998, 999]");
+  }
+
+  @Test
+  public void isEqualTo_Fail_SameRenderingThatLooksLikeAnOmission() {
+    expectFailureWhenTestingThat(objectArray("... (1 more) ...", 1))
+        .isEqualTo(objectArray("... (1 more) ...", 1L));
+    assertFailureValue(
+        "but was", "(non-equal instance of same class with same string representation)");
+  }
+
   @Test
   public void isEqualTo_Fail_UnequalOrderingMultiDimensional_00() {
     expectFailureWhenTestingThat(new Object[][] {{"A"}, {5L}})
@@ -271,6 +293,31 @@ public class ObjectArraySubjectTest extends BaseSubjectTestCase {
         .isNotEqualTo(new int[][] {{1, 2}, {3}, {4, 5, 6}});
   }
 
+  @Test
+  public void primitiveMultiDimensionalArrayIsEqualTo_Fail_UnequalElement() {
+    expectFailureWhenTestingThat(new int[][] {{1, 2}, {3}, {4, 5, 6}})
+        .isEqualTo(new int[][] {{1, 2}, {3}, {4, 7, 6}});
+    assertFailureKeys("expected", "but was", "differs at index");
+    assertFailureValue("differs at index", "[2][1]");
+  }
+
+  @Test
+  public void nestedDoubleArraysCompareBits() {
+    assertThat(new Object[] {new double[] {Double.NaN, -0.0}})
+        .isEqualTo(new Object[] {new double[] {Double.NaN, -0.0}});
+
+    expectFailureWhenTestingThat(new Object[] {new double[] {Double.NaN, -0.0}})
+        .isEqualTo(new Object[] {new double[] {Double.NaN, 0.0}});
+    assertFailureValue("differs at index", "[0][1]");
+  }
+
+  @Test
+  public void arraysOfDifferentReferenceTypes() {
+    assertThat(new Object[] {"a", new String[] {"b"}})
+        .isEqualTo(new Object[] {"a", new Object[] {"b"}});
+    assertThat(new String[] {"a", "b"}).isEqualTo(new Object[] {"a", "b"});
+  }
+
   @Test
   public void boxedAndUnboxed() {
     expectFailureWhenTestingThat(new Object[] {new int[] {0}})
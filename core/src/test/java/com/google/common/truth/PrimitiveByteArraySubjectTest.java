@@ -60,6 +60,35 @@ public class PrimitiveByteArraySubjectTest extends BaseSubjectTestCase {
     assertThat(expectFailure.getFailure()).isInstanceOf(ComparisonFailureWithFacts.class);
   }
 
+  @Test
+  public void isEqualTo_Fail_TooLargeToRender() {
+    byte[] actual = new byte[1 << 20];
+    byte[] expected = new byte[1 << 20];
+    expected[1000] = 123;
+    expectFailure.whenTesting().that(actual).isEqualTo(expected);
+    assertFailureKeys("expected", "but was", "differs at index", "mismatched elements");
+    assertFailureValue(
+        "expected", "[... (997 more) ..., 0, 0, 0, 123, 0, 0, 0, ... (1047572 more) ...]");
+    assertFailureValue(
+        "but was", "[... (997 more) ..., 0, 0, 0, 0, 0, 0, 0, ... (1047572 more) ...]");
+    assertFailureValue("differs at index", "[1000]");
+    assertFailureValue("mismatched elements", "1");
+  }
+
+  @Test
+  public void isEqualTo_Fail_TooLargeToRender_MismatchesAcrossChunkBoundaries() {
+    byte[] actual = new byte[1003];
+    byte[] expected = new byte[1003];
+    expected[7] = 1;
+    expected[8] = 1;
+    expected[500] = 1;
+    expected[501] = 1;
+    expected[1002] = 1;
+    expectFailure.whenTesting().withRenderingBudget(100).that(actual).isEqualTo(expected);
+    assertFailureValue("differs at index", "[7]");
+    assertFailureValue("mismatched elements", "5");
+  }
+
   @Test
   public void isEqualTo_Fail_NotAnArray() {
     expectFailureWhenTestingThat(array(BYTE_0, BYTE_1)).isEqualTo(new int[] {});
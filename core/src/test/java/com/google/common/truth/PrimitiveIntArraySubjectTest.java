@@ -100,6 +100,69 @@ public class PrimitiveIntArraySubjectTest extends BaseSubjectTestCase {
     assertFailureValue("differs at index", "[0]");
   }
 
+  @Test
+  public void isEqualTo_Fail_TooLargeToRender() {
+    int[] actual = new int[1000];
+    int[] expected = new int[1000];
+    for (int i = 0; i < 1000; i++) {
+      actual[i] = expected[i] = i;
+    }
+    expected[100] = -1;
+    expected[102] = -1;
+    expected[500] = -1;
+    expectFailure.whenTesting().withRenderingBudget(100).that(actual).isEqualTo(expected);
+    assertFailureKeys("expected", "but was", "differs at index", "mismatched elements");
+    assertFailureValue(
+        "expected",
+        "[... (97 more) ..., 97, 98, 99, -1, 101, -1, 103, 104, 105, ... (391 more) ..., "
+            + "497, 498, 499, -1, 501, 502, 503, ... (496 more) ...]");
+    assertFailureValue(
+        "but was",
+        "[... (97 more) ..., 97, 98, 99, 100, 101, 102, 103, 104, 105, ... (391 more) ..., "
+            + "497, 498, 499, 500, 501, 502, 503, ... (496 more) ...]");
+    assertFailureValue("differs at index", "[100]");
+    assertFailureValue("mismatched elements", "3");
+  }
+
+  @Test
+  public void isEqualTo_Fail_TooLargeToRender_ManyRegionsAndWrongLength() {
+    int[] actual = new int[1000];
+    int[] expected = new int[1010];
+    for (int i = 0; i < 1000; i += 100) {
+      expected[i] = 1;
+    }
+    expectFailure.whenTesting().withRenderingBudget(100).that(actual).isEqualTo(expected);
+    assertFailureKeys(
+        "expected",
+        "but was",
+        "wrong length",
+        "expected",
+        "but was",
+        "differs at index",
+        "mismatched elements",
+        "regions shown");
+    assertFailureValueIndexed("expected", 1, "1010");
+    assertFailureValueIndexed("but was", 1, "1000");
+    assertFailureValue("differs at index", "[0]");
+    assertFailureValue("mismatched elements", "20");
+    assertFailureValue("regions shown", "5 of 11");
+  }
+
+  @Test
+  public void isEqualTo_Fail_TooLargeToRender_LongRegionPastTheLimit() {
+    int[] actual = new int[1000];
+    int[] expected = new int[1000];
+    for (int i = 0; i < 500; i += 100) {
+      expected[i] = 1;
+    }
+    for (int i = 600; i < 700; i++) {
+      expected[i] = 1;
+    }
+    expectFailure.whenTesting().withRenderingBudget(100).that(actual).isEqualTo(expected);
+    assertFailureValue("mismatched elements", "105");
+    assertFailureValue("regions shown", "5 of 6");
+  }
+
   @Test
   public void isEqualTo_Fail_NotAnArray() {
     expectFailureWhenTestingThat(array(2, 3, 4)).isEqualTo(new Object());
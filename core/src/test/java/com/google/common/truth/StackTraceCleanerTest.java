@@ -17,7 +17,10 @@ package com.google.common.truth;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import org.junit.Test;
+import org.junit.runner.Description;
 import org.junit.runner.RunWith;
 import org.junit.runner.Runner;
 import org.junit.runners.JUnit4;
@@ -40,6 +43,8 @@ import org.junit.runners.model.Statement;
  */
 @RunWith(JUnit4.class)
 public class StackTraceCleanerTest extends BaseSubjectTestCase {
+  private static final String LAZY_CLEANING_PROPERTY =
+      "com.google.common.truth.lazy_stack_trace_cleaning";
 
   @Test
   public void emptyTrace() {
@@ -87,6 +92,58 @@ public class StackTraceCleanerTest extends BaseSubjectTestCase {
         .isEqualTo(getClass().getName());
   }
 
+  @Test
+  public void lazyCleaningCleansOnFirstUse() {
+    System.setProperty(LAZY_CLEANING_PROPERTY, "true");
+    try {
+      expectFailure.whenTesting().that(true).isFalse();
+    } finally {
+      System.clearProperty(LAZY_CLEANING_PROPERTY);
+    }
+    StringWriter printed = new StringWriter();
+    expectFailure.getFailure().printStackTrace(new PrintWriter(printed));
+    assertThat(printed.toString()).contains("\tat " + getClass().getName() + ".");
+    assertThat(printed.toString()).doesNotContain("com.google.common.truth.Subject.");
+  }
+
+  @Test
+  public void lazyCleaningCleansOnFirstUse_ComparisonFailure() {
+    System.setProperty(LAZY_CLEANING_PROPERTY, "true");
+    try {
+      expectFailure.whenTesting().that("1").isEqualTo("2");
+    } finally {
+      System.clearProperty(LAZY_CLEANING_PROPERTY);
+    }
+    assertThat(expectFailure.getFailure().getStackTrace()[0].getClassName())
+        .isEqualTo(getClass().getName());
+  }
+
+  @Test
+  public void lazyCleaningCleansFailuresPrintedAsCauses() throws Throwable {
+    final Expect expectWithTrace = Expect.createAndEnableStackTrace();
+    Statement test =
+        new Statement() {
+          @Override
+          public void evaluate() {
+            expectWithTrace.that(true).isFalse();
+            // Expect prints the traces of later failures as causes.
+            expectWithTrace.that("1").isEqualTo("2");
+          }
+        };
+    String message;
+    System.setProperty(LAZY_CLEANING_PROPERTY, "true");
+    try {
+      expectWithTrace.apply(test, Description.EMPTY).evaluate();
+      throw new Error("Expected a failure");
+    } catch (AssertionError expected) {
+      message = expected.getMessage();
+    } finally {
+      System.clearProperty(LAZY_CLEANING_PROPERTY);
+    }
+    assertThat(message).contains("2 expectations failed:");
+    assertThat(message).doesNotContain("com.google.common.truth.Subject.");
+  }
+
   @Test
   public void dontCollapseStreaksOfOneFrame() {
     Throwable throwable =
@@ -187,6 +244,32 @@ public class StackTraceCleanerTest extends BaseSubjectTestCase {
             });
   }
 
+  @Test
+  public void prefixesMatchWholePartsOfClassNames() {
+    Throwable throwable =
+        createThrowableWithStackTrace(
+            "com.example.Foo",
+            "org.junitx.Bar",
+            "org.junitx.Car",
+            "com.google.tracing.CurrentContext",
+            "com.google.tracing.CurrentContext.Dar",
+            "com.google.tracing.CurrentContextual",
+            "com.google.tracing.CurrentContextual");
+
+    StackTraceCleaner.cleanStackTrace(throwable);
+
+    assertThat(throwable.getStackTrace())
+        .isEqualTo(
+            new StackTraceElement[] {
+              createStackTraceElement("com.example.Foo"),
+              createStackTraceElement("org.junitx.Bar"),
+              createStackTraceElement("org.junitx.Car"),
+              createCollapsedStackTraceElement("Concurrent framework", 2),
+              createStackTraceElement("com.google.tracing.CurrentContextual"),
+              createStackTraceElement("com.google.tracing.CurrentContextual"),
+            });
+  }
+
   @Test
   public void allFramesAboveStandardSubjectBuilderCleaned() {
     Throwable throwable =
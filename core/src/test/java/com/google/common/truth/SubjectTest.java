@@ -41,8 +41,10 @@ import com.google.common.truth.Subject.Factory;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.math.BigDecimal;
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -187,6 +189,43 @@ public class SubjectTest extends BaseSubjectTestCase {
     }
   }
 
+  @Test
+  public void toStringOfSmallCollectionIsUsedWithinRenderingBudget() {
+    expectFailure
+        .whenTesting()
+        .that(new NamedList("MyList2", "x", "y"))
+        .isEqualTo(new NamedList("MyList2", "x", "z"));
+    assertFailureKeys("expected", "but was");
+    assertFailureValue("expected", "MyList2");
+    assertFailureValue(
+        "but was", "(non-equal instance of same class with same string representation)");
+  }
+
+  private static final class NamedList extends AbstractList<String> {
+    private final String name;
+    private final List<String> elements;
+
+    NamedList(String name, String... elements) {
+      this.name = name;
+      this.elements = Arrays.asList(elements);
+    }
+
+    @Override
+    public String get(int index) {
+      return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+      return elements.size();
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
   @Test
   public void isSameAsWithNulls() {
     Object o = null;
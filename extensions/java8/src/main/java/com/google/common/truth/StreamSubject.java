@@ -27,30 +27,65 @@ import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 /**
  * Propositions for {@link Stream} subjects.
  *
- * <p><b>Note:</b> the wrapped stream will be drained immediately into a private collection to
- * provide more readable failure messages. You should not use this class if you intend to leave the
- * stream un-consumed or if the stream is <i>very</i> large or infinite.
+ * <p><b>Note:</b> Most assertions drain the wrapped stream into a private collection to provide
+ * more readable failure messages. You should not use this class if you intend to leave the stream
+ * un-consumed or if the stream is infinite.
  *
- * <p>If you intend to make multiple assertions on the same stream of data you should instead
- * first collect the contents of the stream into a collection, and then assert directly on that.
+ * <p>The exceptions are {@code containsExactly} and {@code containsAll}, which consume the stream
+ * element by element and keep only the elements that they need, so they can check very large
+ * streams. (For how they render the stream in failure messages, see {@link
+ * IterableSubject#oneShotIterables}.)
  *
- * <p>For very large or infinite streams you may want to first {@linkplain Stream#limit limit} the
- * stream before asserting on it.
+ * <p>Each subject supports a single assertion about its stream. If you intend to make multiple
+ * assertions on the same stream of data you should instead first collect the contents of the
+ * stream into a collection, and then assert directly on that.
+ *
+ * <p>For infinite streams you may want to first {@linkplain Stream#limit limit} the stream before
+ * asserting on it.
  *
  * @author Kurt Alfred Kluever
  */
 public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
 
-  private final List<?> actualList;
+  /** The elements of the stream, once an assertion has collected them. */
+  @NullableDecl private List<?> actualList;
+
+  /** The view of the stream, once an assertion has started to consume it element by element. */
+  @NullableDecl private Iterable<?> oneShotView;
 
   private StreamSubject(FailureMetadata failureMetadata, @NullableDecl Stream<?> stream) {
     super(failureMetadata, stream);
-    this.actualList = (stream == null) ? null : stream.collect(toCollection(ArrayList::new));
   }
 
   @Override
   protected String actualCustomStringRepresentation() {
-    return String.valueOf(actualList);
+    return (oneShotView != null) ? oneShotView.toString() : String.valueOf(actualList());
+  }
+
+  @NullableDecl
+  private List<?> actualList() {
+    if (actualList == null && actual() != null) {
+      actualList = actual().collect(toCollection(ArrayList::new));
+    }
+    return actualList;
+  }
+
+  /**
+   * Returns a subject that consumes the stream element by element, unless an earlier assertion has
+   * already collected it.
+   */
+  private IterableSubject checkInOnePass() {
+    if (actualList != null || actual() == null) {
+      return check().that(actualList());
+    }
+    IterableSubject subject =
+        check().about(IterableSubject.oneShotIterables()).that(iterableOf(actual()));
+    oneShotView = subject.actual();
+    return subject;
+  }
+
+  private static <T> Iterable<T> iterableOf(Stream<T> stream) {
+    return stream::iterator;
   }
 
   public static Subject.Factory<StreamSubject, Stream<?>> streams() {
@@ -59,12 +94,12 @@ public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
 
   /** Fails if the subject is not empty. */
   public void isEmpty() {
-    check().that(actualList).isEmpty();
+    check().that(actualList()).isEmpty();
   }
 
   /** Fails if the subject is empty. */
   public void isNotEmpty() {
-    check().that(actualList).isNotEmpty();
+    check().that(actualList()).isNotEmpty();
   }
 
   /**
@@ -74,33 +109,33 @@ public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
    * elements, use {@code assertThat(stream.count()).isEqualTo(...)}.
    */
   public void hasSize(int expectedSize) {
-    check().that(actualList).hasSize(expectedSize);
+    check().that(actualList()).hasSize(expectedSize);
   }
 
   /** Fails if the subject does not contain the given element. */
   public void contains(@NullableDecl Object element) {
-    check().that(actualList).contains(element);
+    check().that(actualList()).contains(element);
   }
 
   /** Fails if the subject contains the given element. */
   public void doesNotContain(@NullableDecl Object element) {
-    check().that(actualList).doesNotContain(element);
+    check().that(actualList()).doesNotContain(element);
   }
 
   /** Fails if the subject contains duplicate elements. */
   public void containsNoDuplicates() {
-    check().that(actualList).containsNoDuplicates();
+    check().that(actualList()).containsNoDuplicates();
   }
 
   /** Fails if the subject does not contain at least one of the given elements. */
   public void containsAnyOf(
       @NullableDecl Object first, @NullableDecl Object second, @NullableDecl Object... rest) {
-    check().that(actualList).containsAnyOf(first, second, rest);
+    check().that(actualList()).containsAnyOf(first, second, rest);
   }
 
   /** Fails if the subject does not contain at least one of the given elements. */
   public void containsAnyIn(Iterable<?> expected) {
-    check().that(actualList).containsAnyIn(expected);
+    check().that(actualList()).containsAnyIn(expected);
   }
 
   /**
@@ -115,7 +150,7 @@ public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
   @CanIgnoreReturnValue
   public Ordered containsAllOf(
       @NullableDecl Object first, @NullableDecl Object second, @NullableDecl Object... rest) {
-    return check().that(actualList).containsAllOf(first, second, rest);
+    return checkInOnePass().containsAllOf(first, second, rest);
   }
 
   /**
@@ -129,7 +164,7 @@ public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
    */
   @CanIgnoreReturnValue
   public Ordered containsAllIn(Iterable<?> expected) {
-    return check().that(actualList).containsAllIn(expected);
+    return checkInOnePass().containsAllIn(expected);
   }
 
   /**
@@ -143,7 +178,7 @@ public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
    */
   @CanIgnoreReturnValue
   public Ordered containsExactly(@NullableDecl Object... varargs) {
-    return check().that(actualList).containsExactly(varargs);
+    return checkInOnePass().containsExactly(varargs);
   }
 
   /**
@@ -157,7 +192,7 @@ public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
    */
   @CanIgnoreReturnValue
   public Ordered containsExactlyElementsIn(Iterable<?> expected) {
-    return check().that(actualList).containsExactlyElementsIn(expected);
+    return checkInOnePass().containsExactlyElementsIn(expected);
   }
 
   /**
@@ -166,7 +201,7 @@ public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
    */
   public void containsNoneOf(
       @NullableDecl Object first, @NullableDecl Object second, @NullableDecl Object... rest) {
-    check().that(actualList).containsNoneOf(first, second, rest);
+    check().that(actualList()).containsNoneOf(first, second, rest);
   }
 
   /**
@@ -174,7 +209,7 @@ public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
    * test, which fails if any of the actual elements equal any of the excluded.)
    */
   public void containsNoneIn(Iterable<?> excluded) {
-    check().that(actualList).containsNoneIn(excluded);
+    check().that(actualList()).containsNoneIn(excluded);
   }
 
   /**
@@ -187,7 +222,7 @@ public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
    */
   // TODO(kak): Make this public once go/truth-stream-isinorder is decided
   private void isInStrictOrder() {
-    check().that(actualList).isStrictlyOrdered();
+    check().that(actualList()).isStrictlyOrdered();
   }
 
   /**
@@ -199,7 +234,7 @@ public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
    */
   // TODO(kak): Make this public once go/truth-stream-isinorder is decided
   private void isInStrictOrder(Comparator<?> comparator) {
-    check().that(actualList).isStrictlyOrdered(comparator);
+    check().that(actualList()).isStrictlyOrdered(comparator);
   }
 
   /**
@@ -211,7 +246,7 @@ public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
    */
   // TODO(kak): Make this public once go/truth-stream-isinorder is decided
   private void isInOrder() {
-    check().that(actualList).isOrdered();
+    check().that(actualList()).isOrdered();
   }
 
   /**
@@ -222,7 +257,7 @@ public final class StreamSubject extends Subject<StreamSubject, Stream<?>> {
    */
   // TODO(kak): Make this public once go/truth-stream-isinorder is decided
   private void isInOrder(Comparator<?> comparator) {
-    check().that(actualList).isOrdered(comparator);
+    check().that(actualList()).isOrdered(comparator);
   }
 
   // TODO(kak/cpovirk): Do we want to override + deprecate isEqualTo/isNotEqualTo?
@@ -19,9 +19,11 @@ import static com.google.common.truth.StreamSubject.streams;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
 import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.fail;
 
 import java.util.List;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -379,6 +381,43 @@ public final class StreamSubjectTest {
     }
   }
 
+  @Test
+  public void testContainsExactlyElementsIn_large() throws Exception {
+    List<Integer> expected = IntStream.range(0, 1000000).boxed().collect(toList());
+    assertThat(IntStream.range(0, 1000000).boxed())
+        .containsExactlyElementsIn(expected)
+        .inOrder();
+  }
+
+  @Test
+  public void testContainsExactlyElementsIn_large_fails() throws Exception {
+    List<Integer> expected =
+        IntStream.range(0, 1000000).map(i -> i == 500000 ? -1 : i).boxed().collect(toList());
+    try {
+      Truth.assert_()
+          .withRenderingBudget(40)
+          .about(streams())
+          .that(IntStream.range(0, 1000000).boxed())
+          .containsExactlyElementsIn(expected);
+      fail();
+    } catch (AssertionError e) {
+      assertThat(e)
+          .hasMessageThat()
+          .endsWith(
+              "contains exactly <[0, 1, 2, 3, 4, 5, 6, ... (999991 more) ..., 999998, 999999]>. "
+                  + "It is missing <[-1]> and has unexpected items <[500000]>");
+      assertThat(e)
+          .hasMessageThat()
+          .startsWith(
+              "Not true that <[0, 1, 2, 3, 4, 5, 6, ... (999991 more) ..., 999998, 999999]>");
+    }
+  }
+
+  @Test
+  public void testContainsAllOf_inOrder_infiniteStream() throws Exception {
+    assertThat(Stream.iterate(0, i -> i + 1)).containsAllOf(1, 10, 1000).inOrder();
+  }
+
   private static AssertionError expectFailure(
       ExpectFailure.SimpleSubjectBuilderCallback<StreamSubject, Stream<?>> assertionCallback) {
     return ExpectFailure.expectFailureAbout(streams(), assertionCallback);
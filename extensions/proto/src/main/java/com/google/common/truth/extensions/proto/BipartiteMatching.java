@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2018 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.truth.extensions.proto;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+
+/**
+ * Finds maximum cardinality matchings in bipartite graphs, for pairing up the elements of repeated
+ * fields compared ignoring order.
+ */
+final class BipartiteMatching {
+
+  /** The value used to indicate that a vertex is not in a matching. */
+  static final int UNMATCHED = -1;
+
+  /**
+   * Finds a maximum cardinality matching of a bipartite graph, starting from the given matching.
+   *
+   * <p>The LHS vertices are numbered from 0 to {@code adjacencyStarts.length - 2} and the RHS
+   * vertices from 0 to {@code rhsCount - 1}. The RHS vertices adjacent to each LHS vertex {@code
+   * lhs} are the entries of {@code adjacency} from index {@code adjacencyStarts[lhs]} (inclusive)
+   * to index {@code adjacencyStarts[lhs + 1]} (exclusive). The initial matching gives the RHS
+   * vertex matched to each LHS vertex, or {@link #UNMATCHED}, and must only use edges of the graph.
+   *
+   * <p>Returns the maximum matching in the same form as the initial one, which is not modified.
+   * The matching is grown by one augmenting path at a time, which takes {@code O(V E)} time in the
+   * worst case, but little more than {@code O(E)} when the initial matching is nearly maximum.
+   */
+  static int[] maximumCardinalityBipartiteMatching(
+      int rhsCount, int[] adjacencyStarts, int[] adjacency, int[] initialMatching) {
+    int lhsCount = adjacencyStarts.length - 1;
+    checkArgument(
+        initialMatching.length == lhsCount,
+        "initialMatching has %s vertices but the graph has %s",
+        initialMatching.length,
+        lhsCount);
+    int[] lhsMatches = initialMatching.clone();
+    int[] rhsMatches = new int[rhsCount];
+    Arrays.fill(rhsMatches, UNMATCHED);
+    for (int lhs = 0; lhs < lhsCount; lhs++) {
+      if (lhsMatches[lhs] != UNMATCHED) {
+        rhsMatches[lhsMatches[lhs]] = lhs;
+      }
+    }
+
+    // The search from each free LHS vertex is an iterative DFS, so that long augmenting paths
+    // cannot overflow the stack. Each RHS vertex is visited at most once per search, and every
+    // level of the path after the first is reached through a distinct matched RHS vertex.
+    int[] visitedInSearch = new int[rhsCount];
+    int[] pathLhs = new int[lhsCount];
+    int[] pathEdges = new int[lhsCount];
+    int search = 0;
+    for (int freeLhs = 0; freeLhs < lhsCount; freeLhs++) {
+      if (lhsMatches[freeLhs] != UNMATCHED) {
+        continue;
+      }
+      search++;
+      int depth = 0;
+      pathLhs[0] = freeLhs;
+      pathEdges[0] = adjacencyStarts[freeLhs];
+      while (depth >= 0) {
+        int lhs = pathLhs[depth];
+        if (pathEdges[depth] == adjacencyStarts[lhs + 1]) {
+          depth--;
+          continue;
+        }
+        int rhs = adjacency[pathEdges[depth]++];
+        if (visitedInSearch[rhs] == search) {
+          continue;
+        }
+        visitedInSearch[rhs] = search;
+        int nextLhs = rhsMatches[rhs];
+        if (nextLhs == UNMATCHED) {
+          // Found an augmenting path: match each LHS vertex on it to the RHS vertex it led to.
+          for (; depth >= 0; depth--) {
+            int pathRhs = adjacency[pathEdges[depth] - 1];
+            lhsMatches[pathLhs[depth]] = pathRhs;
+            rhsMatches[pathRhs] = pathLhs[depth];
+          }
+          break;
+        }
+        depth++;
+        pathLhs[depth] = nextLhs;
+        pathEdges[depth] = adjacencyStarts[nextLhs];
+      }
+    }
+    return lhsMatches;
+  }
+
+  private BipartiteMatching() {}
+}
@@ -30,6 +30,9 @@ import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.Descriptors.FieldDescriptor.JavaType;
 import com.google.protobuf.Message;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.checkerframework.checker.nullness.compatqual.NullableDecl;
 
 /**
  * Implementations of all variations of {@link FieldScope} logic.
@@ -42,6 +45,10 @@ import java.util.List;
  *   <li>Compound subtypes, which combine one or more {@code FieldScopeLogic}s with specific
  *       operations.
  * </ul>
+ *
+ * <p>Logics built from the same field numbers, field descriptors and operations are equal, so that
+ * configs built by the same fluent calls can share their message differencers. Logics built from
+ * messages, such as {@link FieldScopes#fromSetFields(Message)}, are equal only to themselves.
  */
 abstract class FieldScopeLogic {
 
@@ -70,6 +77,16 @@ abstract class FieldScopeLogic {
     return true;
   }
 
+  /**
+   * Returns whether this logic is equal only to itself, because it was built from messages.
+   *
+   * <p>Set to return false by default. Used to keep configs with such logics out of caches shared
+   * across assertions, since they would never be hit.
+   */
+  boolean comparesByIdentity() {
+    return false;
+  }
+
   /**
    * Returns an accurate description for debugging purposes.
    *
@@ -199,6 +216,11 @@ abstract class FieldScopeLogic {
       return fieldNumberTree.isEmpty();
     }
 
+    @Override
+    final boolean comparesByIdentity() {
+      return true;
+    }
+
     private static PartialScopeLogic newPartialScopeLogic(FieldNumberTree fieldNumberTree) {
       return fieldNumberTree.isEmpty() ? EMPTY : new PartialScopeLogic(fieldNumberTree);
     }
@@ -320,6 +342,17 @@ abstract class FieldScopeLogic {
           && fieldNumbers.contains(fieldDescriptor.getNumber());
     }
 
+    @Override
+    public boolean equals(@NullableDecl Object o) {
+      return o instanceof FieldNumbersLogic
+          && fieldNumbers.equals(((FieldNumbersLogic) o).fieldNumbers);
+    }
+
+    @Override
+    public int hashCode() {
+      return fieldNumbers.hashCode();
+    }
+
     @Override
     public String toString() {
       return String.format("FieldScopes.allowingFields(%s)", join(fieldNumbers));
@@ -339,6 +372,17 @@ abstract class FieldScopeLogic {
       return fieldDescriptors.contains(fieldDescriptor);
     }
 
+    @Override
+    public boolean equals(@NullableDecl Object o) {
+      return o instanceof FieldDescriptorsLogic
+          && fieldDescriptors.equals(((FieldDescriptorsLogic) o).fieldDescriptors);
+    }
+
+    @Override
+    public int hashCode() {
+      return fieldDescriptors.hashCode();
+    }
+
     @Override
     public String toString() {
       return String.format("FieldScopes.allowingFieldDescriptors(%s)", join(fieldDescriptors));
@@ -353,15 +397,23 @@ abstract class FieldScopeLogic {
       extends FieldScopeLogic {
     final ImmutableList<FieldScopeLogic> elements;
     final boolean isRecursive;
+    final boolean comparesByIdentity;
+
+    // Computed eagerly, since logics are immutable and compared as cache keys.
+    private final int hashCode;
 
     CompoundFieldScopeLogic(FieldScopeLogic singleElem) {
       this.elements = ImmutableList.of(singleElem);
       this.isRecursive = areAllRecursive(elements);
+      this.comparesByIdentity = anyComparesByIdentity(elements);
+      this.hashCode = 31 * getClass().hashCode() + elements.hashCode();
     }
 
     CompoundFieldScopeLogic(FieldScopeLogic firstElem, FieldScopeLogic secondElem) {
       this.elements = ImmutableList.of(firstElem, secondElem);
       this.isRecursive = areAllRecursive(elements);
+      this.comparesByIdentity = anyComparesByIdentity(elements);
+      this.hashCode = 31 * getClass().hashCode() + elements.hashCode();
     }
 
     private static boolean areAllRecursive(ImmutableList<FieldScopeLogic> elements) {
@@ -373,6 +425,15 @@ abstract class FieldScopeLogic {
       return true;
     }
 
+    private static boolean anyComparesByIdentity(ImmutableList<FieldScopeLogic> elements) {
+      for (FieldScopeLogic elem : elements) {
+        if (elem.comparesByIdentity()) {
+          return true;
+        }
+      }
+      return false;
+    }
+
     @Override
     final void validate(Descriptor descriptor) {
       for (FieldScopeLogic elem : elements) {
@@ -402,6 +463,28 @@ abstract class FieldScopeLogic {
     final boolean isRecursive() {
       return isRecursive;
     }
+
+    @Override
+    final boolean comparesByIdentity() {
+      return comparesByIdentity;
+    }
+
+    @Override
+    public final boolean equals(@NullableDecl Object o) {
+      if (o == this) {
+        return true;
+      }
+      if (o == null || o.getClass() != getClass()) {
+        return false;
+      }
+      CompoundFieldScopeLogic<?> that = (CompoundFieldScopeLogic<?>) o;
+      return hashCode == that.hashCode && elements.equals(that.elements);
+    }
+
+    @Override
+    public final int hashCode() {
+      return hashCode;
+    }
   }
 
   private static final class IntersectionFieldScopeLogic
@@ -513,6 +596,182 @@ abstract class FieldScopeLogic {
     }
   }
 
+  //////////////////////////////////////////////////////////////////////////////////////////////////
+  // COMPILED LOGIC
+  //////////////////////////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Returns a logic with the same behavior as {@code fieldScopeLogic} for messages of type {@code
+   * rootDescriptor}, which remembers its decisions instead of re-evaluating them for every message.
+   */
+  static FieldScopeLogic compile(FieldScopeLogic fieldScopeLogic, Descriptor rootDescriptor) {
+    return new CompiledFieldScopeLogic(fieldScopeLogic, rootDescriptor);
+  }
+
+  /**
+   * A node of the decision automaton for a logic and a root descriptor. Each node wraps the logic
+   * for one message type, and has a table, indexed by {@link FieldDescriptor#getIndex()}, with the
+   * decision and the child node for each field of that type. The table is filled in as fields are
+   * first seen, so the automaton only covers the parts of the message tree that are compared. The
+   * nodes of an automaton are shared by logic and message type, so recursive message types, even
+   * mutually recursive ones, reuse the nodes already built rather than growing the automaton at each
+   * level of nesting.
+   *
+   * <p>Fields of other types, such as extensions and the values of map entries, are passed through
+   * to the wrapped logic. The table may be filled in by several threads at once, which is harmless,
+   * since they compute the same entries, and the entries are immutable.
+   */
+  private static final class CompiledFieldScopeLogic extends FieldScopeLogic {
+    private final FieldScopeLogic logic;
+    private final Descriptor rootDescriptor;
+    @NullableDecl private final Descriptor descriptor;
+    private final Entry[] entries;
+
+    /** The nodes of the automaton for each logic and message type, shared by all of them. */
+    private final ConcurrentMap<NodeKey, CompiledFieldScopeLogic> nodes;
+
+    private static final class Entry {
+      final ShouldIgnore shouldIgnore;
+      final FieldScopeLogic subLogic;
+
+      Entry(ShouldIgnore shouldIgnore, FieldScopeLogic subLogic) {
+        this.shouldIgnore = shouldIgnore;
+        this.subLogic = subLogic;
+      }
+    }
+
+    private static final class NodeKey {
+      final FieldScopeLogic logic;
+      final Descriptor descriptor;
+
+      NodeKey(FieldScopeLogic logic, Descriptor descriptor) {
+        this.logic = logic;
+        this.descriptor = descriptor;
+      }
+
+      @Override
+      public boolean equals(@NullableDecl Object o) {
+        return o instanceof NodeKey
+            && logic.equals(((NodeKey) o).logic)
+            && descriptor == ((NodeKey) o).descriptor;
+      }
+
+      @Override
+      public int hashCode() {
+        return 31 * logic.hashCode() + descriptor.hashCode();
+      }
+    }
+
+    private CompiledFieldScopeLogic(
+        FieldScopeLogic logic,
+        Descriptor rootDescriptor,
+        @NullableDecl Descriptor descriptor,
+        ConcurrentMap<NodeKey, CompiledFieldScopeLogic> nodes) {
+      this.logic = logic;
+      this.rootDescriptor = rootDescriptor;
+      this.descriptor = descriptor;
+      this.entries = new Entry[descriptor == null ? 0 : descriptor.getFields().size()];
+      this.nodes = nodes;
+    }
+
+    CompiledFieldScopeLogic(FieldScopeLogic logic, Descriptor rootDescriptor) {
+      this(
+          logic,
+          rootDescriptor,
+          rootDescriptor,
+          new ConcurrentHashMap<NodeKey, CompiledFieldScopeLogic>());
+      nodes.put(new NodeKey(logic, rootDescriptor), this);
+    }
+
+    @Override
+    ShouldIgnore shouldIgnore(
+        Descriptor rootDescriptor, FieldDescriptorOrUnknown fieldDescriptorOrUnknown) {
+      @NullableDecl Entry entry = entry(rootDescriptor, fieldDescriptorOrUnknown);
+      return entry != null
+          ? entry.shouldIgnore
+          : logic.shouldIgnore(rootDescriptor, fieldDescriptorOrUnknown);
+    }
+
+    @Override
+    FieldScopeLogic subLogic(
+        Descriptor rootDescriptor, FieldDescriptorOrUnknown fieldDescriptorOrUnknown) {
+      @NullableDecl Entry entry = entry(rootDescriptor, fieldDescriptorOrUnknown);
+      return entry != null
+          ? entry.subLogic
+          : logic.subLogic(rootDescriptor, fieldDescriptorOrUnknown);
+    }
+
+    /** Returns the table entry for the given field, or null if it has none. */
+    @NullableDecl
+    private Entry entry(
+        Descriptor rootDescriptor, FieldDescriptorOrUnknown fieldDescriptorOrUnknown) {
+      if (rootDescriptor != this.rootDescriptor
+          || !fieldDescriptorOrUnknown.fieldDescriptor().isPresent()) {
+        return null;
+      }
+      FieldDescriptor fieldDescriptor = fieldDescriptorOrUnknown.fieldDescriptor().get();
+      if (fieldDescriptor.isExtension() || fieldDescriptor.getContainingType() != descriptor) {
+        return null;
+      }
+      int index = fieldDescriptor.getIndex();
+      Entry entry = entries[index];
+      if (entry == null) {
+        FieldScopeLogic subLogic = logic.subLogic(rootDescriptor, fieldDescriptorOrUnknown);
+        @NullableDecl
+        Descriptor subDescriptor =
+            fieldDescriptor.getJavaType() == JavaType.MESSAGE
+                ? fieldDescriptor.getMessageType()
+                : null;
+        entry =
+            new Entry(
+                logic.shouldIgnore(rootDescriptor, fieldDescriptorOrUnknown),
+                node(subLogic, subDescriptor));
+        entries[index] = entry;
+      }
+      return entry;
+    }
+
+    /** Returns the node for the given logic and message type, building it if necessary. */
+    private CompiledFieldScopeLogic node(
+        FieldScopeLogic subLogic, @NullableDecl Descriptor subDescriptor) {
+      if (subDescriptor == null) {
+        // The node for a field of a primitive type has no table, so there's nothing to share.
+        return new CompiledFieldScopeLogic(subLogic, rootDescriptor, null, nodes);
+      }
+      NodeKey key = new NodeKey(subLogic, subDescriptor);
+      @NullableDecl CompiledFieldScopeLogic node = nodes.get(key);
+      if (node == null) {
+        CompiledFieldScopeLogic newNode =
+            new CompiledFieldScopeLogic(subLogic, rootDescriptor, subDescriptor, nodes);
+        node = nodes.putIfAbsent(key, newNode);
+        if (node == null) {
+          node = newNode;
+        }
+      }
+      return node;
+    }
+
+    @Override
+    boolean isRecursive() {
+      return false;
+    }
+
+    @Override
+    boolean comparesByIdentity() {
+      return logic.comparesByIdentity();
+    }
+
+    @Override
+    void validate(Descriptor descriptor) {
+      logic.validate(descriptor);
+    }
+
+    @Override
+    public String toString() {
+      return logic.toString();
+    }
+  }
+
   static FieldScopeLogic and(FieldScopeLogic fieldScopeLogic1, FieldScopeLogic fieldScopeLogic2) {
     return new IntersectionFieldScopeLogic(fieldScopeLogic1, fieldScopeLogic2);
   }
@@ -20,13 +20,17 @@ import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.truth.extensions.proto.FieldScopeUtil.join;
 
 import com.google.auto.value.AutoValue;
+import com.google.auto.value.extension.memoized.Memoized;
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.truth.Correspondence;
 import com.google.errorprone.annotations.CanIgnoreReturnValue;
 import com.google.protobuf.Descriptors.Descriptor;
@@ -59,15 +63,36 @@ abstract class FluentEqualityConfig {
     return DEFAULT_INSTANCE;
   }
 
-  private final LoadingCache<Descriptor, ProtoTruthMessageDifferencer> messageDifferencers =
-      CacheBuilder.newBuilder()
-          .build(
-              new CacheLoader<Descriptor, ProtoTruthMessageDifferencer>() {
-                @Override
-                public ProtoTruthMessageDifferencer load(Descriptor descriptor) {
-                  return ProtoTruthMessageDifferencer.create(FluentEqualityConfig.this, descriptor);
-                }
-              });
+  // Every fluent call creates a new config, so differencers are shared across configs, and across
+  // assertions, by keying them on the comparison config (see comparisonConfig()) rather than on the
+  // config itself. The cache is bounded, since the keys hold on to descriptors and field scopes.
+  // Configs whose field scope is built from messages never share a differencer, so they are kept
+  // out of this cache (see messageDifferencers()).
+  private static final LoadingCache<DifferencerKey, ProtoTruthMessageDifferencer>
+      MESSAGE_DIFFERENCERS =
+          CacheBuilder.newBuilder()
+              .maximumSize(1000)
+              .build(
+                  new CacheLoader<DifferencerKey, ProtoTruthMessageDifferencer>() {
+                    @Override
+                    public ProtoTruthMessageDifferencer load(DifferencerKey key) {
+                      return ProtoTruthMessageDifferencer.create(key.config(), key.descriptor());
+                    }
+                  });
+
+  private static final Interner<FluentEqualityConfig> COMPARISON_CONFIGS =
+      Interners.newWeakInterner();
+
+  @AutoValue
+  abstract static class DifferencerKey {
+    abstract FluentEqualityConfig config();
+
+    abstract Descriptor descriptor();
+
+    static DifferencerKey create(FluentEqualityConfig config, Descriptor descriptor) {
+      return new AutoValue_FluentEqualityConfig_DifferencerKey(config, descriptor);
+    }
+  }
 
   //////////////////////////////////////////////////////////////////////////////////////////////////
   // Storage of AbstractProtoFluentEquals configuration data.
@@ -79,9 +104,9 @@ abstract class FluentEqualityConfig {
 
   abstract boolean ignoreExtraRepeatedFieldElements();
 
-  abstract Optional<Correspondence<Number, Number>> doubleCorrespondence();
+  abstract Optional<Double> doubleTolerance();
 
-  abstract Optional<Correspondence<Number, Number>> floatCorrespondence();
+  abstract Optional<Float> floatTolerance();
 
   abstract boolean compareExpectedFieldsOnly();
 
@@ -131,14 +156,14 @@ abstract class FluentEqualityConfig {
 
   final FluentEqualityConfig usingDoubleTolerance(double tolerance) {
     return toBuilder()
-        .setDoubleCorrespondence(Correspondence.tolerance(tolerance))
+        .setDoubleTolerance(tolerance)
         .addUsingCorrespondenceString(".usingDoubleTolerance(" + tolerance + ")")
         .build();
   }
 
   final FluentEqualityConfig usingFloatTolerance(float tolerance) {
     return toBuilder()
-        .setFloatCorrespondence(Correspondence.tolerance(tolerance))
+        .setFloatTolerance(tolerance)
         .addUsingCorrespondenceString(".usingFloatTolerance(" + tolerance + ")")
         .build();
   }
@@ -208,18 +233,76 @@ abstract class FluentEqualityConfig {
 
   final ProtoTruthMessageDifferencer toMessageDifferencer(Descriptor descriptor) {
     checkState(expectedMessages().isPresent(), "expectedMessages() not set");
-    return messageDifferencers.getUnchecked(descriptor);
+    if (fieldScopeLogic().comparesByIdentity()) {
+      return messageDifferencers().getUnchecked(descriptor);
+    }
+    return MESSAGE_DIFFERENCERS.getUnchecked(DifferencerKey.create(comparisonConfig(), descriptor));
+  }
+
+  /**
+   * Returns the differencers for this config alone, for configs whose field scope logic is equal
+   * only to itself, such as those built by {@link FieldScopes#fromSetFields} or {@link
+   * #comparingExpectedFieldsOnly}. Such a config would always miss the shared cache, and would
+   * push out reusable entries and keep its expected messages alive. These differencers instead
+   * live only as long as the config.
+   */
+  @Memoized
+  LoadingCache<Descriptor, ProtoTruthMessageDifferencer> messageDifferencers() {
+    return CacheBuilder.newBuilder()
+        .build(
+            new CacheLoader<Descriptor, ProtoTruthMessageDifferencer>() {
+              @Override
+              public ProtoTruthMessageDifferencer load(Descriptor descriptor) {
+                return ProtoTruthMessageDifferencer.create(FluentEqualityConfig.this, descriptor);
+              }
+            });
+  }
+
+  /**
+   * Returns the canonical instance of this config with the properties that don't affect comparison
+   * cleared: the expected messages (which have already narrowed the field scope, if they need to)
+   * and the reporting options. Configs built by the same chain of fluent calls thus share a
+   * comparison config, even if they were built for different assertions.
+   */
+  @Memoized
+  FluentEqualityConfig comparisonConfig() {
+    return COMPARISON_CONFIGS.intern(
+        toBuilder()
+            .setExpectedMessages(ImmutableList.<Message>of())
+            .setReportMismatchesOnly(false)
+            .setUsingCorrespondenceStringFunction(Functions.constant(""))
+            .build());
   }
 
   final <M extends Message> Correspondence<M, M> toCorrespondence(
       final Optional<Descriptor> optDescriptor) {
     checkState(expectedMessages().isPresent(), "expectedMessages() not set");
+    // compare() is called for every pair of elements, so rather than creating a ProtoSubject per
+    // pair, it shares the differencers: this config's own, or, if only the fields set in each
+    // expected message are compared, one config per expected message. Each of those configs holds
+    // on to its expected message, so the configs live as long as the Correspondence does.
+    final LoadingCache<Message, FluentEqualityConfig> singleExpectedConfigs =
+        CacheBuilder.newBuilder()
+            .build(
+                new CacheLoader<Message, FluentEqualityConfig>() {
+                  @Override
+                  public FluentEqualityConfig load(Message expected) {
+                    return withExpectedMessages(ImmutableList.of(expected));
+                  }
+                });
     return new Correspondence<M, M>() {
       @Override
       public final boolean compare(@NullableDecl M actual, @NullableDecl M expected) {
-        return ProtoTruth.assertThat(actual)
-            .usingConfig(FluentEqualityConfig.this)
-            .testIsEqualTo(expected);
+        if (actual == null
+            || expected == null
+            || actual.getDescriptorForType() != expected.getDescriptorForType()) {
+          return Objects.equal(actual, expected);
+        }
+        FluentEqualityConfig config =
+            compareExpectedFieldsOnly()
+                ? singleExpectedConfigs.getUnchecked(expected)
+                : FluentEqualityConfig.this;
+        return config.toMessageDifferencer(actual.getDescriptorForType()).matches(actual, expected);
       }
 
       @Override
@@ -258,9 +341,9 @@ abstract class FluentEqualityConfig {
 
     abstract Builder setIgnoreExtraRepeatedFieldElements(boolean ignoreExtraRepeatedFieldElements);
 
-    abstract Builder setDoubleCorrespondence(Correspondence<Number, Number> doubleCorrespondence);
+    abstract Builder setDoubleTolerance(Double doubleTolerance);
 
-    abstract Builder setFloatCorrespondence(Correspondence<Number, Number> floatCorrespondence);
+    abstract Builder setFloatTolerance(Float floatTolerance);
 
     abstract Builder setCompareExpectedFieldsOnly(boolean compare);
 
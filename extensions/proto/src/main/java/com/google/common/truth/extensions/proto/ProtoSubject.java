@@ -153,9 +153,9 @@ public class ProtoSubject<S extends ProtoSubject<S, M>, M extends Message>
     if (notMessagesWithSameDescriptor(actual(), expected)) {
       super.isEqualTo(expected);
     } else {
-      DiffResult diffResult =
-          makeDifferencer((Message) expected).diffMessages(actual(), (Message) expected);
-      if (!diffResult.isMatched()) {
+      ProtoTruthMessageDifferencer differencer = makeDifferencer((Message) expected);
+      if (!differencer.matches(actual(), (Message) expected)) {
+        DiffResult diffResult = differencer.diffMessages(actual(), (Message) expected);
         failWithRawMessage(
             failureMessage(/* expectedEqual = */ true)
                 + "\n"
@@ -172,9 +172,7 @@ public class ProtoSubject<S extends ProtoSubject<S, M>, M extends Message>
     if (notMessagesWithSameDescriptor(actual(), expected)) {
       return Objects.equal(actual(), expected);
     } else {
-      return makeDifferencer((Message) expected)
-          .diffMessages(actual(), (Message) expected)
-          .isMatched();
+      return makeDifferencer((Message) expected).matches(actual(), (Message) expected);
     }
   }
 
@@ -183,9 +181,9 @@ public class ProtoSubject<S extends ProtoSubject<S, M>, M extends Message>
     if (notMessagesWithSameDescriptor(actual(), expected)) {
       super.isNotEqualTo(expected);
     } else {
-      DiffResult diffResult =
-          makeDifferencer((Message) expected).diffMessages(actual(), (Message) expected);
-      if (diffResult.isMatched()) {
+      ProtoTruthMessageDifferencer differencer = makeDifferencer((Message) expected);
+      if (differencer.matches(actual(), (Message) expected)) {
+        DiffResult diffResult = differencer.diffMessages(actual(), (Message) expected);
         failWithRawMessage(
             failureMessage(/* expectedEqual= */ false)
                 + "\n"
@@ -22,10 +22,12 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.base.Objects;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.truth.Correspondence;
 import com.google.common.truth.extensions.proto.DiffResult.RepeatedField;
 import com.google.common.truth.extensions.proto.DiffResult.SingularField;
 import com.google.common.truth.extensions.proto.DiffResult.UnknownFieldSetDiff;
@@ -38,10 +40,10 @@ import com.google.protobuf.TextFormat;
 import com.google.protobuf.UnknownFieldSet;
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -123,12 +125,25 @@ final class ProtoTruthMessageDifferencer {
 
   private final FluentEqualityConfig config;
   private final Descriptor rootDescriptor;
+  private final FieldScopeLogic fieldScopeLogic;
+  private final Optional<Correspondence<Number, Number>> doubleCorrespondence;
+  private final Optional<Correspondence<Number, Number>> floatCorrespondence;
 
   private ProtoTruthMessageDifferencer(FluentEqualityConfig config, Descriptor descriptor) {
     config.fieldScopeLogic().validate(descriptor);
 
     this.config = config;
     this.rootDescriptor = descriptor;
+    this.fieldScopeLogic = FieldScopeLogic.compile(config.fieldScopeLogic(), descriptor);
+    this.doubleCorrespondence = toleranceCorrespondence(config.doubleTolerance());
+    this.floatCorrespondence = toleranceCorrespondence(config.floatTolerance());
+  }
+
+  private static Optional<Correspondence<Number, Number>> toleranceCorrespondence(
+      Optional<? extends Number> tolerance) {
+    return tolerance.isPresent()
+        ? Optional.of(Correspondence.tolerance(tolerance.get().doubleValue()))
+        : Optional.<Correspondence<Number, Number>>absent();
   }
 
   /** Create a new {@link ProtoTruthMessageDifferencer} for the given config and descriptor. */
@@ -146,7 +161,25 @@ final class ProtoTruthMessageDifferencer {
         actual.getDescriptorForType(),
         expected.getDescriptorForType());
 
-    return diffMessages(actual, expected, config.fieldScopeLogic());
+    return diffMessages(actual, expected, fieldScopeLogic);
+  }
+
+  /**
+   * Returns whether the two non-null messages match, as {@code diffMessages(actual,
+   * expected).isMatched()} would, but without building a {@link DiffResult}. The comparison stops
+   * at the first mismatch, so this is the cheaper choice when no report is needed.
+   */
+  boolean matches(Message actual, Message expected) {
+    checkNotNull(actual);
+    checkNotNull(expected);
+    checkArgument(
+        actual.getDescriptorForType() == expected.getDescriptorForType(),
+        "The actual [%s] and expected [%s] message descriptors do not match.",
+        actual.getDescriptorForType(),
+        expected.getDescriptorForType());
+
+    return matchMessages(actual, expected, fieldScopeLogic, MatchState.MISMATCHED)
+        != MatchState.MISMATCHED;
   }
 
   private DiffResult diffMessages(
@@ -327,28 +360,29 @@ final class ProtoTruthMessageDifferencer {
             .setActual(actualList)
             .setExpected(expectedList);
 
-    // TODO(user): Use maximum bipartite matching here, instead of greedy matching.
-    Set<Integer> unmatchedActual = setForRange(actualList.size());
-    Set<Integer> unmatchedExpected = setForRange(expectedList.size());
+    int[] pairs =
+        pairElementsIgnoringOrder(
+            actualList, expectedList, shouldMaybeIgnore, fieldDescriptor, fieldScopeLogic);
+    boolean[] expectedMatched = new boolean[expectedList.size()];
     for (int i = 0; i < actualList.size(); i++) {
-      Object actual = actualList.get(i);
-      for (int j : unmatchedExpected) {
-        Object expected = expectedList.get(j);
-        RepeatedField.PairResult pairResult =
-            compareRepeatedFieldElementPair(
-                actual, expected, shouldMaybeIgnore, fieldDescriptor, i, j, fieldScopeLogic);
-        if (pairResult.isMatched()) {
-          // Found a match - remove both these elements from the candidate pools.
-          builder.addPairResult(pairResult);
-          unmatchedActual.remove(i);
-          unmatchedExpected.remove(j);
-          break;
-        }
+      int j = pairs[i];
+      if (j == BipartiteMatching.UNMATCHED) {
+        continue;
       }
+      builder.addPairResult(
+          compareRepeatedFieldElementPair(
+              actualList.get(i),
+              expectedList.get(j),
+              shouldMaybeIgnore,
+              fieldDescriptor,
+              i,
+              j,
+              fieldScopeLogic));
+      expectedMatched[j] = true;
     }
 
     // Record remaining unmatched elements.
-    for (int i : unmatchedActual) {
+    for (int i : unpairedIndices(pairs)) {
       if (config.ignoreExtraRepeatedFieldElements() && !expectedList.isEmpty()) {
         builder.addPairResult(
             RepeatedField.PairResult.newBuilder()
@@ -369,7 +403,7 @@ final class ProtoTruthMessageDifferencer {
                 fieldScopeLogic));
       }
     }
-    for (int j : unmatchedExpected) {
+    for (int j : unpairedIndices(expectedMatched)) {
       builder.addPairResult(
           compareRepeatedFieldElementPair(
               /*actual=*/ null,
@@ -384,6 +418,161 @@ final class ProtoTruthMessageDifferencer {
     return builder.build();
   }
 
+  /**
+   * Pairs up the elements of a repeated field compared ignoring order, such that each pair matches
+   * and there are as many pairs as possible. Returns the index of the expected element paired with
+   * each actual element, or {@link BipartiteMatching#UNMATCHED}.
+   *
+   * <p>Unless there are float or double tolerances, equal elements always match, and matching is
+   * transitive, so pairing up equal elements first costs no pairs. That's done by hashing, which
+   * leaves nothing else to pair for primitives. The remaining messages are paired greedily, which
+   * usually pairs up every element on one side or the other, and so can't be improved on. If not,
+   * a maximum matching is found among them.
+   */
+  private int[] pairElementsIgnoringOrder(
+      List<?> actualList,
+      List<?> expectedList,
+      boolean shouldMaybeIgnore,
+      FieldDescriptor fieldDescriptor,
+      FieldScopeLogic fieldScopeLogic) {
+    int[] pairs = new int[actualList.size()];
+    Arrays.fill(pairs, BipartiteMatching.UNMATCHED);
+    boolean[] expectedPaired = new boolean[expectedList.size()];
+
+    if (!doubleCorrespondence.isPresent() && !floatCorrespondence.isPresent()) {
+      Map<Object, Deque<Integer>> expectedIndicesByElement =
+          Maps.newHashMapWithExpectedSize(expectedList.size());
+      for (int j = 0; j < expectedList.size(); j++) {
+        Deque<Integer> indices = expectedIndicesByElement.get(expectedList.get(j));
+        if (indices == null) {
+          indices = new ArrayDeque<>();
+          expectedIndicesByElement.put(expectedList.get(j), indices);
+        }
+        indices.addLast(j);
+      }
+      for (int i = 0; i < actualList.size(); i++) {
+        @NullableDecl Deque<Integer> indices = expectedIndicesByElement.get(actualList.get(i));
+        if (indices != null && !indices.isEmpty()) {
+          pairs[i] = indices.removeFirst();
+          expectedPaired[pairs[i]] = true;
+        }
+      }
+      if (fieldDescriptor.getJavaType() != JavaType.MESSAGE) {
+        return pairs;
+      }
+    }
+
+    int[] residualActual = unpairedIndices(pairs);
+    int[] residualExpected = unpairedIndices(expectedPaired);
+    int[] residualPairs = new int[residualActual.length];
+    Arrays.fill(residualPairs, BipartiteMatching.UNMATCHED);
+    boolean[] residualExpectedPaired = new boolean[residualExpected.length];
+    int residualPairCount = 0;
+    for (int a = 0; a < residualActual.length; a++) {
+      for (int b = 0; b < residualExpected.length; b++) {
+        if (!residualExpectedPaired[b]
+            && elementsMatch(
+                actualList.get(residualActual[a]),
+                expectedList.get(residualExpected[b]),
+                shouldMaybeIgnore,
+                fieldDescriptor,
+                fieldScopeLogic)) {
+          residualPairs[a] = b;
+          residualExpectedPaired[b] = true;
+          residualPairCount++;
+          break;
+        }
+      }
+    }
+
+    if (residualPairCount < Math.min(residualActual.length, residualExpected.length)) {
+      int[] adjacencyStarts = new int[residualActual.length + 1];
+      int[] adjacency = new int[residualActual.length];
+      int edgeCount = 0;
+      for (int a = 0; a < residualActual.length; a++) {
+        adjacencyStarts[a] = edgeCount;
+        for (int b = 0; b < residualExpected.length; b++) {
+          if (b == residualPairs[a]
+              || elementsMatch(
+                  actualList.get(residualActual[a]),
+                  expectedList.get(residualExpected[b]),
+                  shouldMaybeIgnore,
+                  fieldDescriptor,
+                  fieldScopeLogic)) {
+            if (edgeCount == adjacency.length) {
+              adjacency = Arrays.copyOf(adjacency, 2 * edgeCount);
+            }
+            adjacency[edgeCount++] = b;
+          }
+        }
+      }
+      adjacencyStarts[residualActual.length] = edgeCount;
+      residualPairs =
+          BipartiteMatching.maximumCardinalityBipartiteMatching(
+              residualExpected.length, adjacencyStarts, adjacency, residualPairs);
+    }
+
+    for (int a = 0; a < residualActual.length; a++) {
+      if (residualPairs[a] != BipartiteMatching.UNMATCHED) {
+        pairs[residualActual[a]] = residualExpected[residualPairs[a]];
+      }
+    }
+    return pairs;
+  }
+
+  private boolean elementsMatch(
+      Object actual,
+      Object expected,
+      boolean shouldMaybeIgnore,
+      FieldDescriptor fieldDescriptor,
+      FieldScopeLogic fieldScopeLogic) {
+    return matchSingularValue(
+            actual,
+            expected,
+            /*defaultValue=*/ null,
+            shouldMaybeIgnore,
+            fieldDescriptor,
+            fieldScopeLogic,
+            MatchState.MISMATCHED)
+        != MatchState.MISMATCHED;
+  }
+
+  /** Returns the indices of the elements of {@code pairs} which are unmatched, in order. */
+  private static int[] unpairedIndices(int[] pairs) {
+    int count = 0;
+    for (int pair : pairs) {
+      if (pair == BipartiteMatching.UNMATCHED) {
+        count++;
+      }
+    }
+    int[] indices = new int[count];
+    count = 0;
+    for (int i = 0; i < pairs.length; i++) {
+      if (pairs[i] == BipartiteMatching.UNMATCHED) {
+        indices[count++] = i;
+      }
+    }
+    return indices;
+  }
+
+  /** Returns the indices of the elements of {@code paired} which are false, in order. */
+  private static int[] unpairedIndices(boolean[] paired) {
+    int count = 0;
+    for (boolean isPaired : paired) {
+      if (!isPaired) {
+        count++;
+      }
+    }
+    int[] indices = new int[count];
+    count = 0;
+    for (int i = 0; i < paired.length; i++) {
+      if (!paired[i]) {
+        indices[count++] = i;
+      }
+    }
+    return indices;
+  }
+
   private RepeatedField compareRepeatedFieldExpectingSubsequence(
       List<?> actualList,
       List<?> expectedList,
@@ -539,15 +728,6 @@ final class ProtoTruthMessageDifferencer {
     return pairResultBuilder.build();
   }
 
-  /** Returns a {@link LinkedHashSet} containing the integers in {@code [0, max)}, in order. */
-  private static Set<Integer> setForRange(int max) {
-    Set<Integer> set = Sets.newLinkedHashSet();
-    for (int i = 0; i < max; i++) {
-      set.add(i);
-    }
-    return set;
-  }
-
   /**
    * Compares {@code actualList} and {@code expectedList}, two submessages corresponding to {@code
    * fieldDescriptor}. Uses {@code shouldMaybeIgnore}, {@code parentFieldPath}, and {@code
@@ -710,16 +890,16 @@ final class ProtoTruthMessageDifferencer {
   }
 
   private boolean doublesEqual(double x, double y) {
-    if (config.doubleCorrespondence().isPresent()) {
-      return config.doubleCorrespondence().get().compare(x, y);
+    if (doubleCorrespondence.isPresent()) {
+      return doubleCorrespondence.get().compare(x, y);
     } else {
       return Double.compare(x, y) == 0;
     }
   }
 
   private boolean floatsEqual(float x, float y) {
-    if (config.floatCorrespondence().isPresent()) {
-      return config.floatCorrespondence().get().compare(x, y);
+    if (floatCorrespondence.isPresent()) {
+      return floatCorrespondence.get().compare(x, y);
     } else {
       return Float.compare(x, y) == 0;
     }
@@ -886,6 +1066,510 @@ final class ProtoTruthMessageDifferencer {
     return singularFieldBuilder.build();
   }
 
+  /**
+   * The outcome of comparing two values without building a {@link DiffResult}. Each state
+   * corresponds to the {@link RecursableDiffEntity} properties of the entity that {@link
+   * #diffMessages} would build: {@code IGNORED} if it would be ignored (and thus matched), {@code
+   * MATCHED} if it would be matched but not ignored, and {@code MISMATCHED} otherwise.
+   *
+   * <p>An entity without a result code is ignored if all its children are, and matched if all its
+   * children are, so its state is the greatest state of its children, or {@code IGNORED} if it has
+   * none.
+   *
+   * <p>The {@code match*} methods take a {@code ceiling}: once they find that the state is at least
+   * the ceiling, they stop comparing and return a state that is at least the ceiling, without
+   * necessarily being exact. Callers that only need to know whether a value is ignored pass {@code
+   * MATCHED}.
+   */
+  private enum MatchState {
+    IGNORED,
+    MATCHED,
+    MISMATCHED;
+
+    MatchState and(MatchState other) {
+      return compareTo(other) >= 0 ? this : other;
+    }
+
+    boolean isAtLeast(MatchState other) {
+      return compareTo(other) >= 0;
+    }
+  }
+
+  /** The equivalent of {@link #diffMessages(Message, Message, FieldScopeLogic)}. */
+  private MatchState matchMessages(
+      Message actual, Message expected, FieldScopeLogic fieldScopeLogic, MatchState ceiling) {
+    MatchState state = MatchState.IGNORED;
+
+    // Compare known fields.
+    Map<FieldDescriptor, Object> actualFields = actual.getAllFields();
+    Map<FieldDescriptor, Object> expectedFields = expected.getAllFields();
+    for (FieldDescriptor fieldDescriptor :
+        Sets.union(actualFields.keySet(), expectedFields.keySet())) {
+      FieldDescriptorOrUnknown fieldDescriptorOrUnknown =
+          FieldDescriptorOrUnknown.fromFieldDescriptor(fieldDescriptor);
+      ShouldIgnore shouldIgnore =
+          fieldScopeLogic.shouldIgnore(rootDescriptor, fieldDescriptorOrUnknown);
+      if (shouldIgnore == ShouldIgnore.YES) {
+        continue;
+      }
+
+      MatchState fieldState;
+      if (fieldDescriptor.isRepeated()) {
+        if (fieldDescriptor.isMapField()) {
+          fieldState =
+              matchMapFieldsByKey(
+                  toProtoMap(actualFields.get(fieldDescriptor)),
+                  toProtoMap(expectedFields.get(fieldDescriptor)),
+                  fieldDescriptor,
+                  fieldScopeLogic,
+                  ceiling);
+        } else {
+          List<?> actualList = toProtoList(actualFields.get(fieldDescriptor));
+          List<?> expectedList = toProtoList(expectedFields.get(fieldDescriptor));
+          FieldScopeLogic subLogic =
+              fieldScopeLogic.subLogic(rootDescriptor, fieldDescriptorOrUnknown);
+
+          if (config.ignoreRepeatedFieldOrder()) {
+            fieldState =
+                matchRepeatedFieldIgnoringOrder(
+                    actualList,
+                    expectedList,
+                    shouldIgnore.shouldMaybeIgnore(),
+                    fieldDescriptor,
+                    subLogic,
+                    ceiling);
+          } else if (config.ignoreExtraRepeatedFieldElements() && !expectedList.isEmpty()) {
+            fieldState =
+                matchRepeatedFieldExpectingSubsequence(
+                    actualList,
+                    expectedList,
+                    shouldIgnore.shouldMaybeIgnore(),
+                    fieldDescriptor,
+                    subLogic,
+                    ceiling);
+          } else {
+            fieldState =
+                matchRepeatedFieldByIndices(
+                    actualList,
+                    expectedList,
+                    shouldIgnore.shouldMaybeIgnore(),
+                    fieldDescriptor,
+                    subLogic,
+                    ceiling);
+          }
+        }
+      } else {
+        fieldState =
+            matchSingularValue(
+                actualFields.get(fieldDescriptor),
+                expectedFields.get(fieldDescriptor),
+                actual.getDefaultInstanceForType().getField(fieldDescriptor),
+                shouldIgnore.shouldMaybeIgnore(),
+                fieldDescriptor,
+                fieldScopeLogic.subLogic(rootDescriptor, fieldDescriptorOrUnknown),
+                ceiling);
+      }
+      state = state.and(fieldState);
+      if (state.isAtLeast(ceiling)) {
+        return state;
+      }
+    }
+
+    // Compare unknown fields.
+    if (!config.ignoreFieldAbsence()) {
+      state =
+          state.and(
+              matchUnknowns(
+                  actual.getUnknownFields(),
+                  expected.getUnknownFields(),
+                  fieldScopeLogic,
+                  ceiling));
+    }
+    return state;
+  }
+
+  /** The equivalent of {@link #compareMapFieldsByKey}. */
+  private MatchState matchMapFieldsByKey(
+      Map<Object, Object> actualMap,
+      Map<Object, Object> expectedMap,
+      FieldDescriptor mapFieldDescriptor,
+      FieldScopeLogic mapFieldScopeLogic,
+      MatchState ceiling) {
+    FieldDescriptor valueFieldDescriptor = mapFieldDescriptor.getMessageType().findFieldByNumber(2);
+    FieldDescriptorOrUnknown valueFieldDescriptorOrUnknown =
+        FieldDescriptorOrUnknown.fromFieldDescriptor(valueFieldDescriptor);
+    FieldScopeLogic valueFieldScopeLogic =
+        mapFieldScopeLogic.subLogic(rootDescriptor, valueFieldDescriptorOrUnknown);
+
+    // We never ignore the key, no matter what the logic dictates.
+    ShouldIgnore shouldIgnoreValue =
+        valueFieldScopeLogic.shouldIgnore(rootDescriptor, valueFieldDescriptorOrUnknown);
+    if (shouldIgnoreValue == ShouldIgnore.YES) {
+      return MatchState.IGNORED;
+    }
+
+    MatchState state = MatchState.IGNORED;
+    for (Object key : Sets.union(actualMap.keySet(), expectedMap.keySet())) {
+      @NullableDecl Object actualValue = actualMap.get(key);
+      @NullableDecl Object expectedValue = expectedMap.get(key);
+      if (config.ignoreExtraRepeatedFieldElements()
+          && !expectedMap.isEmpty()
+          && expectedValue == null) {
+        continue;
+      }
+      state =
+          state.and(
+              matchSingularValue(
+                  actualValue,
+                  expectedValue,
+                  /*defaultValue=*/ null,
+                  shouldIgnoreValue.shouldMaybeIgnore(),
+                  valueFieldDescriptor,
+                  valueFieldScopeLogic,
+                  ceiling));
+      if (state.isAtLeast(ceiling)) {
+        return state;
+      }
+    }
+    return state;
+  }
+
+  /**
+   * The equivalent of {@link #compareRepeatedFieldIgnoringOrder}, which pairs the elements in the
+   * same way. A pair that matches is matched rather than ignored unless it's {@code MAYBE} ignored.
+   */
+  private MatchState matchRepeatedFieldIgnoringOrder(
+      List<?> actualList,
+      List<?> expectedList,
+      boolean shouldMaybeIgnore,
+      FieldDescriptor fieldDescriptor,
+      FieldScopeLogic fieldScopeLogic,
+      MatchState ceiling) {
+    int[] pairs =
+        pairElementsIgnoringOrder(
+            actualList, expectedList, shouldMaybeIgnore, fieldDescriptor, fieldScopeLogic);
+    MatchState state = MatchState.IGNORED;
+    boolean[] expectedMatched = new boolean[expectedList.size()];
+    for (int i = 0; i < actualList.size(); i++) {
+      Object actual = actualList.get(i);
+      MatchState actualState;
+      if (pairs[i] != BipartiteMatching.UNMATCHED) {
+        expectedMatched[pairs[i]] = true;
+        actualState =
+            shouldMaybeIgnore
+                ? matchSingularValue(
+                    actual,
+                    expectedList.get(pairs[i]),
+                    /*defaultValue=*/ null,
+                    shouldMaybeIgnore,
+                    fieldDescriptor,
+                    fieldScopeLogic,
+                    ceiling)
+                : MatchState.MATCHED;
+      } else {
+        // An unmatched actual element.
+        actualState =
+            (config.ignoreExtraRepeatedFieldElements() && !expectedList.isEmpty())
+                ? MatchState.IGNORED
+                : matchSingularValue(
+                    actual,
+                    /*expected=*/ null,
+                    /*defaultValue=*/ null,
+                    shouldMaybeIgnore,
+                    fieldDescriptor,
+                    fieldScopeLogic,
+                    ceiling);
+      }
+      state = state.and(actualState);
+      if (state.isAtLeast(ceiling)) {
+        return state;
+      }
+    }
+    for (int j = 0; j < expectedList.size(); j++) {
+      if (expectedMatched[j]) {
+        continue;
+      }
+      state =
+          state.and(
+              matchSingularValue(
+                  /*actual=*/ null,
+                  expectedList.get(j),
+                  /*defaultValue=*/ null,
+                  shouldMaybeIgnore,
+                  fieldDescriptor,
+                  fieldScopeLogic,
+                  ceiling));
+      if (state.isAtLeast(ceiling)) {
+        return state;
+      }
+    }
+    return state;
+  }
+
+  /**
+   * The equivalent of {@link #compareRepeatedFieldExpectingSubsequence}. An expected element that
+   * can't be matched in order is a mismatch whether or not it appears out of order, so there's no
+   * need to look for it among the skipped elements. The skipped elements themselves are ignored.
+   */
+  private MatchState matchRepeatedFieldExpectingSubsequence(
+      List<?> actualList,
+      List<?> expectedList,
+      boolean shouldMaybeIgnore,
+      FieldDescriptor fieldDescriptor,
+      FieldScopeLogic fieldScopeLogic,
+      MatchState ceiling) {
+    MatchState state = MatchState.IGNORED;
+    int nextActualIndex = 0;
+    for (Object expected : expectedList) {
+      @NullableDecl MatchState pairState = null;
+      while (pairState == null && nextActualIndex < actualList.size()) {
+        MatchState candidateState =
+            matchSingularValue(
+                actualList.get(nextActualIndex++),
+                expected,
+                /*defaultValue=*/ null,
+                shouldMaybeIgnore,
+                fieldDescriptor,
+                fieldScopeLogic,
+                MatchState.MISMATCHED);
+        if (candidateState != MatchState.MISMATCHED) {
+          pairState = candidateState;
+        }
+      }
+      if (pairState == null) {
+        return MatchState.MISMATCHED;
+      }
+      state = state.and(pairState);
+      if (state.isAtLeast(ceiling)) {
+        return state;
+      }
+    }
+    return state;
+  }
+
+  /** The equivalent of {@link #compareRepeatedFieldByIndices}. */
+  private MatchState matchRepeatedFieldByIndices(
+      List<?> actualList,
+      List<?> expectedList,
+      boolean shouldMaybeIgnore,
+      FieldDescriptor fieldDescriptor,
+      FieldScopeLogic fieldScopeLogic,
+      MatchState ceiling) {
+    MatchState state = MatchState.IGNORED;
+    int maxSize = Math.max(actualList.size(), expectedList.size());
+    for (int i = 0; i < maxSize && !state.isAtLeast(ceiling); i++) {
+      @NullableDecl Object actual = actualList.size() > i ? actualList.get(i) : null;
+      @NullableDecl Object expected = expectedList.size() > i ? expectedList.get(i) : null;
+      state =
+          state.and(
+              matchSingularValue(
+                  actual,
+                  expected,
+                  /*defaultValue=*/ null,
+                  shouldMaybeIgnore,
+                  fieldDescriptor,
+                  fieldScopeLogic,
+                  ceiling));
+    }
+    return state;
+  }
+
+  /** The equivalent of {@link #compareSingularValue}. */
+  private MatchState matchSingularValue(
+      @NullableDecl Object actual,
+      @NullableDecl Object expected,
+      @NullableDecl Object defaultValue,
+      boolean shouldMaybeIgnore,
+      FieldDescriptor fieldDescriptor,
+      FieldScopeLogic fieldScopeLogic,
+      MatchState ceiling) {
+    if (fieldDescriptor.getJavaType() == JavaType.MESSAGE) {
+      return matchSingularMessage(
+          (Message) actual,
+          (Message) expected,
+          (Message) defaultValue,
+          shouldMaybeIgnore,
+          fieldScopeLogic,
+          ceiling);
+    } else {
+      checkState(!shouldMaybeIgnore, "MAYBE is not a valid ShouldIgnore for primitives.");
+      return matchSingularPrimitive(actual, expected, defaultValue);
+    }
+  }
+
+  /**
+   * The equivalent of {@link #compareSingularMessage}. A field that isn't {@code MAYBE} ignored is
+   * never itself ignored, so it needs no comparison if the ceiling is {@code MATCHED}. A field that
+   * is {@code MAYBE} ignored but present on only one side matches only if it's ignored, so its
+   * breakdown needs comparing only until a field is found that isn't ignored.
+   */
+  private MatchState matchSingularMessage(
+      @NullableDecl Message actual,
+      @NullableDecl Message expected,
+      @NullableDecl Message defaultValue,
+      boolean shouldMaybeIgnore,
+      FieldScopeLogic fieldScopeLogic,
+      MatchState ceiling) {
+    // Use the default if it's set and we're ignoring field absence.
+    actual = orIfIgnoringFieldAbsence(actual, defaultValue);
+    expected = orIfIgnoringFieldAbsence(expected, defaultValue);
+
+    boolean bothPresent = actual != null && expected != null;
+    if (!shouldMaybeIgnore) {
+      if (!bothPresent) {
+        return MatchState.MISMATCHED;
+      }
+      if (MatchState.MATCHED.isAtLeast(ceiling)) {
+        return MatchState.MATCHED;
+      }
+    }
+
+    actual = orDefaultForType(actual, expected);
+    expected = orDefaultForType(expected, actual);
+    MatchState breakdown =
+        matchMessages(
+            actual, expected, fieldScopeLogic, bothPresent ? ceiling : MatchState.MATCHED);
+    if (breakdown == MatchState.IGNORED) {
+      return shouldMaybeIgnore ? MatchState.IGNORED : MatchState.MATCHED;
+    }
+    return bothPresent ? breakdown : MatchState.MISMATCHED;
+  }
+
+  /** The equivalent of {@link #compareSingularPrimitive}. */
+  private MatchState matchSingularPrimitive(
+      @NullableDecl Object actual,
+      @NullableDecl Object expected,
+      @NullableDecl Object defaultValue) {
+    // Use the default if it's set and we're ignoring field absence.
+    actual = orIfIgnoringFieldAbsence(actual, defaultValue);
+    expected = orIfIgnoringFieldAbsence(expected, defaultValue);
+
+    if (actual == null || expected == null) {
+      return MatchState.MISMATCHED;
+    }
+    boolean equal;
+    if (actual instanceof Double) {
+      equal = doublesEqual((double) actual, (double) expected);
+    } else if (actual instanceof Float) {
+      equal = floatsEqual((float) actual, (float) expected);
+    } else {
+      equal = Objects.equal(actual, expected);
+    }
+    return equal ? MatchState.MATCHED : MatchState.MISMATCHED;
+  }
+
+  /** The equivalent of {@link #diffUnknowns}. */
+  private MatchState matchUnknowns(
+      UnknownFieldSet actual,
+      UnknownFieldSet expected,
+      FieldScopeLogic fieldScopeLogic,
+      MatchState ceiling) {
+    MatchState state = MatchState.IGNORED;
+
+    Map<Integer, UnknownFieldSet.Field> actualFields = actual.asMap();
+    Map<Integer, UnknownFieldSet.Field> expectedFields = expected.asMap();
+    for (int fieldNumber : Sets.union(actualFields.keySet(), expectedFields.keySet())) {
+      @NullableDecl UnknownFieldSet.Field actualField = actualFields.get(fieldNumber);
+      @NullableDecl UnknownFieldSet.Field expectedField = expectedFields.get(fieldNumber);
+      for (UnknownFieldDescriptor.Type type : UnknownFieldDescriptor.Type.all()) {
+        List<?> actualValues =
+            actualField != null ? type.getValues(actualField) : Collections.emptyList();
+        List<?> expectedValues =
+            expectedField != null ? type.getValues(expectedField) : Collections.emptyList();
+        if (actualValues.isEmpty() && expectedValues.isEmpty()) {
+          continue;
+        }
+
+        UnknownFieldDescriptor unknownFieldDescriptor =
+            UnknownFieldDescriptor.create(fieldNumber, type);
+        FieldDescriptorOrUnknown fieldDescriptorOrUnknown =
+            FieldDescriptorOrUnknown.fromUnknown(unknownFieldDescriptor);
+        ShouldIgnore shouldIgnore =
+            fieldScopeLogic.shouldIgnore(rootDescriptor, fieldDescriptorOrUnknown);
+        if (shouldIgnore == ShouldIgnore.YES) {
+          continue;
+        }
+
+        FieldScopeLogic subLogic =
+            fieldScopeLogic.subLogic(rootDescriptor, fieldDescriptorOrUnknown);
+        int maxSize = Math.max(actualValues.size(), expectedValues.size());
+        for (int i = 0; i < maxSize; i++) {
+          @NullableDecl Object actualValue = actualValues.size() > i ? actualValues.get(i) : null;
+          @NullableDecl
+          Object expectedValue = expectedValues.size() > i ? expectedValues.get(i) : null;
+          state =
+              state.and(
+                  matchUnknownFieldValue(
+                      actualValue,
+                      expectedValue,
+                      shouldIgnore.shouldMaybeIgnore(),
+                      unknownFieldDescriptor,
+                      subLogic,
+                      ceiling));
+          if (state.isAtLeast(ceiling)) {
+            return state;
+          }
+        }
+      }
+    }
+    return state;
+  }
+
+  /** The equivalent of {@link #compareUnknownFieldValue}. */
+  private MatchState matchUnknownFieldValue(
+      @NullableDecl Object actual,
+      @NullableDecl Object expected,
+      boolean shouldMaybeIgnore,
+      UnknownFieldDescriptor unknownFieldDescriptor,
+      FieldScopeLogic fieldScopeLogic,
+      MatchState ceiling) {
+    if (unknownFieldDescriptor.type() == UnknownFieldDescriptor.Type.GROUP) {
+      return matchUnknownFieldSet(
+          (UnknownFieldSet) actual,
+          (UnknownFieldSet) expected,
+          shouldMaybeIgnore,
+          fieldScopeLogic,
+          ceiling);
+    } else {
+      checkState(!shouldMaybeIgnore, "MAYBE is not a valid ShouldIgnore for primitives.");
+      return (actual != null && Objects.equal(actual, expected))
+          ? MatchState.MATCHED
+          : MatchState.MISMATCHED;
+    }
+  }
+
+  /**
+   * The equivalent of {@link #compareUnknownFieldSet}, by the same reasoning as {@link
+   * #matchSingularMessage}.
+   */
+  private MatchState matchUnknownFieldSet(
+      @NullableDecl UnknownFieldSet actual,
+      @NullableDecl UnknownFieldSet expected,
+      boolean shouldMaybeIgnore,
+      FieldScopeLogic fieldScopeLogic,
+      MatchState ceiling) {
+    boolean bothPresent = actual != null && expected != null;
+    if (!shouldMaybeIgnore) {
+      if (!bothPresent) {
+        return MatchState.MISMATCHED;
+      }
+      if (MatchState.MATCHED.isAtLeast(ceiling)) {
+        return MatchState.MATCHED;
+      }
+    }
+
+    MatchState breakdown =
+        matchUnknowns(
+            firstNonNull(actual, UnknownFieldSet.getDefaultInstance()),
+            firstNonNull(expected, UnknownFieldSet.getDefaultInstance()),
+            fieldScopeLogic,
+            bothPresent ? ceiling : MatchState.MATCHED);
+    if (breakdown == MatchState.IGNORED) {
+      return shouldMaybeIgnore ? MatchState.IGNORED : MatchState.MATCHED;
+    }
+    return bothPresent ? breakdown : MatchState.MISMATCHED;
+  }
+
   private static String name(FieldDescriptor fieldDescriptor) {
     return fieldDescriptor.isExtension() ? "[" + fieldDescriptor + "]" : fieldDescriptor.getName();
   }
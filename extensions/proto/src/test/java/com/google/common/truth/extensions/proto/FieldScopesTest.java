@@ -23,7 +23,15 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.DescriptorValidationException;
 import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor.JavaType;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.DynamicMessage;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 import com.google.protobuf.UnknownFieldSet;
@@ -946,4 +954,194 @@ public class FieldScopesTest extends ProtoSubjectTestBase {
         .ignoringFieldDescriptorsForValues(listOf(getFieldDescriptor("o_int")))
         .containsExactlyEntriesIn(eqExceptInt);
   }
+
+  @Test
+  public void testCompiledLogic_compoundScopes() {
+    FieldDescriptor subTestMessage = getFieldDescriptor("o_sub_test_message");
+    expectCompiledLogicMatchesRawLogic(
+        FieldScopes.ignoringFields(getFieldNumber("o_int")).logic(), NO_EXTENSIONS);
+    expectCompiledLogicMatchesRawLogic(
+        FieldScopes.allowingFields(getFieldNumber("r_string"))
+            .allowingFieldDescriptors(subTestMessage.getMessageType().findFieldByName("o_int"))
+            .logic(),
+        NO_EXTENSIONS);
+    expectCompiledLogicMatchesRawLogic(
+        FieldScopes.all()
+            .ignoringFieldDescriptors(subTestMessage)
+            .ignoringFields(getFieldNumber("r_test_message"))
+            .logic(),
+        NO_EXTENSIONS);
+  }
+
+  @Test
+  public void testCompiledLogic_partialScopes() {
+    Message message =
+        parse(
+            "o_int: 1 o_sub_test_message: { o_test_message: { r_string: 'x' } } "
+                + "r_test_message: { o_sub_test_message: { o_int: 2 } }");
+    expectCompiledLogicMatchesRawLogic(FieldScopes.fromSetFields(message).logic(), NO_EXTENSIONS);
+    expectCompiledLogicMatchesRawLogic(
+        FieldScopes.fromSetFields(message).ignoringFields(getFieldNumber("o_int")).logic(),
+        NO_EXTENSIONS);
+  }
+
+  @Test
+  public void testCompiledLogic_mapValueScopes() {
+    FieldDescriptor mapValue =
+        getFieldDescriptor("test_message_map").getMessageType().findFieldByName("value");
+    expectCompiledLogicMatchesRawLogic(
+        FieldScopes.allowingFieldDescriptors(mapValue).logic(), NO_EXTENSIONS);
+    expectCompiledLogicMatchesRawLogic(
+        FieldScopes.ignoringFieldDescriptors(mapValue).logic(), NO_EXTENSIONS);
+    expectCompiledLogicMatchesRawLogic(
+        FieldScopes.fromSetFields(
+                parse("test_message_map: { key: 'a' value: { o_int: 2 r_string: 'x' } }"))
+            .logic(),
+        NO_EXTENSIONS);
+  }
+
+  @Test
+  public void testCompiledLogic_extensionScopes() throws DescriptorValidationException {
+    if (!testIsRunOnce()) {
+      return;
+    }
+    FileDescriptor file =
+        FileDescriptor.buildFrom(
+            FileDescriptorProto.newBuilder()
+                .setName("extendable.proto")
+                .setPackage("extendable")
+                .addMessageType(
+                    DescriptorProto.newBuilder()
+                        .setName("Extendable")
+                        .addField(field("o_int", 1, FieldDescriptorProto.Type.TYPE_INT32))
+                        .addExtensionRange(
+                            DescriptorProto.ExtensionRange.newBuilder().setStart(100).setEnd(200)))
+                .addExtension(
+                    field("ext_int", 100, FieldDescriptorProto.Type.TYPE_INT32)
+                        .setExtendee(".extendable.Extendable"))
+                .addExtension(
+                    field("ext_message", 101, FieldDescriptorProto.Type.TYPE_MESSAGE)
+                        .setExtendee(".extendable.Extendable")
+                        .setTypeName(".extendable.Extendable"))
+                .build(),
+            new FileDescriptor[0]);
+    Descriptor extendable = file.findMessageTypeByName("Extendable");
+    FieldDescriptor extInt = file.findExtensionByName("ext_int");
+    FieldDescriptor extMessage = file.findExtensionByName("ext_message");
+    Message message =
+        DynamicMessage.newBuilder(extendable)
+            .setField(
+                extMessage,
+                DynamicMessage.newBuilder(extendable).setField(extInt, 3).build())
+            .build();
+
+    for (FieldScope scope :
+        ImmutableList.of(
+            FieldScopes.allowingFieldDescriptors(extInt),
+            FieldScopes.ignoringFieldDescriptors(extMessage),
+            FieldScopes.ignoringFields(1),
+            FieldScopes.fromSetFields(message))) {
+      expectCompiledLogicMatchesRawLogic(
+          scope.logic(), extendable, ImmutableList.of(extInt, extMessage), 4);
+    }
+  }
+
+  @Test
+  public void testCompiledLogic_sharesNodesAcrossMutuallyRecursiveTypes() {
+    Descriptor rootDescriptor = getFieldDescriptor("o_int").getContainingType();
+    FieldDescriptorOrUnknown subTestMessage =
+        FieldDescriptorOrUnknown.fromFieldDescriptor(getFieldDescriptor("o_sub_test_message"));
+    FieldDescriptorOrUnknown backToTestMessage =
+        FieldDescriptorOrUnknown.fromFieldDescriptor(
+            getFieldDescriptor("o_sub_test_message")
+                .getMessageType()
+                .findFieldByName("o_test_message"));
+    FieldScopeLogic compiled =
+        FieldScopeLogic.compile(
+            FieldScopes.ignoringFields(getFieldNumber("o_int")).logic(), rootDescriptor);
+
+    FieldScopeLogic sub = compiled.subLogic(rootDescriptor, subTestMessage);
+    FieldScopeLogic back = sub.subLogic(rootDescriptor, backToTestMessage);
+    expect.that(back).isSameAs(compiled);
+    expect.that(back.subLogic(rootDescriptor, subTestMessage)).isSameAs(sub);
+  }
+
+  private static final ImmutableList<FieldDescriptor> NO_EXTENSIONS = ImmutableList.of();
+
+  private static FieldDescriptorProto.Builder field(
+      String name, int number, FieldDescriptorProto.Type type) {
+    return FieldDescriptorProto.newBuilder()
+        .setName(name)
+        .setNumber(number)
+        .setType(type)
+        .setLabel(FieldDescriptorProto.Label.LABEL_OPTIONAL);
+  }
+
+  private void expectCompiledLogicMatchesRawLogic(
+      FieldScopeLogic logic, ImmutableList<FieldDescriptor> extensions) {
+    Descriptor rootDescriptor = getFieldDescriptor("o_int").getContainingType();
+    expectCompiledLogicMatchesRawLogic(logic, rootDescriptor, extensions, 5);
+  }
+
+  private void expectCompiledLogicMatchesRawLogic(
+      FieldScopeLogic logic,
+      Descriptor rootDescriptor,
+      ImmutableList<FieldDescriptor> extensions,
+      int depth) {
+    expectSameDecisions(
+        FieldScopeLogic.compile(logic, rootDescriptor),
+        logic,
+        rootDescriptor,
+        rootDescriptor,
+        extensions,
+        depth,
+        logic.toString());
+  }
+
+  /**
+   * Expects the compiled and raw logics to make the same decisions for every field of the given
+   * message type, including its extensions and an unknown field, and likewise for the sub-logics of
+   * its message fields, down to the given depth.
+   */
+  private void expectSameDecisions(
+      FieldScopeLogic compiled,
+      FieldScopeLogic raw,
+      Descriptor rootDescriptor,
+      Descriptor descriptor,
+      ImmutableList<FieldDescriptor> extensions,
+      int depth,
+      String path) {
+    List<FieldDescriptorOrUnknown> fields = Lists.newArrayList();
+    for (FieldDescriptor field : descriptor.getFields()) {
+      fields.add(FieldDescriptorOrUnknown.fromFieldDescriptor(field));
+    }
+    for (FieldDescriptor extension : extensions) {
+      if (extension.getContainingType() == descriptor) {
+        fields.add(FieldDescriptorOrUnknown.fromFieldDescriptor(extension));
+      }
+    }
+    fields.add(
+        FieldDescriptorOrUnknown.fromUnknown(
+            UnknownFieldDescriptor.create(99, UnknownFieldDescriptor.Type.VARINT)));
+
+    for (FieldDescriptorOrUnknown field : fields) {
+      String fieldPath = path + "/" + field.shortName();
+      expect
+          .withMessage(fieldPath)
+          .that(compiled.shouldIgnore(rootDescriptor, field))
+          .isEqualTo(raw.shouldIgnore(rootDescriptor, field));
+      if (depth > 0
+          && field.fieldDescriptor().isPresent()
+          && field.fieldDescriptor().get().getJavaType() == JavaType.MESSAGE) {
+        expectSameDecisions(
+            compiled.subLogic(rootDescriptor, field),
+            raw.subLogic(rootDescriptor, field),
+            rootDescriptor,
+            field.fieldDescriptor().get().getMessageType(),
+            extensions,
+            depth - 1,
+            fieldPath);
+      }
+    }
+  }
 }
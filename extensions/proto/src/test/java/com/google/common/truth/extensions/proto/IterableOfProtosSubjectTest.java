@@ -17,9 +17,16 @@
 package com.google.common.truth.extensions.proto;
 
 import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.truth.Correspondence;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
@@ -510,6 +517,92 @@ public class IterableOfProtosSubjectTest extends ProtoSubjectTestBase {
             TestMessage2.newBuilder().addRString("bar").addRString("foo").build());
   }
 
+  @Test
+  public void testFluent_comparingExpectedFieldsOnly_comparesEachExpectedMessagesOwnFields() {
+    Message expectedInt = parse("o_int: 1");
+    Message expectedString = parse("r_string: \"foo\"");
+
+    // Each actual message is compared on the fields set in the expected message it's compared
+    // with, rather than on those set in any of the expected messages.
+    expectThat(listOf(parse("o_int: 5 r_string: \"foo\""), parse("o_int: 1 r_string: \"bar\"")))
+        .comparingExpectedFieldsOnly()
+        .containsExactly(expectedInt, expectedString);
+    // Equal expected messages have the same fields set, however often they're compared.
+    expectThat(
+            listOf(
+                parse("o_int: 1 r_string: \"foo\""),
+                parse("o_int: 1 r_string: \"bar\""),
+                parse("o_int: 1")))
+        .comparingExpectedFieldsOnly()
+        .containsExactly(expectedInt, parse("o_int: 1"), expectedInt);
+
+    expectFailureWhenTesting()
+        .that(listOf(parse("o_int: 5 r_string: \"bar\"")))
+        .comparingExpectedFieldsOnly()
+        .containsAnyOf(expectedInt, expectedString);
+    expectThatFailure().isNotNull();
+  }
+
+  @Test
+  public void testFluent_nullsAndOtherMessageTypesAreComparedWithEquals() {
+    Message otherType =
+        isProto3()
+            ? TestMessage2.newBuilder().setOInt(1).build()
+            : TestMessage3.newBuilder().setOInt(1).build();
+
+    expectThat(Arrays.asList(message1, null, otherType))
+        .ignoringFields(ignoreFieldNumber)
+        .containsExactly(eqIgnoredMessage1, null, otherType)
+        .inOrder();
+    // A message of another type isn't equivalent even if it has the same fields set, and null is
+    // only equivalent to null.
+    expectThat(Arrays.asList(otherType, null))
+        .ignoringFields(ignoreFieldNumber)
+        .containsNoneOf(parse("o_int: 1"), message1);
+    expectThat(listOf(message1)).comparingExpectedFieldsOnly().doesNotContain(null);
+  }
+
+  @Test
+  public void testCorrespondence_agreesWithProtoSubject() throws InvalidProtocolBufferException {
+    Message otherType =
+        isProto3()
+            ? TestMessage2.newBuilder().setOInt(1).build()
+            : TestMessage3.newBuilder().setOInt(1).build();
+    List<Message> messages =
+        Arrays.asList(
+            null,
+            message1,
+            eqRepeatedMessage1,
+            eqIgnoredMessage1,
+            message2,
+            parse("o_int: 1"),
+            DynamicMessage.parseFrom(message1.getDescriptorForType(), message1.toByteString()),
+            otherType);
+    FluentEqualityConfig defaultConfig = FluentEqualityConfig.defaultInstance();
+
+    for (FluentEqualityConfig config :
+        listOf(
+            defaultConfig,
+            defaultConfig.ignoringFieldAbsence(),
+            defaultConfig.ignoringRepeatedFieldOrder(),
+            defaultConfig.ignoringFields(listOf(ignoreFieldNumber)),
+            defaultConfig.comparingExpectedFieldsOnly())) {
+      for (Message expected : messages) {
+        FluentEqualityConfig withExpected = config.withExpectedMessages(Arrays.asList(expected));
+        Correspondence<Message, Message> correspondence =
+            withExpected.toCorrespondence(Optional.<Descriptor>absent());
+        for (Message actual : messages) {
+          // The Correspondence used to delegate to ProtoSubject for each pair.
+          expect
+              .withMessage("actual: %s\nexpected: %s\nconfig: %s", actual, expected, config)
+              .that(correspondence.compare(actual, expected))
+              .isEqualTo(
+                  ProtoTruth.assertThat(actual).usingConfig(withExpected).testIsEqualTo(expected));
+        }
+      }
+    }
+  }
+
   private Comparator<Message> compareByOIntAscending() {
     return new Comparator<Message>() {
       @Override
@@ -19,6 +19,8 @@ package com.google.common.truth.extensions.proto;
 import com.google.common.collect.ImmutableMap;
 import com.google.protobuf.Message;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
@@ -228,6 +230,44 @@ public class MapWithProtoValuesSubjectTest extends ProtoSubjectTestBase {
     expectThatFailure().isNotNull();
   }
 
+  @Test
+  public void testFluent_comparingExpectedFieldsOnlyForValues_comparesEachExpectedValuesOwnFields() {
+    Message expectedInt = parse("o_int: 1");
+    Message expectedString = parse("r_string: \"foo\"");
+    Map<Integer, Message> actual =
+        mapOf(1, parse("o_int: 1 r_string: \"bar\""), 2, parse("o_int: 5 r_string: \"foo\""));
+
+    expectThat(actual)
+        .comparingExpectedFieldsOnlyForValues()
+        .containsExactly(1, expectedInt, 2, expectedString);
+
+    expectFailureWhenTesting()
+        .that(actual)
+        .comparingExpectedFieldsOnlyForValues()
+        .containsExactly(1, expectedString, 2, expectedInt);
+    expectThatFailure().isNotNull();
+  }
+
+  @Test
+  public void testFluent_nullAndOtherTypeValuesAreComparedWithEquals() {
+    Message otherType =
+        isProto3()
+            ? TestMessage2.newBuilder().setOInt(1).build()
+            : TestMessage3.newBuilder().setOInt(1).build();
+    Map<Integer, Message> actual = new LinkedHashMap<>();
+    actual.put(1, message1);
+    actual.put(2, null);
+    actual.put(3, otherType);
+
+    expectThat(actual)
+        .ignoringFieldsForValues(ignoreFieldNumber)
+        .containsExactly(1, eqIgnoredMessage1, 2, null, 3, otherType);
+    expectThat(actual)
+        .ignoringFieldsForValues(ignoreFieldNumber)
+        .doesNotContainEntry(3, parse("o_int: 1"));
+    expectThat(actual).ignoringFieldsForValues(ignoreFieldNumber).doesNotContainEntry(2, message1);
+  }
+
   @Test
   public void testCompareMultipleMessageTypes() {
     // Don't run this test twice.
@@ -15,13 +15,17 @@
  */
 package com.google.common.truth.extensions.proto;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.protobuf.DynamicMessage;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 import com.google.protobuf.UnknownFieldSet;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
@@ -40,6 +44,72 @@ public class ProtoSubjectTest extends ProtoSubjectTestBase {
     super(testType);
   }
 
+  /**
+   * Checks that {@link ProtoTruthMessageDifferencer#matches}, which passing assertions rely on,
+   * agrees with {@link DiffResult#isMatched} for every pair of the messages built by the test, under
+   * every combination of comparison options and a variety of field scopes.
+   */
+  @After
+  public void matchesAgreesWithDiffMessages() {
+    ImmutableList<FluentEqualityConfig> configs = configCombinations();
+    // FieldScopes.fromSetFields() can't handle partial messages, so we leave those out.
+    List<Message> messages = new ArrayList<>();
+    for (Message message : builtMessages()) {
+      if (message.isInitialized()) {
+        messages.add(message);
+      }
+    }
+    for (Message actual : messages) {
+      for (Message expected : messages) {
+        for (FluentEqualityConfig config : configs) {
+          ProtoTruthMessageDifferencer differencer =
+              config
+                  .withExpectedMessages(ImmutableList.of(expected))
+                  .toMessageDifferencer(actual.getDescriptorForType());
+          expect
+              .withMessage("actual: %s\nexpected: %s\nconfig: %s", actual, expected, config)
+              .that(differencer.matches(actual, expected))
+              .isEqualTo(differencer.diffMessages(actual, expected).isMatched());
+        }
+      }
+    }
+  }
+
+  private ImmutableList<FluentEqualityConfig> configCombinations() {
+    FluentEqualityConfig defaultConfig = FluentEqualityConfig.defaultInstance();
+    ImmutableList<FluentEqualityConfig> scoped =
+        ImmutableList.of(
+            defaultConfig,
+            defaultConfig.comparingExpectedFieldsOnly(),
+            defaultConfig.ignoringFields(ImmutableList.of(getFieldNumber("o_int"))),
+            defaultConfig.withPartialScope(
+                FieldScopes.allowingFieldDescriptors(
+                    getFieldDescriptor("r_test_message"), getFieldDescriptor("test_message_map"))),
+            defaultConfig.ignoringFieldScope(
+                FieldScopes.allowingFields(getFieldNumber("r_string"))
+                    .allowingFieldDescriptors(getFieldDescriptor("o_sub_test_message"))));
+    ImmutableList.Builder<FluentEqualityConfig> configs = ImmutableList.builder();
+    for (FluentEqualityConfig config : scoped) {
+      for (int options = 0; options < 16; options++) {
+        FluentEqualityConfig combination = config;
+        if ((options & 1) != 0) {
+          combination = combination.ignoringFieldAbsence();
+        }
+        if ((options & 2) != 0) {
+          combination = combination.ignoringRepeatedFieldOrder();
+        }
+        if ((options & 4) != 0) {
+          combination = combination.ignoringExtraRepeatedFieldElements();
+        }
+        if ((options & 8) != 0) {
+          combination = combination.usingDoubleTolerance(0.5).usingFloatTolerance(0.5f);
+        }
+        configs.add(combination);
+      }
+    }
+    return configs.build();
+  }
+
   @Test
   public void testDifferentClasses() throws InvalidProtocolBufferException {
     Message message = parse("o_int: 3");
@@ -187,6 +257,33 @@ public class ProtoSubjectTest extends ProtoSubjectTestBase {
     expectThatFailure().hasMessageThat().contains("added: r_string[1]: \"foo\"");
   }
 
+  @Test
+  public void testRepeatedFieldOrder_pairsAsManyElementsAsPossible() {
+    // Greedily pairing the first actual element with the first expected element it matches would
+    // leave the second actual element with nothing to match.
+    Message message = parse("r_test_message: { o_double: 1.0 } r_test_message: { o_double: 1.2 }");
+    Message eqMessage =
+        parse("r_test_message: { o_double: 1.1 } r_test_message: { o_double: 0.95 }");
+    Message diffMessage =
+        parse("r_test_message: { o_double: 1.1 } r_test_message: { o_double: 1.4 }");
+
+    expectThat(eqMessage)
+        .ignoringRepeatedFieldOrder()
+        .usingDoubleTolerance(0.15)
+        .isEqualTo(message);
+    expectThat(diffMessage)
+        .ignoringRepeatedFieldOrder()
+        .usingDoubleTolerance(0.15)
+        .isNotEqualTo(message);
+
+    expectFailureWhenTesting()
+        .that(eqMessage)
+        .ignoringRepeatedFieldOrder()
+        .usingDoubleTolerance(0.15)
+        .isNotEqualTo(message);
+    expectIsNotEqualToFailed();
+  }
+
   @Test
   public void testDoubleTolerance() {
     Message message = parse("o_double: 1.0");
@@ -409,4 +506,48 @@ public class ProtoSubjectTest extends ProtoSubjectTestBase {
     expectThatFailure().hasMessageThat().contains("r_required_string_message[0].required_string");
     expectThatFailure().hasMessageThat().contains("r_required_string_message[1].required_string");
   }
+
+  @Test
+  public void testMessageDifferencersAreSharedAcrossEqualConfigs() {
+    Message message = parse("o_int: 3 r_string: \"foo\"");
+    Message otherMessage = parse("o_int: 4 r_string: \"bar\"");
+
+    ProtoTruthMessageDifferencer differencer =
+        FluentEqualityConfig.defaultInstance()
+            .ignoringFields(listOf(getFieldNumber("o_int")))
+            .ignoringFieldDescriptors(listOf(getFieldDescriptor("r_string")))
+            .withExpectedMessages(listOf(message))
+            .toMessageDifferencer(message.getDescriptorForType());
+    ProtoTruthMessageDifferencer otherDifferencer =
+        FluentEqualityConfig.defaultInstance()
+            .ignoringFields(listOf(getFieldNumber("o_int")))
+            .ignoringFieldDescriptors(listOf(getFieldDescriptor("r_string")))
+            .reportingMismatchesOnly()
+            .withExpectedMessages(listOf(otherMessage))
+            .toMessageDifferencer(message.getDescriptorForType());
+
+    expect.that(otherDifferencer).isSameAs(differencer);
+  }
+
+  @Test
+  public void testMessageDifferencersAreNotSharedForScopesFromMessages() {
+    Message message = parse("o_int: 3");
+    FluentEqualityConfig config =
+        FluentEqualityConfig.defaultInstance()
+            .comparingExpectedFieldsOnly()
+            .withExpectedMessages(listOf(message));
+    FluentEqualityConfig otherConfig =
+        FluentEqualityConfig.defaultInstance()
+            .comparingExpectedFieldsOnly()
+            .withExpectedMessages(listOf(message));
+
+    ProtoTruthMessageDifferencer differencer =
+        config.toMessageDifferencer(message.getDescriptorForType());
+    expect
+        .that(config.toMessageDifferencer(message.getDescriptorForType()))
+        .isSameAs(differencer);
+    expect
+        .that(otherConfig.toMessageDifferencer(message.getDescriptorForType()))
+        .isNotSameAs(differencer);
+  }
 }
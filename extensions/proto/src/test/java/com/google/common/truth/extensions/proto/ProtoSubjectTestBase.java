@@ -31,7 +31,9 @@ import com.google.protobuf.Message;
 import com.google.protobuf.TextFormat;
 import com.google.protobuf.TextFormat.ParseException;
 import com.google.protobuf.UnknownFieldSet;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 import org.checkerframework.checker.nullness.compatqual.NullableDecl;
@@ -89,6 +91,9 @@ public class ProtoSubjectTestBase {
   private final Message defaultInstance;
   private final boolean isProto3;
 
+  /** Every message built by {@link #parse}, {@link #parsePartial} and {@link #fromUnknownFields}. */
+  private final List<Message> builtMessages = new ArrayList<>();
+
   protected ProtoSubjectTestBase(TestType testType) {
     this.defaultInstance = testType.defaultInstance();
     this.isProto3 = testType.isProto3();
@@ -96,7 +101,7 @@ public class ProtoSubjectTestBase {
 
   protected final Message fromUnknownFields(UnknownFieldSet unknownFieldSet)
       throws InvalidProtocolBufferException {
-    return defaultInstance.getParserForType().parseFrom(unknownFieldSet.toByteArray());
+    return built(defaultInstance.getParserForType().parseFrom(unknownFieldSet.toByteArray()));
   }
 
   protected final String fullMessageName() {
@@ -118,7 +123,7 @@ public class ProtoSubjectTestBase {
     try {
       Message.Builder builder = defaultInstance.toBuilder();
       PARSER.merge(textProto, builder);
-      return builder.build();
+      return built(builder.build());
     } catch (ParseException e) {
       throw new RuntimeException(e);
     }
@@ -128,12 +133,22 @@ public class ProtoSubjectTestBase {
     try {
       Message.Builder builder = defaultInstance.toBuilder();
       PARSER.merge(textProto, builder);
-      return builder.buildPartial();
+      return built(builder.buildPartial());
     } catch (ParseException e) {
       throw new RuntimeException(e);
     }
   }
 
+  private Message built(Message message) {
+    builtMessages.add(message);
+    return message;
+  }
+
+  /** Returns the messages built by this test so far, in order. */
+  protected final ImmutableList<Message> builtMessages() {
+    return ImmutableList.copyOf(builtMessages);
+  }
+
   protected final boolean isProto3() {
     return isProto3;
   }